@@ -0,0 +1,91 @@
+package com.shoubo.benchmark;
+
+import com.shoubo.hnsw.HnswIndex;
+import com.shoubo.listener.NullProgressListener;
+import com.shoubo.model.DistanceTypeImpls;
+import com.shoubo.serializer.JavaObjectSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Author: shoubo
+ * Date: 2026/10/18
+ * Desc: 批量构建索引的基准测试 每次调用把同一批向量用addAll插入一个新的空索引，测量构建整个索引的耗时
+ * threads为1时即单线程逐个插入；逐个插入的吞吐量随线程数的变化见 InsertThroughputBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class AddAllBenchmark {
+
+    /**
+     * 插入的向量数
+     */
+    @Param({"20000"})
+    public int size;
+
+    /**
+     * 向量的维度
+     */
+    @Param({"128"})
+    public int dimensions;
+
+    /**
+     * 每个节点的连接数
+     */
+    @Param({"16"})
+    public int m;
+
+    /**
+     * 构建时的探索因子
+     */
+    @Param({"200"})
+    public int efConstruction;
+
+    /**
+     * addAll使用的线程数
+     */
+    @Param({"1", "4"})
+    public int threads;
+
+    private List<FloatVectorItem> items;
+
+    private HnswIndex<Integer, float[], FloatVectorItem, Float> index;
+
+    @Setup(Level.Trial)
+    public void generate() {
+        items = Datasets.items(size, dimensions);
+    }
+
+    @Setup(Level.Invocation)
+    public void setUp() {
+        index = HnswIndex
+                .newBuilder(dimensions, DistanceTypeImpls.FLOAT_EUCLIDEAN_DISTANCE, size)
+                .withM(m)
+                .withEfConstruction(efConstruction)
+                .withCustomSerializers(new JavaObjectSerializer<Integer>(), new JavaObjectSerializer<FloatVectorItem>())
+                .build();
+    }
+
+    @Benchmark
+    public HnswIndex<Integer, float[], FloatVectorItem, Float> addAll() throws InterruptedException {
+        index.addAll(items, threads, NullProgressListener.INSTANCE, Integer.MAX_VALUE);
+        return index;
+    }
+}
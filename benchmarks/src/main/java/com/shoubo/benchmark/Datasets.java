@@ -0,0 +1,108 @@
+package com.shoubo.benchmark;
+
+import com.shoubo.model.SparseVector;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Author: shoubo
+ * Date: 2026/10/18
+ * Desc: 基准测试用的确定性合成数据集 同样的参数总是生成同样的数据，不依赖外部文件
+ */
+public final class Datasets {
+
+    private Datasets() {
+    }
+
+    /**
+     * 生成分量在[0, 1)之间的 float 向量
+     *
+     * @param seed       随机种子
+     * @param dimensions 维度
+     * @return 向量
+     */
+    public static float[] floatVector(long seed, int dimensions) {
+        SplittableRandom random = new SplittableRandom(seed);
+        float[] vector = new float[dimensions];
+        for (int i = 0; i < dimensions; i++) {
+            vector[i] = (float) random.nextDouble();
+        }
+        return vector;
+    }
+
+    /**
+     * 生成分量在[0, 1)之间的 double 向量
+     *
+     * @param seed       随机种子
+     * @param dimensions 维度
+     * @return 向量
+     */
+    public static double[] doubleVector(long seed, int dimensions) {
+        SplittableRandom random = new SplittableRandom(seed);
+        double[] vector = new double[dimensions];
+        for (int i = 0; i < dimensions; i++) {
+            vector[i] = random.nextDouble();
+        }
+        return vector;
+    }
+
+    /**
+     * 生成稀疏向量 非零分量的下标在[0, dimensions)中均匀分布且升序排列
+     *
+     * @param seed       随机种子
+     * @param dimensions 维度
+     * @param nonZeros   非零分量的个数
+     * @param doubles    分量是否为 double
+     * @return 稀疏向量 分量为float[]或double[]
+     */
+    public static <TVector> SparseVector<TVector> sparseVector(long seed, int dimensions, int nonZeros, boolean doubles) {
+        SplittableRandom random = new SplittableRandom(seed);
+        int[] indices = new int[nonZeros];
+        int next = 0;
+        for (int i = 0; i < nonZeros; i++) {
+            // 剩余的下标空间平均分给剩余的分量，保证下标严格递增
+            int span = (dimensions - next) / (nonZeros - i);
+            next += random.nextInt(Math.max(span, 1));
+            indices[i] = next++;
+        }
+
+        SparseVector<TVector> vector = new SparseVector<>();
+        vector.setIndices(indices);
+        @SuppressWarnings("unchecked")
+        TVector values = (TVector) (doubles ? doubleVector(seed + 1, nonZeros) : floatVector(seed + 1, nonZeros));
+        vector.setValues(values);
+        return vector;
+    }
+
+    /**
+     * 生成count个向量项 第i项的ID为i
+     *
+     * @param count      数量
+     * @param dimensions 维度
+     * @return 向量项
+     */
+    public static List<FloatVectorItem> items(int count, int dimensions) {
+        List<FloatVectorItem> items = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            items.add(FloatVectorItem.random(i, dimensions));
+        }
+        return items;
+    }
+
+    /**
+     * 生成查询向量 与{@link #items(int, int)}的种子空间不重叠
+     *
+     * @param count      数量
+     * @param dimensions 维度
+     * @return 查询向量
+     */
+    public static float[][] queries(int count, int dimensions) {
+        float[][] queries = new float[count][];
+        for (int i = 0; i < count; i++) {
+            queries[i] = floatVector(-1L - i, dimensions);
+        }
+        return queries;
+    }
+}
@@ -0,0 +1,88 @@
+package com.shoubo.benchmark;
+
+import com.shoubo.model.DistanceTypeImpls;
+import com.shoubo.model.DoubleDistanceType;
+import com.shoubo.model.FloatDistanceType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Author: shoubo
+ * Date: 2026/10/18
+ * Desc: 稠密向量距离函数的基准测试 覆盖 DistanceTypeImpls 中所有稠密向量的距离函数和常见的嵌入维度
+ * 通过原始 float/double 接口调用，不包括装箱的开销；只测某个函数时用 -p metric=FLOAT_COSINE_DISTANCE
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DistanceBenchmark {
+
+    /**
+     * DistanceTypeImpls 中的字段名
+     */
+    @Param({
+            "FLOAT_COSINE_DISTANCE", "DOUBLE_COSINE_DISTANCE",
+            "FLOAT_INNER_PRODUCT", "DOUBLE_INNER_PRODUCT",
+            "FLOAT_EUCLIDEAN_DISTANCE", "DOUBLE_EUCLIDEAN_DISTANCE",
+            "FLOAT_BRAY_CURTIS_DISTANCE", "DOUBLE_BRAY_CURTIS_DISTANCE",
+            "FLOAT_CANBERRA_DISTANCE", "DOUBLE_CANBERRA_DISTANCE",
+            "FLOAT_CORRELATION_DISTANCE", "DOUBLE_CORRELATION_DISTANCE",
+            "FLOAT_MANHATTAN_DISTANCE", "DOUBLE_MANHATTAN_DISTANCE"
+    })
+    public String metric;
+
+    /**
+     * 向量的维度
+     */
+    @Param({"128", "384", "768", "1536"})
+    public int dimensions;
+
+    private FloatDistanceType<float[]> floatDistanceType;
+
+    private DoubleDistanceType<double[]> doubleDistanceType;
+
+    private float[] floatU;
+
+    private float[] floatV;
+
+    private double[] doubleU;
+
+    private double[] doubleV;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setUp() throws ReflectiveOperationException {
+        Object distanceType = DistanceTypeImpls.class.getField(metric).get(null);
+        if (metric.startsWith("FLOAT_")) {
+            floatDistanceType = (FloatDistanceType<float[]>) distanceType;
+        } else {
+            doubleDistanceType = (DoubleDistanceType<double[]>) distanceType;
+        }
+        floatU = Datasets.floatVector(1, dimensions);
+        floatV = Datasets.floatVector(2, dimensions);
+        doubleU = Datasets.doubleVector(1, dimensions);
+        doubleV = Datasets.doubleVector(2, dimensions);
+    }
+
+    @Benchmark
+    public double distance() {
+        if (floatDistanceType != null) {
+            return floatDistanceType.floatDistance(floatU, floatV);
+        }
+        return doubleDistanceType.doubleDistance(doubleU, doubleV);
+    }
+}
@@ -0,0 +1,55 @@
+package com.shoubo.benchmark;
+
+import com.shoubo.Item;
+
+import java.util.SplittableRandom;
+
+/**
+ * Author: shoubo
+ * Date: 2026/10/18
+ * Desc: 基准测试用的 float 向量项
+ */
+public class FloatVectorItem implements Item<Integer, float[]> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int id;
+
+    private final float[] vector;
+
+    public FloatVectorItem(int id, float[] vector) {
+        this.id = id;
+        this.vector = vector;
+    }
+
+    /**
+     * 根据ID生成一个分量在[0, 1)之间的随机向量 同一个ID总是生成相同的向量，多个线程可以各自生成而不需要共享数据
+     *
+     * @param id         项的ID
+     * @param dimensions 向量的维度
+     * @return 向量项
+     */
+    public static FloatVectorItem random(int id, int dimensions) {
+        SplittableRandom random = new SplittableRandom(id);
+        float[] vector = new float[dimensions];
+        for (int i = 0; i < dimensions; i++) {
+            vector[i] = (float) random.nextDouble();
+        }
+        return new FloatVectorItem(id, vector);
+    }
+
+    @Override
+    public Integer id() {
+        return id;
+    }
+
+    @Override
+    public float[] vector() {
+        return vector;
+    }
+
+    @Override
+    public int dimensions() {
+        return vector.length;
+    }
+}
@@ -0,0 +1,81 @@
+package com.shoubo.benchmark;
+
+import com.shoubo.hnsw.HnswIndex;
+import com.shoubo.model.DistanceTypeImpls;
+import com.shoubo.serializer.JavaObjectSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Author: shoubo
+ * Date: 2026/10/18
+ * Desc: 多线程插入吞吐量基准测试
+ * 每轮迭代从空索引开始，所有线程共享同一个索引和ID计数器，每次调用插入一个新向量；
+ * 用 -t 指定线程数，比较不同线程数下的吞吐量即可得到插入的扩展性，例如：
+ * for t in 1 2 4 8 16 32 64; do java -jar target/benchmarks.jar InsertThroughputBenchmark -t $t; done
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class InsertThroughputBenchmark {
+
+    /**
+     * 向量的维度
+     */
+    @Param({"32"})
+    public int dimensions;
+
+    /**
+     * 每个节点的连接数
+     */
+    @Param({"16"})
+    public int m;
+
+    /**
+     * 构建时的探索因子
+     */
+    @Param({"100"})
+    public int efConstruction;
+
+    /**
+     * 索引的容量 需要大于一轮迭代内插入的数量
+     */
+    @Param({"2000000"})
+    public int maxItemCount;
+
+    private HnswIndex<Integer, float[], FloatVectorItem, Float> index;
+
+    private AtomicInteger nextId;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        index = HnswIndex
+                .newBuilder(dimensions, DistanceTypeImpls.FLOAT_EUCLIDEAN_DISTANCE, maxItemCount)
+                .withM(m)
+                .withEfConstruction(efConstruction)
+                .withCustomSerializers(new JavaObjectSerializer<Integer>(), new JavaObjectSerializer<FloatVectorItem>())
+                .build();
+        nextId = new AtomicInteger();
+    }
+
+    @Benchmark
+    public boolean insert() {
+        return index.add(FloatVectorItem.random(nextId.getAndIncrement(), dimensions));
+    }
+}
@@ -0,0 +1,238 @@
+package com.shoubo.benchmark;
+
+import com.shoubo.hnsw.HnswIndex;
+import com.shoubo.listener.NullProgressListener;
+import com.shoubo.model.DistanceTypeImpls;
+import com.shoubo.model.FloatDistanceType;
+import com.shoubo.model.SearchParams;
+import com.shoubo.model.bo.SearchResultBO;
+import com.shoubo.serializer.JavaObjectSerializer;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Author: shoubo
+ * Date: 2026/10/18
+ * Desc: 召回率和延迟的评估工具 用于针对自己的数据调整 m、ef、efConstruction
+ * 用 fvecs/bvecs 文件或生成的数据构建 HnswIndex，通过 asExactIndex() 并行计算真实的最近邻，
+ * 然后依次用每个 ef 单线程执行全部查询，输出 recall@k、QPS 和 p50/p99 延迟，可同时写出 CSV
+ * <p>
+ * 参数均为 --名称=值 的形式，例如：
+ * java -cp target/benchmarks.jar com.shoubo.benchmark.RecallEvaluation --base=sift_base.fvecs --queries=sift_query.fvecs --ef=10,50,100,200 --csv=sift.csv
+ */
+public final class RecallEvaluation {
+
+    private RecallEvaluation() {
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException, ReflectiveOperationException {
+        Map<String, String> options = parseOptions(args);
+
+        int size = intOption(options, "size", 100_000);
+        int queryCount = intOption(options, "queryCount", 1000);
+        int dimensions = intOption(options, "dimensions", 128);
+        int k = intOption(options, "k", 10);
+        int m = intOption(options, "m", 16);
+        int efConstruction = intOption(options, "efConstruction", 200);
+        int threads = intOption(options, "threads", Runtime.getRuntime().availableProcessors());
+        int[] efs = Arrays.stream(options.getOrDefault("ef", "10,20,50,100,200,400").split(","))
+                .mapToInt(value -> Integer.parseInt(value.trim()))
+                .toArray();
+        String metric = options.getOrDefault("distance", "FLOAT_EUCLIDEAN_DISTANCE");
+
+        @SuppressWarnings("unchecked")
+        FloatDistanceType<float[]> distanceType =
+                (FloatDistanceType<float[]>) DistanceTypeImpls.class.getField(metric).get(null);
+
+        // 有文件时从文件读取，否则按维度生成
+        List<FloatVectorItem> items;
+        if (options.containsKey("base")) {
+            float[][] base = VectorFiles.read(Paths.get(options.get("base")), size);
+            items = new ArrayList<>(base.length);
+            for (int i = 0; i < base.length; i++) {
+                items.add(new FloatVectorItem(i, base[i]));
+            }
+            dimensions = base[0].length;
+        } else {
+            items = Datasets.items(size, dimensions);
+        }
+        float[][] queries = options.containsKey("queries")
+                ? VectorFiles.read(Paths.get(options.get("queries")), queryCount)
+                : Datasets.queries(queryCount, dimensions);
+
+        System.out.printf(Locale.ROOT, "数据集: %d 个 %d 维向量, %d 个查询, 距离 %s, k=%d%n",
+                items.size(), dimensions, queries.length, metric, k);
+
+        HnswIndex<Integer, float[], FloatVectorItem, Float> index = HnswIndex
+                .newBuilder(dimensions, distanceType, items.size())
+                .withM(m)
+                .withEfConstruction(efConstruction)
+                .withCustomSerializers(new JavaObjectSerializer<Integer>(), new JavaObjectSerializer<FloatVectorItem>())
+                .build();
+
+        long buildStart = System.nanoTime();
+        index.addAll(items, threads, NullProgressListener.INSTANCE, Integer.MAX_VALUE);
+        System.out.printf(Locale.ROOT, "构建索引: m=%d, efConstruction=%d, %d 个线程, 耗时 %.1f 秒%n",
+                m, efConstruction, threads, (System.nanoTime() - buildStart) / 1e9);
+
+        long truthStart = System.nanoTime();
+        List<Set<Integer>> groundTruth = groundTruth(index, queries, k);
+        System.out.printf(Locale.ROOT, "计算真实最近邻: 耗时 %.1f 秒%n", (System.nanoTime() - truthStart) / 1e9);
+
+        List<String> rows = new ArrayList<>();
+        rows.add("m,efConstruction,ef,k,recall,qps,p50_us,p99_us");
+        System.out.printf(Locale.ROOT, "%n%6s %8s %10s %10s %10s%n", "ef", "recall", "QPS", "p50(us)", "p99(us)");
+        for (int ef : efs) {
+            Result result = evaluate(index, queries, groundTruth, k, ef);
+            System.out.printf(Locale.ROOT, "%6d %8.4f %10.0f %10.1f %10.1f%n",
+                    ef, result.recall, result.qps, result.p50Micros, result.p99Micros);
+            rows.add(String.format(Locale.ROOT, "%d,%d,%d,%d,%.4f,%.1f,%.1f,%.1f",
+                    m, efConstruction, ef, k, result.recall, result.qps, result.p50Micros, result.p99Micros));
+        }
+
+        if (options.containsKey("csv")) {
+            Path csv = Paths.get(options.get("csv"));
+            try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(csv, StandardCharsets.UTF_8))) {
+                rows.forEach(writer::println);
+            }
+            System.out.println("\n结果已写入 " + csv);
+        }
+    }
+
+    /**
+     * 用精确索引并行计算每个查询的真实最近邻
+     *
+     * @param index   索引
+     * @param queries 查询向量
+     * @param k       最近邻数
+     * @return 每个查询的真实最近邻ID
+     */
+    private static List<Set<Integer>> groundTruth(HnswIndex<Integer, float[], FloatVectorItem, Float> index,
+                                                  float[][] queries, int k) {
+        List<List<SearchResultBO<FloatVectorItem, Float>>> exact =
+                index.asExactIndex().findNearestBatch(Arrays.asList(queries), k);
+
+        List<Set<Integer>> groundTruth = new ArrayList<>(exact.size());
+        for (List<SearchResultBO<FloatVectorItem, Float>> results : exact) {
+            groundTruth.add(ids(results));
+        }
+        return groundTruth;
+    }
+
+    /**
+     * 用给定的ef单线程执行全部查询
+     *
+     * @param index       索引
+     * @param queries     查询向量
+     * @param groundTruth 真实最近邻
+     * @param k           最近邻数
+     * @param ef          搜索时的动态列表大小
+     * @return 召回率和延迟
+     */
+    private static Result evaluate(HnswIndex<Integer, float[], FloatVectorItem, Float> index, float[][] queries,
+                                   List<Set<Integer>> groundTruth, int k, int ef) {
+        SearchParams params = SearchParams.newBuilder().withEf(ef).build();
+
+        // 预热一轮 结果不计入统计
+        for (float[] query : queries) {
+            index.findNearest(query, k, params);
+        }
+
+        long[] latencies = new long[queries.length];
+        long found = 0;
+        long expected = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < queries.length; i++) {
+            long queryStart = System.nanoTime();
+            List<SearchResultBO<FloatVectorItem, Float>> results = index.findNearest(queries[i], k, params).getResults();
+            latencies[i] = System.nanoTime() - queryStart;
+
+            Set<Integer> truth = groundTruth.get(i);
+            for (SearchResultBO<FloatVectorItem, Float> result : results) {
+                if (truth.contains(result.getItem().id())) {
+                    found++;
+                }
+            }
+            expected += truth.size();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        Arrays.sort(latencies);
+        return new Result(
+                expected == 0 ? 1.0 : (double) found / expected,
+                queries.length / (elapsed / 1e9),
+                percentile(latencies, 0.50) / 1e3,
+                percentile(latencies, 0.99) / 1e3);
+    }
+
+    /**
+     * 已排序数组的百分位数
+     *
+     * @param sorted   升序排列的数组
+     * @param fraction 百分位 0到1之间
+     * @return 百分位数
+     */
+    private static long percentile(long[] sorted, double fraction) {
+        int index = (int) Math.ceil(fraction * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    private static Set<Integer> ids(List<SearchResultBO<FloatVectorItem, Float>> results) {
+        Set<Integer> ids = new HashSet<>(results.size() * 2);
+        for (SearchResultBO<FloatVectorItem, Float> result : results) {
+            ids.add(result.getItem().id());
+        }
+        return ids;
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0) {
+                throw new IllegalArgumentException("参数格式应为 --名称=值: " + arg);
+            }
+            options.put(arg.substring(2, separator), arg.substring(separator + 1));
+        }
+        return options;
+    }
+
+    private static int intOption(Map<String, String> options, String name, int defaultValue) {
+        String value = options.get(name);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+
+    /**
+     * 某个ef下的评估结果
+     */
+    private static final class Result {
+
+        private final double recall;
+
+        private final double qps;
+
+        private final double p50Micros;
+
+        private final double p99Micros;
+
+        private Result(double recall, double qps, double p50Micros, double p99Micros) {
+            this.recall = recall;
+            this.qps = qps;
+            this.p50Micros = p50Micros;
+            this.p99Micros = p99Micros;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.shoubo.benchmark;
+
+import com.shoubo.hnsw.HnswIndex;
+import com.shoubo.model.DistanceTypeImpls;
+import com.shoubo.serializer.JavaObjectSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Author: shoubo
+ * Date: 2026/10/18
+ * Desc: 保存和加载索引的基准测试 分别测量二进制格式(save(Path))和Java序列化格式(save(OutputStream))
+ * 写入临时文件以及从文件载入的耗时；两种格式的文件大小在setUp时打印
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class SaveLoadBenchmark {
+
+    /**
+     * 索引中的向量数
+     */
+    @Param({"100000"})
+    public int size;
+
+    /**
+     * 向量的维度
+     */
+    @Param({"128"})
+    public int dimensions;
+
+    private HnswIndex<Integer, float[], FloatVectorItem, Float> index;
+
+    private Path binaryFile;
+
+    private Path serializedFile;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, InterruptedException {
+        index = HnswIndex
+                .newBuilder(dimensions, DistanceTypeImpls.FLOAT_EUCLIDEAN_DISTANCE, size)
+                .withM(16)
+                .withEfConstruction(100)
+                .withCustomSerializers(new JavaObjectSerializer<Integer>(), new JavaObjectSerializer<FloatVectorItem>())
+                .build();
+        index.addAll(Datasets.items(size, dimensions));
+
+        binaryFile = Files.createTempFile("myhnsw-benchmark", ".idx");
+        serializedFile = Files.createTempFile("myhnsw-benchmark", ".ser");
+        saveBinary();
+        saveSerialized();
+        System.out.println("二进制格式: " + Files.size(binaryFile) + " 字节, Java序列化格式: " + Files.size(serializedFile) + " 字节");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(binaryFile);
+        Files.deleteIfExists(serializedFile);
+    }
+
+    @Benchmark
+    public Path saveBinary() throws IOException {
+        index.save(binaryFile);
+        return binaryFile;
+    }
+
+    @Benchmark
+    public Path saveSerialized() throws IOException {
+        try (OutputStream out = Files.newOutputStream(serializedFile)) {
+            index.save(out);
+        }
+        return serializedFile;
+    }
+
+    @Benchmark
+    public HnswIndex<Integer, float[], FloatVectorItem, Float> loadBinary() throws IOException {
+        return HnswIndex.load(binaryFile);
+    }
+
+    @Benchmark
+    public HnswIndex<Integer, float[], FloatVectorItem, Float> loadSerialized() throws IOException {
+        return HnswIndex.load(serializedFile);
+    }
+}
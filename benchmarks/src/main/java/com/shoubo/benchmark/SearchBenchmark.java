@@ -0,0 +1,110 @@
+package com.shoubo.benchmark;
+
+import com.shoubo.hnsw.HnswIndex;
+import com.shoubo.model.DistanceTypeImpls;
+import com.shoubo.model.SearchParams;
+import com.shoubo.model.bo.SearchResultsBO;
+import com.shoubo.serializer.JavaObjectSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Author: shoubo
+ * Date: 2026/10/18
+ * Desc: 最近邻搜索的延迟基准测试 每组 size/dimensions 只构建一次索引，ef 通过单次查询的搜索参数传入，
+ * 不同的 ef 和 k 共用同一个索引；用 -t 指定线程数即可测试并发查询，每个线程按自己的顺序轮流使用查询向量
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class SearchBenchmark {
+
+    /**
+     * 查询向量的数量
+     */
+    private static final int QUERY_COUNT = 1000;
+
+    /**
+     * 索引中的向量数
+     */
+    @Param({"10000", "100000"})
+    public int size;
+
+    /**
+     * 向量的维度
+     */
+    @Param({"128"})
+    public int dimensions;
+
+    /**
+     * 每个节点的连接数
+     */
+    @Param({"16"})
+    public int m;
+
+    /**
+     * 搜索时的动态列表大小
+     */
+    @Param({"10", "50", "200"})
+    public int ef;
+
+    /**
+     * 返回的最近邻数
+     */
+    @Param({"1", "10", "100"})
+    public int k;
+
+    private HnswIndex<Integer, float[], FloatVectorItem, Float> index;
+
+    private float[][] queries;
+
+    private SearchParams params;
+
+    @Setup(Level.Trial)
+    public void setUp() throws InterruptedException {
+        index = HnswIndex
+                .newBuilder(dimensions, DistanceTypeImpls.FLOAT_EUCLIDEAN_DISTANCE, size)
+                .withM(m)
+                .withEfConstruction(200)
+                .withCustomSerializers(new JavaObjectSerializer<Integer>(), new JavaObjectSerializer<FloatVectorItem>())
+                .build();
+        index.addAll(Datasets.items(size, dimensions));
+        queries = Datasets.queries(QUERY_COUNT, dimensions);
+        params = SearchParams.newBuilder().withEf(ef).build();
+    }
+
+    /**
+     * 每个线程自己的查询序号
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        private int next;
+
+        int next() {
+            int current = next;
+            next = current + 1 == QUERY_COUNT ? 0 : current + 1;
+            return current;
+        }
+    }
+
+    @Benchmark
+    public SearchResultsBO<FloatVectorItem, Float> findNearest(Cursor cursor) {
+        return index.findNearest(queries[cursor.next()], k, params);
+    }
+}
@@ -0,0 +1,69 @@
+package com.shoubo.benchmark;
+
+import com.shoubo.model.DistanceTypeImpls;
+import com.shoubo.model.SparseVector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Author: shoubo
+ * Date: 2026/10/18
+ * Desc: 稀疏向量内积的基准测试 两个向量在同一维度空间中各有nonZeros个非零分量
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SparseDistanceBenchmark {
+
+    /**
+     * 稀疏向量的维度空间
+     */
+    @Param({"1536", "30000"})
+    public int dimensions;
+
+    /**
+     * 非零分量的个数
+     */
+    @Param({"32", "256"})
+    public int nonZeros;
+
+    private SparseVector<float[]> floatU;
+
+    private SparseVector<float[]> floatV;
+
+    private SparseVector<double[]> doubleU;
+
+    private SparseVector<double[]> doubleV;
+
+    @Setup
+    public void setUp() {
+        floatU = Datasets.sparseVector(1, dimensions, nonZeros, false);
+        floatV = Datasets.sparseVector(2, dimensions, nonZeros, false);
+        doubleU = Datasets.sparseVector(1, dimensions, nonZeros, true);
+        doubleV = Datasets.sparseVector(2, dimensions, nonZeros, true);
+    }
+
+    @Benchmark
+    public float floatInnerProduct() {
+        return DistanceTypeImpls.FLOAT_SPARSE_VECTOR_INNER_PRODUCT.floatDistance(floatU, floatV);
+    }
+
+    @Benchmark
+    public double doubleInnerProduct() {
+        return DistanceTypeImpls.DOUBLE_SPARSE_VECTOR_INNER_PRODUCT.doubleDistance(doubleU, doubleV);
+    }
+}
@@ -0,0 +1,68 @@
+package com.shoubo.benchmark;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Author: shoubo
+ * Date: 2026/10/18
+ * Desc: 读取 TEXMEX 格式(SIFT、GIST等公开数据集使用)的向量文件
+ * 每个向量以小端序的int维度开头，其后 fvecs 为 dim 个小端序 float，bvecs 为 dim 个无符号字节，按扩展名区分
+ */
+public final class VectorFiles {
+
+    private VectorFiles() {
+    }
+
+    /**
+     * 读取向量文件
+     *
+     * @param path  .fvecs 或 .bvecs 文件
+     * @param limit 最多读取的向量数
+     * @return 向量 bvecs 的分量转换为 float
+     * @throws IOException 读取失败或格式不正确
+     */
+    public static float[][] read(Path path, int limit) throws IOException {
+        String name = path.getFileName().toString();
+        boolean bytes;
+        if (name.endsWith(".fvecs")) {
+            bytes = false;
+        } else if (name.endsWith(".bvecs")) {
+            bytes = true;
+        } else {
+            throw new IOException("不支持的向量文件格式: " + path + "，只支持 .fvecs 和 .bvecs");
+        }
+
+        List<float[]> vectors = new ArrayList<>();
+        try (InputStream in = Files.newInputStream(path);
+             DataInputStream data = new DataInputStream(new BufferedInputStream(in, 1 << 16))) {
+            while (vectors.size() < limit) {
+                int dimensions;
+                try {
+                    dimensions = Integer.reverseBytes(data.readInt());
+                } catch (EOFException e) {
+                    break;
+                }
+                if (dimensions <= 0) {
+                    throw new IOException("向量文件 " + path + " 的第 " + vectors.size() + " 个向量的维度不正确: " + dimensions);
+                }
+
+                float[] vector = new float[dimensions];
+                for (int i = 0; i < dimensions; i++) {
+                    vector[i] = bytes
+                            ? data.readUnsignedByte()
+                            : Float.intBitsToFloat(Integer.reverseBytes(data.readInt()));
+                }
+                vectors.add(vector);
+            }
+        }
+        return vectors.toArray(new float[0][]);
+    }
+}
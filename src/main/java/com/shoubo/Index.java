@@ -5,6 +5,7 @@ import com.shoubo.listener.NullProgressListener;
 import com.shoubo.listener.ProgressListener;
 import com.shoubo.model.bo.SearchResultBO;
 import com.shoubo.utils.NamedThreadFactory;
+import com.shoubo.utils.ParallelBatch;
 
 import java.io.*;
 import java.nio.file.Files;
@@ -12,6 +13,7 @@ import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 /**
@@ -160,6 +162,25 @@ public interface Index<TId, TVector, TItem extends Item<TId, TVector>, TDistance
      */
     List<SearchResultBO<TItem, TDistance>> findNearest(TVector vector, int k);
 
+    /**
+     * 找到距离传入向量vector最近的、满足过滤条件的k个item
+     * 过滤在搜索过程中进行，而不是先搜索再过滤，满足条件的item足够多时就能返回k个结果
+     * @param vector 向量
+     * @param k 数目
+     * @param filter 过滤条件 只有返回true的item才会出现在结果中
+     * @return SearchResultBO列表
+     */
+    List<SearchResultBO<TItem, TDistance>> findNearest(TVector vector, int k, Predicate<TItem> filter);
+
+    /**
+     * 找到与传入向量vector的距离不超过radius的item 按距离从近到远排列
+     * @param vector 向量
+     * @param radius 距离的上限 包含等于radius的item
+     * @param limit 最多返回的数目
+     * @return SearchResultBO列表
+     */
+    List<SearchResultBO<TItem, TDistance>> findWithinDistance(TVector vector, TDistance radius, int limit);
+
     /**
      * 查找与指定ID对应的item最接近的k个邻居items
      * @param id ID
@@ -174,6 +195,49 @@ public interface Index<TId, TVector, TItem extends Item<TId, TVector>, TDistance
                 .orElse(Collections.emptyList());
     }
 
+    /**
+     * 批量查找距离每个向量最近的k个item 在公共的ForkJoinPool上并行执行
+     * @param vectors 向量列表
+     * @param k 数目
+     * @return 搜索结果列表 第i个结果对应第i个向量
+     */
+    default List<List<SearchResultBO<TItem, TDistance>>> findNearestBatch(List<TVector> vectors, int k) {
+        return findNearestBatch(vectors, k, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * 批量查找距离每个向量最近的k个item 在指定的线程池上并行执行
+     * 每个线程依次领取下一个向量调用findNearest，HnswIndex中每个线程的搜索上下文会在这些查询之间重复使用
+     * @param vectors 向量列表
+     * @param k 数目
+     * @param executor 执行查询的线程池
+     * @return 搜索结果列表 第i个结果对应第i个向量
+     */
+    default List<List<SearchResultBO<TItem, TDistance>>> findNearestBatch(List<TVector> vectors, int k, Executor executor) {
+        return ParallelBatch.map(vectors, vector -> findNearest(vector, k), executor);
+    }
+
+    /**
+     * 批量查找与每个ID对应的item最接近的k个邻居items 在公共的ForkJoinPool上并行执行
+     * @param ids ID列表
+     * @param k 数目
+     * @return items列表 第i个结果对应第i个ID，ID不存在时为空列表
+     */
+    default List<List<SearchResultBO<TItem, TDistance>>> findNeighborsBatch(List<TId> ids, int k) {
+        return findNeighborsBatch(ids, k, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * 批量查找与每个ID对应的item最接近的k个邻居items 在指定的线程池上并行执行
+     * @param ids ID列表
+     * @param k 数目
+     * @param executor 执行查询的线程池
+     * @return items列表 第i个结果对应第i个ID，ID不存在时为空列表
+     */
+    default List<List<SearchResultBO<TItem, TDistance>>> findNeighborsBatch(List<TId> ids, int k, Executor executor) {
+        return ParallelBatch.map(ids, id -> findNeighbors(id, k), executor);
+    }
+
     /**
      * 将Index保存为输出流
      * 注意：保存操作不是线程安全的，不要在保存的同时修改Index
@@ -0,0 +1,625 @@
+package com.shoubo.hnsw;
+
+import com.shoubo.Index;
+import com.shoubo.Item;
+import com.shoubo.exception.SizeLimitExceededException;
+import com.shoubo.exception.UncategorizedIndexException;
+import com.shoubo.model.bo.SearchResultBO;
+import com.shoubo.utils.ClassLoaderObjectInputStream;
+import com.shoubo.utils.NamedThreadFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Author: shoubo
+ * Date: 2026/10/18
+ * Desc: 带预写日志的 HNSW 索引 两次检查点之间的添加和删除记录在只追加写入的日志中，崩溃后不会丢失
+ * <p>
+ * 目录中存放最近一次检查点的快照 snapshot-G.bin 和编号不小于G的日志 wal-g.log：快照包含编号小于G的日志中的所有修改。
+ * 打开时载入快照(没有快照时用工厂方法创建空索引)，再按编号依次重放日志；
+ * {@link #checkpoint()} 切换到新的日志，用 {@link HnswIndex#save(Path)} 同样的快照在写入继续进行的同时保存索引，
+ * 快照落盘后删除已经包含在其中的旧日志和旧快照
+ * <p>
+ * 添加和删除先写入日志，落盘间隔为0时还要等待日志落盘，之后才修改索引，因此搜索看到的修改都已经写入日志；
+ * 同一标识符的请求持有同一把锁，日志中的顺序与修改索引的顺序一致。写入日志失败时索引不变。
+ * 日志记录的是请求而不是结果：重放时按顺序重新执行，add/remove 的结果只取决于同一标识符之前的请求，
+ * 当初返回false的请求重放时同样返回false，不改变索引；写入日志之后修改索引时抛出异常的请求(例如索引已满)，
+ * 在日志中追加一条撤销记录，重放时跳过。为此重放时每个标识符的最后一条记录要等到同一标识符的下一条记录或日志末尾才执行。
+ * 落盘间隔为0时每次修改都等待日志落盘，同时等待的多个线程共用一次 force；
+ * 大于0时由后台线程按间隔落盘，进程崩溃不会丢失已返回的修改，操作系统崩溃或断电最多丢失一个间隔内的修改和撤销记录。
+ * 直接修改 {@link #index()} 返回的索引不会记录到日志中
+ *
+ * @param <TId>       Item的唯一标识符的类型
+ * @param <TVector>   Item的向量类型
+ * @param <TItem>     Item的类型
+ * @param <TDistance> Item之间的距离的类型
+ */
+public class DurableHnswIndex<TId, TVector, TItem extends Item<TId, TVector>, TDistance>
+        implements Index<TId, TVector, TItem, TDistance>, Closeable {
+
+    /**
+     * 序列化版本ID
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 数据点锁的条带数 必须是2的幂
+     */
+    private static final int ITEM_LOCK_STRIPES = 1 << 10;
+
+    private static final Pattern SNAPSHOT_FILE = Pattern.compile("snapshot-(\\d+)\\.bin");
+
+    private static final Pattern LOG_FILE = Pattern.compile("wal-(\\d+)\\.log");
+
+    /**
+     * 快照临时文件的后缀 保存时先写临时文件再原子地改名，上次崩溃时留下的临时文件在打开时删除
+     */
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final transient Path directory;
+
+    private final transient HnswIndex<TId, TVector, TItem, TDistance> index;
+
+    /**
+     * 落盘间隔 毫秒，为0时每次修改都等待落盘
+     */
+    private final long syncIntervalMillis;
+
+    /**
+     * 检查点锁 添加和删除在写入日志和修改索引期间持有读锁，检查点切换日志和开始快照时持有写锁
+     */
+    private final transient ReentrantReadWriteLock checkpointLock = new ReentrantReadWriteLock();
+
+    /**
+     * 同一时刻只进行一次检查点
+     */
+    private final transient ReentrantLock checkpointMutex = new ReentrantLock();
+
+    /**
+     * 数据点锁 同一标识符的写入日志和修改索引按顺序执行
+     */
+    private final transient Object[] itemLocks;
+
+    /**
+     * 后台落盘的线程 落盘间隔为0时为null
+     */
+    private final transient ScheduledExecutorService syncExecutor;
+
+    /**
+     * 当前的日志
+     */
+    private transient volatile WriteAheadLog log;
+
+    /**
+     * 当前日志的编号
+     */
+    private transient long generation;
+
+    /**
+     * 后台落盘失败的原因 之后的修改和落盘都会抛出
+     */
+    private transient volatile IOException syncFailure;
+
+    private DurableHnswIndex(Path directory, HnswIndex<TId, TVector, TItem, TDistance> index, WriteAheadLog log, long generation,
+                             long syncIntervalMillis) {
+        this.directory = directory;
+        this.index = index;
+        this.log = log;
+        this.generation = generation;
+        this.syncIntervalMillis = syncIntervalMillis;
+
+        this.itemLocks = new Object[ITEM_LOCK_STRIPES];
+        for (int i = 0; i < itemLocks.length; i++) {
+            itemLocks[i] = new Object();
+        }
+
+        if (syncIntervalMillis > 0) {
+            NamedThreadFactory threadFactory = new NamedThreadFactory("wal-sync-%d");
+            this.syncExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = threadFactory.newThread(runnable);
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.syncExecutor.scheduleWithFixedDelay(this::backgroundSync, syncIntervalMillis, syncIntervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            this.syncExecutor = null;
+        }
+    }
+
+    /**
+     * 打开目录中的索引 载入最近一次检查点的快照并重放之后的日志，目录不存在时创建
+     *
+     * @param directory          目录
+     * @param factory            没有快照时创建空索引的工厂方法
+     * @param syncIntervalMillis 落盘间隔 毫秒，为0时每次修改都等待落盘
+     * @param <TId>              id 类型
+     * @param <TVector>          向量类型
+     * @param <TItem>            item 类型
+     * @param <TDistance>        距离类型
+     * @return 索引 不再使用时需要关闭
+     * @throws IOException 快照或日志已损坏
+     */
+    public static <TId, TVector, TItem extends Item<TId, TVector>, TDistance> DurableHnswIndex<TId, TVector, TItem, TDistance> open(
+            Path directory, Supplier<HnswIndex<TId, TVector, TItem, TDistance>> factory, long syncIntervalMillis) throws IOException {
+        return open(directory, factory, syncIntervalMillis, Thread.currentThread().getContextClassLoader());
+    }
+
+    /**
+     * 打开目录中的索引 载入最近一次检查点的快照并重放之后的日志，目录不存在时创建
+     *
+     * @param directory          目录
+     * @param factory            没有快照时创建空索引的工厂方法
+     * @param syncIntervalMillis 落盘间隔 毫秒，为0时每次修改都等待落盘
+     * @param classLoader        读取快照和日志中的item用的类加载器
+     * @param <TId>              id 类型
+     * @param <TVector>          向量类型
+     * @param <TItem>            item 类型
+     * @param <TDistance>        距离类型
+     * @return 索引 不再使用时需要关闭
+     * @throws IOException 快照或日志已损坏
+     */
+    public static <TId, TVector, TItem extends Item<TId, TVector>, TDistance> DurableHnswIndex<TId, TVector, TItem, TDistance> open(
+            Path directory, Supplier<HnswIndex<TId, TVector, TItem, TDistance>> factory, long syncIntervalMillis, ClassLoader classLoader)
+            throws IOException {
+        if (syncIntervalMillis < 0) {
+            throw new IllegalArgumentException("落盘间隔不能为负数");
+        }
+        Files.createDirectories(directory);
+
+        // 找出最近的快照和所有日志，删除上次没有写完的快照
+        long snapshotGeneration = -1;
+        TreeSet<Long> logGenerations = new TreeSet<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                Matcher snapshot = SNAPSHOT_FILE.matcher(name);
+                Matcher log = LOG_FILE.matcher(name);
+                if (snapshot.matches()) {
+                    snapshotGeneration = Math.max(snapshotGeneration, Long.parseLong(snapshot.group(1)));
+                } else if (log.matches()) {
+                    logGenerations.add(Long.parseLong(log.group(1)));
+                } else if (name.endsWith(TEMP_SUFFIX)) {
+                    Files.delete(file);
+                }
+            }
+        }
+
+        HnswIndex<TId, TVector, TItem, TDistance> index = snapshotGeneration >= 0
+                ? HnswIndex.load(snapshotPath(directory, snapshotGeneration), classLoader)
+                : factory.get();
+
+        // 快照之后的日志按编号依次重放，最后一个日志继续写入
+        long generation = Math.max(snapshotGeneration, 0);
+        WriteAheadLog log = null;
+        try {
+            for (long logGeneration : logGenerations.tailSet(generation)) {
+                if (log != null) {
+                    log.close();
+                }
+                // 撤销记录和被撤销的记录总在同一个日志中，每个日志重放完时执行剩下的记录
+                Map<TId, Runnable> pending = new LinkedHashMap<>();
+                log = WriteAheadLog.open(logPath(directory, logGeneration), (type, content) -> replay(index, pending, type, content, classLoader));
+                pending.values().forEach(Runnable::run);
+                generation = logGeneration;
+            }
+            if (log == null) {
+                log = WriteAheadLog.create(logPath(directory, generation));
+            }
+        } catch (IOException | RuntimeException e) {
+            if (log != null) {
+                log.close();
+            }
+            throw e;
+        }
+
+        DurableHnswIndex<TId, TVector, TItem, TDistance> durable = new DurableHnswIndex<>(directory, index, log, generation, syncIntervalMillis);
+        durable.deleteBefore(Math.max(snapshotGeneration, 0));
+        return durable;
+    }
+
+    /**
+     * 底层的索引 用于搜索或调整参数；直接在它上面添加和删除不会记录到日志中
+     *
+     * @return 索引
+     */
+    public HnswIndex<TId, TVector, TItem, TDistance> index() {
+        return index;
+    }
+
+    /**
+     * 新增一个item 先写入日志再修改索引
+     *
+     * @param item item
+     * @return 是否成功
+     */
+    @Override
+    public boolean add(TItem item) {
+        // 维度不正确的请求在写入日志之前拒绝，不留下重放时必然失败的记录
+        if (item.dimensions() != index.getDimensions()) {
+            throw new IllegalArgumentException("Item维度不正确, item维度: " + item.dimensions() + " Index维度: " + index.getDimensions());
+        }
+        byte[] record = encode(WriteAheadLog.RECORD_ADD, out -> index.getItemSerializer().write(item, out));
+        return logAndApply(item.id(), () -> index.add(item), record);
+    }
+
+    /**
+     * 删除一个item 先写入日志再修改索引
+     *
+     * @param id      item的唯一标识符
+     * @param version item的版本
+     * @return 是否成功
+     */
+    @Override
+    public boolean remove(TId id, long version) {
+        byte[] record = encode(WriteAheadLog.RECORD_REMOVE, out -> {
+            index.getItemIdSerializer().write(id, out);
+            out.writeLong(version);
+        });
+        return logAndApply(id, () -> index.remove(id, version), record);
+    }
+
+    /**
+     * 检查点 切换到新的日志并保存当前索引的快照，快照落盘后删除旧的日志和快照
+     * 只在切换日志和开始快照的瞬间阻塞添加和删除，写入快照期间修改照常进行并记录到新的日志中
+     *
+     * @throws IOException 写入快照失败 此时旧的快照和日志都保留，重新打开时不会丢失修改
+     */
+    public void checkpoint() throws IOException {
+        checkpointMutex.lock();
+        try {
+            long next;
+            HnswIndex<TId, TVector, TItem, TDistance>.Snapshot snapshot;
+
+            // 持有写锁时没有进行中的修改，旧日志中的修改都在快照中，新日志中的修改都不在
+            checkpointLock.writeLock().lock();
+            try {
+                next = generation + 1;
+                WriteAheadLog created = WriteAheadLog.create(logPath(directory, next));
+                WriteAheadLog previous = log;
+                log = created;
+                generation = next;
+                try {
+                    snapshot = index.beginSnapshot();
+                } finally {
+                    // 之后不会再写入旧日志，后台线程也只落盘新日志，旧日志在这里落盘并关闭，不等待快照写完
+                    previous.close();
+                }
+            } finally {
+                checkpointLock.writeLock().unlock();
+            }
+
+            // save先写临时文件再原子地改名，崩溃时不会留下不完整的快照
+            index.save(snapshotPath(directory, next), snapshot);
+            syncDirectory();
+
+            deleteBefore(next);
+        } finally {
+            checkpointMutex.unlock();
+        }
+    }
+
+    /**
+     * 把已写入日志的修改全部落盘
+     *
+     * @throws IOException IO异常
+     */
+    public void sync() throws IOException {
+        checkSyncFailure();
+        log.sync();
+    }
+
+    /**
+     * 停止后台落盘，把日志落盘后关闭 不做检查点，下次打开时重放日志
+     *
+     * @throws IOException IO异常
+     */
+    @Override
+    public void close() throws IOException {
+        if (syncExecutor != null) {
+            syncExecutor.shutdown();
+        }
+        checkpointMutex.lock();
+        checkpointLock.writeLock().lock();
+        try {
+            log.close();
+        } finally {
+            checkpointLock.writeLock().unlock();
+            checkpointMutex.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        return index.size();
+    }
+
+    @Override
+    public Optional<TItem> get(TId id) {
+        return index.get(id);
+    }
+
+    @Override
+    public Collection<TItem> items() {
+        return index.items();
+    }
+
+    @Override
+    public List<SearchResultBO<TItem, TDistance>> findNearest(TVector vector, int k) {
+        return index.findNearest(vector, k);
+    }
+
+    @Override
+    public List<SearchResultBO<TItem, TDistance>> findNearest(TVector vector, int k, Predicate<TItem> filter) {
+        return index.findNearest(vector, k, filter);
+    }
+
+    @Override
+    public List<SearchResultBO<TItem, TDistance>> findWithinDistance(TVector vector, TDistance radius, int limit) {
+        return index.findWithinDistance(vector, radius, limit);
+    }
+
+    /**
+     * 把底层的索引以Java序列化格式保存到输出流中 不影响日志
+     *
+     * @param out 输出流
+     * @throws IOException IO异常
+     */
+    @Override
+    public void save(OutputStream out) throws IOException {
+        index.save(out);
+    }
+
+    /**
+     * 把底层的索引以二进制格式保存到指定的路径 不影响日志，检查点用 {@link #checkpoint()}
+     *
+     * @param path 路径
+     * @throws IOException IO异常
+     */
+    @Override
+    public void save(Path path) throws IOException {
+        index.save(path);
+    }
+
+    /**
+     * 写入日志后修改索引 同一标识符的请求持有同一把锁，日志中的顺序与修改索引的顺序一致
+     * 落盘间隔为0时在修改索引之前等待落盘，持有的只是该标识符所在条带的锁，其他标识符的请求可以同时写入并共用一次force
+     *
+     * @param id     数据点标识符
+     * @param change 修改索引 返回是否成功
+     * @param record 日志记录
+     * @return 是否成功
+     */
+    private boolean logAndApply(TId id, Supplier<Boolean> change, byte[] record) {
+        checkSyncFailure();
+        checkpointLock.readLock().lock();
+        try {
+            synchronized (itemLock(id)) {
+                WriteAheadLog current = log;
+                try {
+                    long position = current.append(record);
+                    if (syncIntervalMillis == 0) {
+                        current.sync(position);
+                    }
+                } catch (IOException e) {
+                    throw new UncategorizedIndexException("写入预写日志失败", e);
+                }
+                try {
+                    return change.get();
+                } catch (RuntimeException e) {
+                    abort(current, id, e);
+                    throw e;
+                }
+            }
+        } finally {
+            checkpointLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 追加撤销记录 修改索引时抛出了异常，重放时跳过同一标识符的上一条记录；写入失败时附在原来的异常上
+     * 调用方持有该标识符的锁，上一条记录和撤销记录之间不会有同一标识符的其他记录
+     *
+     * @param current 写入了上一条记录的日志
+     * @param id      数据点标识符
+     * @param failure 修改索引时抛出的异常
+     */
+    private void abort(WriteAheadLog current, TId id, RuntimeException failure) {
+        try {
+            byte[] record = encode(WriteAheadLog.RECORD_ABORT, out -> index.getItemIdSerializer().write(id, out));
+            long position = current.append(record);
+            if (syncIntervalMillis == 0) {
+                current.sync(position);
+            }
+        } catch (IOException | RuntimeException e) {
+            failure.addSuppressed(e);
+        }
+    }
+
+    /**
+     * 序列化一条日志记录 第一个字节是记录类型，之后是单独的Java序列化流
+     *
+     * @param type   记录类型
+     * @param writer 写入记录内容
+     * @return 记录
+     */
+    private static byte[] encode(byte type, RecordWriter writer) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bytes.write(type);
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            writer.write(out);
+        } catch (IOException e) {
+            throw new UncategorizedIndexException("序列化预写日志记录失败", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * 在索引上重放一条日志记录 每个标识符的最后一条记录暂存在pending中，
+     * 同一标识符的下一条记录到来时先执行它，撤销记录到来时丢弃它
+     *
+     * @param index       索引
+     * @param pending     每个标识符尚未执行的最后一条记录
+     * @param type        记录类型
+     * @param content     记录的内容 下标0是记录类型
+     * @param classLoader 类加载器
+     * @throws IOException 记录无法解码
+     */
+    private static <TId, TVector, TItem extends Item<TId, TVector>, TDistance> void replay(
+            HnswIndex<TId, TVector, TItem, TDistance> index, Map<TId, Runnable> pending, byte type, byte[] content,
+            ClassLoader classLoader) throws IOException {
+        try (ObjectInputStream in = new ClassLoaderObjectInputStream(classLoader,
+                new ByteArrayInputStream(content, 1, content.length - 1))) {
+            if (type == WriteAheadLog.RECORD_ADD) {
+                TItem item = index.getItemSerializer().read(in);
+                defer(pending, item.id(), () -> replayAdd(index, item));
+            } else if (type == WriteAheadLog.RECORD_REMOVE) {
+                TId id = index.getItemIdSerializer().read(in);
+                long version = in.readLong();
+                defer(pending, id, () -> index.remove(id, version));
+            } else if (type == WriteAheadLog.RECORD_ABORT) {
+                pending.remove(index.getItemIdSerializer().read(in));
+            } else {
+                throw new IOException("未知的预写日志记录类型: " + type);
+            }
+        } catch (ClassNotFoundException e) {
+            throw new IllegalArgumentException("找不到预写日志中记录的类", e);
+        }
+    }
+
+    /**
+     * 暂存一条记录 先执行同一标识符之前暂存的记录，保持同一标识符的顺序
+     *
+     * @param pending 每个标识符尚未执行的最后一条记录
+     * @param id      数据点标识符
+     * @param apply   执行这条记录
+     */
+    private static <TId> void defer(Map<TId, Runnable> pending, TId id, Runnable apply) {
+        Runnable previous = pending.remove(id);
+        if (previous != null) {
+            previous.run();
+        }
+        pending.put(id, apply);
+    }
+
+    /**
+     * 重放一条添加记录 当初被索引拒绝的添加有撤销记录，不会重放到这里；
+     * 仍然容量不足说明快照之后直接在 {@link #index()} 上扩容过，扩容后重试；维度等参数不正确的请求直接跳过
+     *
+     * @param index 索引
+     * @param item  item
+     */
+    private static <TId, TVector, TItem extends Item<TId, TVector>, TDistance> void replayAdd(
+            HnswIndex<TId, TVector, TItem, TDistance> index, TItem item) {
+        while (true) {
+            try {
+                index.add(item);
+                return;
+            } catch (SizeLimitExceededException e) {
+                index.resize(Math.max(index.getMaxItemCount() * 2, 1));
+            } catch (IllegalArgumentException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 删除编号小于generation的日志和快照 它们已经包含在编号为generation的快照中
+     *
+     * @param generation 编号
+     * @throws IOException IO异常
+     */
+    private void deleteBefore(long generation) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                Matcher snapshot = SNAPSHOT_FILE.matcher(name);
+                Matcher log = LOG_FILE.matcher(name);
+                if ((snapshot.matches() && Long.parseLong(snapshot.group(1)) < generation)
+                        || (log.matches() && Long.parseLong(log.group(1)) < generation)) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * 让快照的改名落盘 部分平台不支持打开目录，此时跳过
+     */
+    private void syncDirectory() {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException ignored) {
+            // 不支持时由操作系统自行落盘
+        }
+    }
+
+    /**
+     * 后台按间隔落盘 失败时记下原因
+     */
+    private void backgroundSync() {
+        try {
+            log.sync();
+        } catch (IOException e) {
+            syncFailure = e;
+        }
+    }
+
+    private void checkSyncFailure() {
+        IOException failure = syncFailure;
+        if (failure != null) {
+            throw new UncategorizedIndexException("预写日志落盘失败", failure);
+        }
+    }
+
+    private Object itemLock(TId id) {
+        int hash = id.hashCode();
+        return itemLocks[(hash ^ (hash >>> 16)) & (ITEM_LOCK_STRIPES - 1)];
+    }
+
+    private static Path snapshotPath(Path directory, long generation) {
+        return directory.resolve("snapshot-" + generation + ".bin");
+    }
+
+    private static Path logPath(Path directory, long generation) {
+        return directory.resolve("wal-" + generation + ".log");
+    }
+
+    private void writeObject(ObjectOutputStream objectOutputStream) throws IOException {
+        throw new NotSerializableException(DurableHnswIndex.class.getName());
+    }
+
+    /**
+     * 写入日志记录的内容
+     */
+    private interface RecordWriter {
+
+        void write(ObjectOutputStream out) throws IOException;
+    }
+}
@@ -0,0 +1,359 @@
+package com.shoubo.hnsw;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Author: shoubo
+ * Date: 2026/10/18
+ * Desc: HNSW图的紧凑邻接表存储
+ * 第0层的邻居按节点ID存放在定长步长的int数组中，每个节点占 maxM0+3 个槽位：版本号、高层的起始槽、邻居数，其后为邻居的节点ID；
+ * 数组按页划分，每页 {@link #PAGE_SIZE} 个节点，页在第一次使用时才分配，避免单个数组超过int下标的上限
+ * 只有少数节点有更高的层级，这些层级的邻居单独存放在一块按页划分的int数组中，每层占一个 maxM+1 个槽位的高层槽(邻居数和邻居)；
+ * 节点的各层依次占用连续的高层槽，第0层槽位中记录第一个高层槽的编号，与文件格式中的 upperSlot 相同。
+ * 高层槽通过CAS递增分配，只有需要新的页时才加锁
+ * <p>
+ * 修改某个节点的邻居前需要持有该节点的锁，写入方之间由调用方互斥；读取方不加锁，
+ * 通过第0层槽位中的版本号实现顺序锁(seqlock)：写入前后各把版本号加一，写入期间版本号为奇数，
+ * 读取方复制邻居后版本号未变且为偶数即读到了一致的快照，否则重读。所有槽位都是volatile读写
+ */
+class FlatGraph {
+
+    /**
+     * 每页节点数的位数
+     */
+    private static final int PAGE_SHIFT = 12;
+
+    /**
+     * 每页的节点数
+     */
+    private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+
+    /**
+     * 节点ID在页内的掩码
+     */
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+    /**
+     * 每页高层槽数的位数
+     */
+    private static final int UPPER_PAGE_SHIFT = 10;
+
+    /**
+     * 高层槽在页内的掩码
+     */
+    private static final int UPPER_PAGE_MASK = (1 << UPPER_PAGE_SHIFT) - 1;
+
+    /**
+     * 第0层槽位中高层起始槽的偏移 没有高层的节点为-1
+     */
+    private static final int UPPER_SLOT_OFFSET = 1;
+
+    /**
+     * 第0层槽位中邻居数的偏移
+     */
+    private static final int COUNT_OFFSET = 2;
+
+    /**
+     * 第0层每个节点的最大邻居数
+     */
+    private final int maxM0;
+
+    /**
+     * 高层每个节点的最大邻居数
+     */
+    private final int maxM;
+
+    /**
+     * 第0层每个节点占用的槽位数 版本号 + 高层起始槽 + 邻居数 + 邻居
+     */
+    private final int level0Stride;
+
+    /**
+     * 每个高层槽占用的int数 邻居数 + 邻居
+     */
+    private final int upperStride;
+
+    /**
+     * 第0层的邻居页 扩容时整体替换
+     */
+    private volatile AtomicIntegerArray[] level0Pages;
+
+    /**
+     * 高层槽的页 页在第一次使用时才分配，页数不够时整体替换
+     */
+    private volatile AtomicIntegerArray[] upperPages;
+
+    /**
+     * 下一个未分配的高层槽
+     */
+    private final AtomicInteger nextUpperSlot = new AtomicInteger();
+
+    /**
+     * 构造方法
+     *
+     * @param capacity 最大节点数
+     * @param maxM0    第0层每个节点的最大邻居数
+     * @param maxM     高层每个节点的最大邻居数
+     */
+    FlatGraph(int capacity, int maxM0, int maxM) {
+        this.maxM0 = maxM0;
+        this.maxM = maxM;
+        this.level0Stride = maxM0 + 3;
+        this.upperStride = maxM + 1;
+        this.level0Pages = new AtomicIntegerArray[pageCount(capacity)];
+        this.upperPages = new AtomicIntegerArray[1];
+    }
+
+    /**
+     * 为新节点分配邻居槽位 所有层的邻居数都为0
+     * 必须在节点ID对其他线程可见之前调用
+     *
+     * @param nodeId   节点ID
+     * @param maxLevel 节点的最大层级
+     */
+    void allocate(int nodeId, int maxLevel) {
+        int pageIndex = nodeId >>> PAGE_SHIFT;
+        AtomicIntegerArray page = level0Pages[pageIndex];
+        if (page == null) {
+            page = allocateLevel0Page(pageIndex);
+        }
+
+        int upperSlot = -1;
+        if (maxLevel > 0) {
+            upperSlot = nextUpperSlot.getAndAdd(maxLevel);
+            int lastPageIndex = (upperSlot + maxLevel - 1) >>> UPPER_PAGE_SHIFT;
+            for (int i = upperSlot >>> UPPER_PAGE_SHIFT; i <= lastPageIndex; i++) {
+                AtomicIntegerArray[] pages = upperPages;
+                if (i >= pages.length || pages[i] == null) {
+                    allocateUpperPage(i);
+                }
+            }
+        }
+        page.set((nodeId & PAGE_MASK) * level0Stride + UPPER_SLOT_OFFSET, upperSlot);
+    }
+
+    /**
+     * 分配第0层的页 已被其他线程分配时直接返回
+     *
+     * @param pageIndex 页号
+     * @return 页
+     */
+    private synchronized AtomicIntegerArray allocateLevel0Page(int pageIndex) {
+        AtomicIntegerArray[] pages = level0Pages;
+        if (pages[pageIndex] == null) {
+            pages[pageIndex] = new AtomicIntegerArray(PAGE_SIZE * level0Stride);
+        }
+        return pages[pageIndex];
+    }
+
+    /**
+     * 分配高层槽的页 页数不够时先扩大页数组，已被其他线程分配时直接返回
+     *
+     * @param pageIndex 页号
+     */
+    private synchronized void allocateUpperPage(int pageIndex) {
+        AtomicIntegerArray[] pages = upperPages;
+        if (pageIndex >= pages.length) {
+            pages = Arrays.copyOf(pages, Math.max(pageIndex + 1, pages.length * 2));
+        }
+        if (pages[pageIndex] == null) {
+            pages[pageIndex] = new AtomicIntegerArray(upperStride << UPPER_PAGE_SHIFT);
+        }
+        this.upperPages = pages;
+    }
+
+    /**
+     * 扩容到新的最大节点数 已分配的页直接复用，高层槽与节点数无关
+     *
+     * @param newCapacity 新的最大节点数
+     */
+    synchronized void resize(int newCapacity) {
+        this.level0Pages = Arrays.copyOf(level0Pages, Math.max(pageCount(newCapacity), level0Pages.length));
+    }
+
+    /**
+     * 无锁地复制节点在某一层的邻居 得到的是某一时刻完整的邻居列表
+     *
+     * @param nodeId 节点ID
+     * @param level  层级
+     * @param target 长度至少为maxM0的数组
+     * @return 邻居数
+     */
+    int copy(int nodeId, int level, int[] target) {
+        int count;
+        while ((count = tryCopy(nodeId, level, target)) < 0) {
+            // 写入方正在修改，让出CPU等待写入完成
+            Thread.yield();
+        }
+        return count;
+    }
+
+    /**
+     * 无锁地尝试复制一次节点在某一层的邻居 复制期间有写入时返回-1，由调用方决定如何重试
+     *
+     * @param nodeId 节点ID
+     * @param level  层级
+     * @param target 长度至少为maxM0的数组
+     * @return 邻居数 有并发写入时为-1
+     */
+    int tryCopy(int nodeId, int level, int[] target) {
+        AtomicIntegerArray page = level0Pages[nodeId >>> PAGE_SHIFT];
+        int versionOffset = (nodeId & PAGE_MASK) * level0Stride;
+
+        int version = page.get(versionOffset);
+        if ((version & 1) != 0) {
+            return -1;
+        }
+
+        AtomicIntegerArray slots;
+        int countOffset;
+        if (level == 0) {
+            slots = page;
+            countOffset = versionOffset + COUNT_OFFSET;
+        } else {
+            int slot = page.get(versionOffset + UPPER_SLOT_OFFSET) + level - 1;
+            slots = upperPages[slot >>> UPPER_PAGE_SHIFT];
+            countOffset = (slot & UPPER_PAGE_MASK) * upperStride;
+        }
+
+        int count = slots.get(countOffset);
+        for (int i = 0; i < count; i++) {
+            target[i] = slots.get(countOffset + 1 + i);
+        }
+        return page.get(versionOffset) == version ? count : -1;
+    }
+
+    /**
+     * 节点在某一层的邻居数 供持有节点锁的写入方使用
+     *
+     * @param nodeId 节点ID
+     * @param level  层级
+     * @return 邻居数
+     */
+    int size(int nodeId, int level) {
+        if (level == 0) {
+            return level0Pages[nodeId >>> PAGE_SHIFT].get((nodeId & PAGE_MASK) * level0Stride + COUNT_OFFSET);
+        }
+        int slot = upperSlot(nodeId, level);
+        return upperPages[slot >>> UPPER_PAGE_SHIFT].get((slot & UPPER_PAGE_MASK) * upperStride);
+    }
+
+    /**
+     * 节点在某一层的第index个邻居 供持有节点锁的写入方使用
+     *
+     * @param nodeId 节点ID
+     * @param level  层级
+     * @param index  下标 0 到 size()-1
+     * @return 邻居的节点ID
+     */
+    int get(int nodeId, int level, int index) {
+        if (level == 0) {
+            return level0Pages[nodeId >>> PAGE_SHIFT].get((nodeId & PAGE_MASK) * level0Stride + COUNT_OFFSET + 1 + index);
+        }
+        int slot = upperSlot(nodeId, level);
+        return upperPages[slot >>> UPPER_PAGE_SHIFT].get((slot & UPPER_PAGE_MASK) * upperStride + 1 + index);
+    }
+
+    /**
+     * 在节点的某一层末尾添加一个邻居 调用方需持有该节点的锁
+     *
+     * @param nodeId      节点ID
+     * @param level       层级
+     * @param neighbourId 邻居的节点ID
+     */
+    void add(int nodeId, int level, int neighbourId) {
+        int size = size(nodeId, level);
+        checkCapacity(nodeId, level, size + 1);
+
+        AtomicIntegerArray page = level0Pages[nodeId >>> PAGE_SHIFT];
+        int versionOffset = (nodeId & PAGE_MASK) * level0Stride;
+        int version = page.get(versionOffset);
+
+        AtomicIntegerArray slots;
+        int countOffset;
+        if (level == 0) {
+            slots = page;
+            countOffset = versionOffset + COUNT_OFFSET;
+        } else {
+            int slot = page.get(versionOffset + UPPER_SLOT_OFFSET) + level - 1;
+            slots = upperPages[slot >>> UPPER_PAGE_SHIFT];
+            countOffset = (slot & UPPER_PAGE_MASK) * upperStride;
+        }
+
+        page.set(versionOffset, version + 1);
+        slots.set(countOffset + 1 + size, neighbourId);
+        slots.set(countOffset, size + 1);
+        page.set(versionOffset, version + 2);
+    }
+
+    /**
+     * 替换节点在某一层的全部邻居 调用方需持有该节点的锁
+     *
+     * @param nodeId       节点ID
+     * @param level        层级
+     * @param neighbourIds 新的邻居
+     * @param count        新的邻居数
+     */
+    void set(int nodeId, int level, int[] neighbourIds, int count) {
+        checkCapacity(nodeId, level, count);
+
+        AtomicIntegerArray page = level0Pages[nodeId >>> PAGE_SHIFT];
+        int versionOffset = (nodeId & PAGE_MASK) * level0Stride;
+        int version = page.get(versionOffset);
+
+        AtomicIntegerArray slots;
+        int countOffset;
+        if (level == 0) {
+            slots = page;
+            countOffset = versionOffset + COUNT_OFFSET;
+        } else {
+            int slot = page.get(versionOffset + UPPER_SLOT_OFFSET) + level - 1;
+            slots = upperPages[slot >>> UPPER_PAGE_SHIFT];
+            countOffset = (slot & UPPER_PAGE_MASK) * upperStride;
+        }
+
+        page.set(versionOffset, version + 1);
+        for (int i = 0; i < count; i++) {
+            slots.set(countOffset + 1 + i, neighbourIds[i]);
+        }
+        slots.set(countOffset, count);
+        page.set(versionOffset, version + 2);
+    }
+
+    /**
+     * 节点在某一层(大于0)的高层槽编号
+     *
+     * @param nodeId 节点ID
+     * @param level  层级
+     * @return 高层槽编号
+     */
+    private int upperSlot(int nodeId, int level) {
+        return level0Pages[nodeId >>> PAGE_SHIFT].get((nodeId & PAGE_MASK) * level0Stride + UPPER_SLOT_OFFSET) + level - 1;
+    }
+
+    /**
+     * 检查邻居数是否超过该层的上限
+     *
+     * @param nodeId 节点ID
+     * @param level  层级
+     * @param count  邻居数
+     */
+    private void checkCapacity(int nodeId, int level, int count) {
+        int capacity = level == 0 ? maxM0 : maxM;
+        if (count > capacity) {
+            throw new IllegalStateException("节点 " + nodeId + " 在第 " + level + " 层的邻居数超过了上限 " + capacity);
+        }
+    }
+
+    /**
+     * 容纳capacity个节点需要的页数
+     *
+     * @param capacity 节点数
+     * @return 页数
+     */
+    private static int pageCount(int capacity) {
+        return (int) (((long) capacity + PAGE_MASK) >>> PAGE_SHIFT);
+    }
+}
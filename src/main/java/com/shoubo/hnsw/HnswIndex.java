@@ -3,30 +3,46 @@ package com.shoubo.hnsw;
 import com.shoubo.Index;
 import com.shoubo.Item;
 import com.shoubo.exception.SizeLimitExceededException;
+import com.shoubo.exception.UncategorizedIndexException;
 import com.shoubo.listener.ProgressListener;
 import com.shoubo.model.DistanceType;
+import com.shoubo.model.FloatDistanceType;
+import com.shoubo.model.SearchParams;
 import com.shoubo.model.bo.SearchResultBO;
+import com.shoubo.model.bo.SearchResultsBO;
+import com.shoubo.model.bo.SearchStatsBO;
 import com.shoubo.serializer.ObjectSerializer;
 import com.shoubo.utils.ArrayBitSet;
 import com.shoubo.utils.ClassLoaderObjectInputStream;
-import com.shoubo.utils.GenericObjectPool;
+import com.shoubo.utils.Crc32c;
+import com.shoubo.utils.EpochVisitedSet;
+import com.shoubo.utils.IntFloatHeap;
+import com.shoubo.utils.IntHashVisitedSet;
 import com.shoubo.utils.Murmur3;
+import com.shoubo.utils.ParallelBatch;
+import com.shoubo.utils.VisitedSet;
 import lombok.Data;
-import org.eclipse.collections.api.list.primitive.MutableIntList;
-import org.eclipse.collections.api.map.primitive.MutableObjectIntMap;
-import org.eclipse.collections.api.map.primitive.MutableObjectLongMap;
-import org.eclipse.collections.api.tuple.primitive.ObjectIntPair;
-import org.eclipse.collections.api.tuple.primitive.ObjectLongPair;
-import org.eclipse.collections.impl.list.mutable.primitive.IntArrayList;
-import org.eclipse.collections.impl.map.mutable.primitive.ObjectIntHashMap;
-import org.eclipse.collections.impl.map.mutable.primitive.ObjectLongHashMap;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+import java.util.zip.Checksum;
 
 /**
  * Author: shoubo
@@ -53,9 +69,39 @@ public class HnswIndex<TId, TVector, TItem extends Item<TId, TVector>, TDistance
     private static final long serialVersionUID = 1L;
 
     /**
-     * 无效节点的标识符
+     * 预计访问的节点数乘以该倍数仍小于maxItemCount时，搜索使用稀疏的哈希已访问集合，否则使用按容量分配的稠密集合
      */
-    private static final int NO_NODE_ID = -1;
+    private static final int SPARSE_VISITED_SET_RATIO = 32;
+
+    /**
+     * 带过滤条件的搜索在凑满候选集之前最多扩展的节点数为候选集大小的该倍数，超过后改为直接扫描满足条件的节点
+     */
+    private static final int FILTERED_EXPANSION_FACTOR = 8;
+
+    /**
+     * 数据点锁的条带数 必须是2的幂
+     */
+    private static final int ITEM_LOCK_STRIPES = 1 << 12;
+
+    /**
+     * 精确搜索时每个并行任务扫描的节点数
+     */
+    private static final int EXACT_SCAN_CHUNK_SIZE = 1 << 14;
+
+    /**
+     * 二进制索引文件最多包含的段数
+     */
+    private static final int BINARY_SECTION_COUNT = 11;
+
+    /**
+     * 保存二进制格式时临时文件的后缀 写完并落盘后改名为目标文件
+     */
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+
+    /**
+     * 从文件并行载入时每个任务解码的节点数
+     */
+    private static final int ITEM_LOAD_CHUNK_SIZE = 1 << 12;
 
     /**
      * 距离类型选择器 用于计算向量之间的距离
@@ -73,6 +119,12 @@ public class HnswIndex<TId, TVector, TItem extends Item<TId, TVector>, TDistance
      */
     private MaxValueComparator<TDistance> maxValueDistanceComparator;
 
+    /**
+     * 原始 float 距离函数
+     * 当distanceType实现了FloatDistanceType且按自然顺序比较距离时非空，此时搜索和插入走原始 float 的专用路径，避免装箱
+     */
+    private FloatDistanceType<TVector> floatDistanceType;
+
     /**
      * 向量的维度
      */
@@ -134,9 +186,9 @@ public class HnswIndex<TId, TVector, TItem extends Item<TId, TVector>, TDistance
 
     /**
      * 当前索引中的节点数量
-     * nodeCount表示当前索引中有效节点的数量，用于跟踪索引的大小和状态。
+     * nodeCount表示当前索引中已分配的节点ID数量（包括已删除的节点），新节点的ID通过CAS原子地分配。
      */
-    private int nodeCount;
+    private AtomicInteger nodeCount;
 
     /**
      * 入口点节点
@@ -146,15 +198,21 @@ public class HnswIndex<TId, TVector, TItem extends Item<TId, TVector>, TDistance
 
     /**
      * 节点数组
-     * nodes是一个存储节点的数组，每个节点包含了数据点以及与其他节点的连接信息。
+     * nodes是一个存储节点的数组，每个节点包含了数据点以及与其他节点的连接信息。resize时整体替换，因此为volatile
+     */
+    private volatile AtomicReferenceArray<Node<TItem>> nodes;
+
+    /**
+     * 图的邻接表
+     * 第0层的连接按节点ID存放在定长步长的int数组中，高层的连接单独存放，节点对象本身不再持有连接列表
      */
-    private AtomicReferenceArray<Node<TItem>> nodes;
+    private FlatGraph graph;
 
     /**
      * 数据点标识符到节点索引的映射
-     * lookup是一个映射结构，用于快速查找数据点标识符对应的节点索引。
+     * lookup是一个并发映射结构，用于快速查找数据点标识符对应的节点索引，get和size不需要加锁。
      */
-    private MutableObjectIntMap<TId> lookup;
+    private ConcurrentHashMap<TId, Integer> lookup;
 
     /**
      * 已删除数据点的版本记录
@@ -162,13 +220,14 @@ public class HnswIndex<TId, TVector, TItem extends Item<TId, TVector>, TDistance
      * 在HNSW算法中，支持删除操作，即从索引中移除特定的数据点。
      * 为了确保删除操作的正确性，需要记录每个数据点的版本信息
      */
-    private MutableObjectLongMap<TId> deletedItemVersions;
+    private ConcurrentHashMap<TId, Long> deletedItemVersions;
 
     /**
-     * 数据点的锁映射
-     * locks是一个映射结构，用于在多线程环境中对数据点进行加锁，以确保并发访问的正确性。
+     * 数据点的条带锁
+     * 按ID的哈希值映射到固定数量的锁上，同一个ID的添加和删除总是使用同一把锁，因此按顺序执行；
+     * 不同ID偶尔共用一把锁，只会互相等待，不影响正确性。锁的数量固定，不随数据点的数量增长
      */
-    private Map<TId, Object> itemLocks;
+    private Object[] itemLocks;
 
     /**
      * 数据点标识符的序列化器
@@ -183,16 +242,29 @@ public class HnswIndex<TId, TVector, TItem extends Item<TId, TVector>, TDistance
     private ObjectSerializer<TItem> itemSerializer;
 
     /**
-     * 全局锁
-     * globalLock是一个可重入锁（ReentrantLock），用于保护对索引数据的并发访问。它可以在需要对整个索引进行原子操作或保护共享资源时使用。
+     * 扩容锁
+     * 添加和删除持有读锁，彼此之间不互斥；resize持有写锁，替换节点数组时没有进行中的插入。查询不需要加锁
      */
-    private ReentrantLock globalLock;
+    private ReentrantReadWriteLock resizeLock;
 
     /**
-     * 已访问位集合对象池
-     * 搜索过程会使用位集合来记录已经访问过的节点，visitedBitSetPool是一个对象池，用于缓存和重用位集合对象，以提高搜索的效率。
+     * 入口点锁
+     * 只保护写入第一个节点以及层级高于入口点的插入替换入口点时的重新判断和发布，连接新节点的搜索过程不持有它
      */
-    private GenericObjectPool<ArrayBitSet> visitedBitSetPool;
+    private ReentrantLock entryPointLock;
+
+    /**
+     * 每个线程独享的搜索上下文
+     * 搜索过程需要已访问集合和候选队列，每个线程在第一次搜索时创建自己的上下文并在之后的搜索中重复使用，
+     * 不需要在线程之间借还，线程数多于CPU核数时也不会阻塞
+     */
+    private ThreadLocal<SearchContext<TDistance>> searchContexts;
+
+    /**
+     * 搜索的统计汇总
+     * 开启时每次最近邻搜索都会记入其中的直方图，为null时不记录；不参与序列化
+     */
+    private volatile SearchStatistics searchStatistics;
 
     /**
      * 排除候选集合
@@ -206,11 +278,23 @@ public class HnswIndex<TId, TVector, TItem extends Item<TId, TVector>, TDistance
      */
     private ExactView exactView;
 
+    /**
+     * 快照锁 同一时刻只进行一次快照保存
+     */
+    private ReentrantLock snapshotLock;
+
+    /**
+     * 正在进行的快照 没有时为null
+     * 修改已有节点的邻接表、item、删除标记和已删除数据点的版本之前，先把旧值记到其中
+     */
+    private volatile Snapshot snapshot;
+
 
     private HnswIndex(RefinedBuilder<TId, TVector, TItem, TDistance> builder) {
         this.distanceType = builder.distanceType;
         this.distanceComparator = builder.distanceComparator;
         this.maxValueDistanceComparator = new MaxValueComparator<>(this.distanceComparator);
+        this.floatDistanceType = floatDistanceTypeOf(this.distanceType, this.distanceComparator);
         this.dimensions = builder.dimensions;
         this.maxItemCount = builder.maxItemCount;
 
@@ -223,22 +307,26 @@ public class HnswIndex<TId, TVector, TItem extends Item<TId, TVector>, TDistance
         this.removeEnabled = builder.removeEnabled;
 
         this.nodes = new AtomicReferenceArray<>(maxItemCount);
+        this.graph = new FlatGraph(maxItemCount, maxM0, maxM);
 
-        this.lookup = new ObjectIntHashMap<>();
-        this.deletedItemVersions = new ObjectLongHashMap<>();
-        this.itemLocks = new HashMap<>();
+        this.nodeCount = new AtomicInteger();
+        this.lookup = new ConcurrentHashMap<>();
+        this.deletedItemVersions = new ConcurrentHashMap<>();
+        this.itemLocks = newItemLocks();
 
         this.itemIdSerializer = builder.itemIdSerializer;
         this.itemSerializer = builder.itemSerializer;
 
-        this.globalLock = new ReentrantLock();
+        this.resizeLock = new ReentrantReadWriteLock();
+        this.entryPointLock = new ReentrantLock();
 
-        this.visitedBitSetPool = new GenericObjectPool<>(() -> new ArrayBitSet(this.maxItemCount),
-                Runtime.getRuntime().availableProcessors());
+        this.searchContexts = ThreadLocal.withInitial(() -> new SearchContext<>(this.nodeCount.get(), this.maxM0));
 
         this.excludedCandidates = new ArrayBitSet(maxItemCount);
 
         this.exactView = new ExactView();
+
+        this.snapshotLock = new ReentrantLock();
     }
 
     /**
@@ -257,166 +345,454 @@ public class HnswIndex<TId, TVector, TItem extends Item<TId, TVector>, TDistance
         // 为新节点分配随机层级
         int randomLevel = assignLevel(item.id(), this.levelLambda);
 
-        // 为每个层级创建一个连接列表
-        IntArrayList[] connections = new IntArrayList[randomLevel + 1];
-
-        for (int level = 0; level <= randomLevel; level++) {
-            int levelM = randomLevel == 0 ? maxM0 : maxM;
-            connections[level] = new IntArrayList(levelM);
-        }
+        // 获取数据点的锁 同一个ID的添加和删除按顺序执行，不同ID之间互不阻塞
+        Object lock = itemLock(item.id());
 
-        // 获取全局锁
-        globalLock.lock();
+        // 获取扩容锁的读锁 插入之间共享，只与resize互斥
+        resizeLock.readLock().lock();
 
         try {
-            // 检查数据点是否已存在于索引中
-            int existingNodeId = lookup.getIfAbsent(item.id(), NO_NODE_ID);
+            synchronized (lock) {
+                // 检查数据点是否已存在于索引中
+                Integer existingNodeId = lookup.get(item.id());
+
+                if (existingNodeId != null) {
+                    // 如果数据点已存在，则根据removeEnabled标志决定是否更新数据点
+                    if (!removeEnabled) {
+                        return false;
+                    }
 
-            if (existingNodeId != NO_NODE_ID) {
-                // 如果数据点已存在，则根据removeEnabled标志决定是否更新数据点
-                if (!removeEnabled) {
+                    Node<TItem> node = nodes.get(existingNodeId);
+
+                    // 如果数据点的版本号小于等于已存在节点的版本号，则不更新数据点
+                    if (item.version() < node.getItem().version()) {
+                        return false;
+                    }
+
+                    // 如果数据点的向量与已存在节点的向量相同，则更新已存在节点的数据
+                    if (Objects.deepEquals(node.getItem().vector(), item.vector())) {
+                        beforeNodeChange(node);
+                        node.item = item;
+                        return true;
+                    } else {
+                        // 如果数据点的向量与已存在节点的向量不同，则删除已存在节点，以便添加新的数据点
+                        remove(item.id(), item.version());
+                    }
+                } else if (item.version() < deletedItemVersions.getOrDefault(item.id(), -1L)) {
+                    // 如果数据点已被删除，则不添加数据点
                     return false;
                 }
 
-                Node<TItem> node = nodes.get(existingNodeId);
+                // 为新节点分配一个唯一的节点ID
+                int newNodeId = allocateNodeId();
 
-                // 如果数据点的版本号小于等于已存在节点的版本号，则不更新数据点
-                if (item.version() < node.getItem().version()) {
-                    return false;
+                // 将新节点添加到排除候选集合中
+                synchronized (excludedCandidates) {
+                    excludedCandidates.add(newNodeId);
                 }
 
-                // 如果数据点的向量与已存在节点的向量相同，则更新已存在节点的数据
-                if (Objects.deepEquals(node.getItem().vector(), item.vector())) {
-                    node.item = item;
-                    return true;
-                } else {
-                    // 如果数据点的向量与已存在节点的向量不同，则删除已存在节点，以便添加新的数据点
-                    remove(item.id(), item.version());
+                try {
+                    // 为新节点的每个层级分配邻居槽位
+                    graph.allocate(newNodeId, randomLevel);
+
+                    // 创建新节点
+                    Node<TItem> newNode = new Node<>(newNodeId, randomLevel, item, false);
+
+                    // 将新节点添加到节点数组中
+                    nodes.set(newNodeId, newNode);
+
+                    // 将数据点标识符与节点ID建立映射关系
+                    lookup.put(item.id(), newNodeId);
+
+                    // 从已删除数据点的版本记录中删除该数据点
+                    beforeDeletedVersionChange(item.id());
+                    deletedItemVersions.remove(item.id());
+
+                    synchronized (newNode) {
+                        // 获取入口点节点的副本 索引为空时在入口点锁下再确认一次，第一个节点直接成为入口点
+                        Node<TItem> entryPointCopy = entryPoint;
+                        if (entryPointCopy == null) {
+                            entryPointLock.lock();
+                            try {
+                                entryPointCopy = entryPoint;
+                                if (entryPointCopy == null) {
+                                    this.entryPoint = newNode;
+                                    return true;
+                                }
+                            } finally {
+                                entryPointLock.unlock();
+                            }
+                        }
+
+                        // 从入口点节点开始，向下搜索直到找到每个层级的最佳候选节点，并与之互相连接；连接过程不持有入口点锁
+                        connectNewElement(newNode, entryPointCopy, randomLevel, 0);
+
+                        // 新节点的层级高于入口点时替换入口点 入口点锁只保护重新判断和发布这一步；
+                        // 连接期间入口点可能已被层级更高的节点替换，此时在锁外按新的入口点补上中间几层的连接，再重新判断
+                        Node<TItem> linkedFrom = entryPointCopy;
+                        while (randomLevel > linkedFrom.maxLevel()) {
+                            Node<TItem> current;
+                            entryPointLock.lock();
+                            try {
+                                current = entryPoint;
+                                if (current.maxLevel() <= linkedFrom.maxLevel()) {
+                                    this.entryPoint = newNode;
+                                    break;
+                                }
+                            } finally {
+                                entryPointLock.unlock();
+                            }
+                            connectNewElement(newNode, current, randomLevel, linkedFrom.maxLevel() + 1);
+                            linkedFrom = current;
+                        }
+                        return true;
+                    }
+                } finally {
+                    // 从排除候选集合中删除新节点
+                    synchronized (excludedCandidates) {
+                        excludedCandidates.remove(newNodeId);
+                    }
                 }
-            } else if (item.version() < deletedItemVersions.getIfAbsent(item.id(), -1)) {
-                // 如果数据点已被删除，则不添加数据点
-                return false;
             }
+        } finally {
+            // 释放扩容锁的读锁
+            resizeLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 获取ID对应的条带锁
+     *
+     * @param id 数据点的ID
+     * @return 锁对象
+     */
+    private Object itemLock(TId id) {
+        int hash = id.hashCode();
+        return itemLocks[(hash ^ (hash >>> 16)) & (ITEM_LOCK_STRIPES - 1)];
+    }
+
+    /**
+     * 创建条带锁数组
+     *
+     * @return 条带锁数组
+     */
+    private static Object[] newItemLocks() {
+        Object[] locks = new Object[ITEM_LOCK_STRIPES];
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+        return locks;
+    }
+
+    /**
+     * 分配一个新的节点ID 多个线程可以同时分配，不需要全局锁
+     *
+     * @return 新的节点ID
+     * @throws SizeLimitExceededException 索引已满时抛出
+     */
+    private int allocateNodeId() {
+        while (true) {
+            int count = nodeCount.get();
 
             // 检查索引是否已满
-            if (nodeCount >= this.maxItemCount) {
-                throw new SizeLimitExceededException("索引中的项数: " + nodeCount + ", 超过了最大限制: " + maxItemCount);
+            if (count >= this.maxItemCount) {
+                throw new SizeLimitExceededException("索引中的项数: " + count + ", 超过了最大限制: " + maxItemCount);
             }
 
-            // 为新节点分配一个唯一的节点ID
-            int newNodeId = nodeCount++;
-
-            // 将新节点添加到排除候选集合中
-            synchronized (excludedCandidates) {
-                excludedCandidates.add(newNodeId);
+            if (nodeCount.compareAndSet(count, count + 1)) {
+                return count;
             }
+        }
+    }
+
+    /**
+     * 把新节点连接到图中 距离为原始 float 时走专用路径
+     *
+     * @param newNode        新节点
+     * @param entryPointCopy 入口点节点的副本
+     * @param randomLevel    新节点的层级
+     * @param minLevel       连接的最低层级
+     */
+    private void connectNewElement(Node<TItem> newNode, Node<TItem> entryPointCopy, int randomLevel, int minLevel) {
+        if (floatDistanceType != null) {
+            connectNewElementFloat(newNode, entryPointCopy, randomLevel, minLevel);
+        } else {
+            connectNewElementGeneric(newNode, entryPointCopy, randomLevel, minLevel);
+        }
+    }
+
+    /**
+     * 通用距离的插入路径 从入口点向下贪心搜索到新节点的最高层，再在每一层上搜索候选节点并互相连接
+     * 调用方需持有新节点的锁
+     *
+     * @param newNode        新节点
+     * @param entryPointCopy 入口点节点的副本
+     * @param randomLevel    新节点的层级
+     * @param minLevel       连接的最低层级 低于它的层已经连接过
+     */
+    private void connectNewElementGeneric(Node<TItem> newNode, Node<TItem> entryPointCopy, int randomLevel, int minLevel) {
+        TVector vector = newNode.item.vector();
 
-            // 创建新节点
-            Node<TItem> newNode = new Node<>(newNodeId, connections, item, false);
+        Node<TItem> currObj = entryPointCopy;
 
-            // 将新节点添加到节点数组中
-            nodes.set(newNodeId, newNode);
+        if (newNode.maxLevel() < entryPointCopy.maxLevel()) {
+            TDistance curDist = distanceType.distance(vector, currObj.item.vector());
+            int[] neighbours = searchContexts.get().neighbourScratch;
 
-            // 将数据点标识符与节点ID建立映射关系
-            lookup.put(item.id(), newNodeId);
+            for (int activeLevel = entryPointCopy.maxLevel(); activeLevel > newNode.maxLevel(); activeLevel--) {
 
-            // 从已删除数据点的版本记录中删除该数据点
-            deletedItemVersions.remove(item.id());
+                boolean changed = true;
 
-            // 获取数据点的锁
-            Object lock = itemLocks.computeIfAbsent(item.id(), k -> new Object());
+                while (changed) {
+                    changed = false;
 
-            // 获取入口点节点的副本
-            Node<TItem> entryPointCopy = entryPoint;
+                    int connectionCount = graph.copy(currObj.id, activeLevel, neighbours);
 
-            try {
-                // 获取数据点锁和新节点锁
-                synchronized (lock) {
-                    synchronized (newNode) {
+                    for (int i = 0; i < connectionCount; i++) {
+
+                        int candidateId = neighbours[i];
+
+                        Node<TItem> candidateNode = nodes.get(candidateId);
+
+                        TDistance candidateDistance = distanceType.distance(
+                                vector,
+                                candidateNode.item.vector()
+                        );
 
-                        // 如果入口点节点存在且新节点的层级小于等于入口点节点的最大层级，则释放全局锁
-                        if (entryPoint != null && randomLevel <= entryPoint.maxLevel()) {
-                            globalLock.unlock();
+                        if (lt(candidateDistance, curDist)) {
+                            curDist = candidateDistance;
+                            currObj = candidateNode;
+                            changed = true;
                         }
+                    }
+                }
+            }
+        }
+
+        // 在每个层级上搜索最佳候选节点，并将新节点与候选节点互相连接
+        for (int level = Math.min(randomLevel, entryPointCopy.maxLevel()); level >= minLevel; level--) {
+            PriorityQueue<NodeIdAndDistance<TDistance>> topCandidates = searchBaseLayer(currObj, vector, efConstruction, level, null, null);
 
-                        // 从入口点节点开始，向下搜索直到找到每个层级的最佳候选节点
-                        Node<TItem> currObj = entryPointCopy;
+            if (entryPointCopy.deleted) {
+                TDistance distance = distanceType.distance(vector, entryPointCopy.getItem().vector());
+                topCandidates.add(new NodeIdAndDistance<>(entryPointCopy.id, distance, maxValueDistanceComparator));
 
-                        if (currObj != null) {
-                            if (newNode.maxLevel() < entryPointCopy.maxLevel()) {
-                                TDistance curDist = distanceType.distance(item.vector(), currObj.item.vector());
+                if (topCandidates.size() > efConstruction) {
+                    topCandidates.poll();
+                }
+            }
 
-                                for (int activeLevel = entryPointCopy.maxLevel(); activeLevel > newNode.maxLevel(); activeLevel--) {
+            mutuallyConnectNewElement(newNode, topCandidates, level);
+        }
+    }
 
-                                    boolean changed = true;
+    /**
+     * 原始 float 距离的插入路径 从入口点向下贪心搜索到新节点的最高层，再在每一层上搜索候选节点并互相连接
+     * 调用方需持有新节点的锁
+     *
+     * @param newNode        新节点
+     * @param entryPointCopy 入口点节点的副本
+     * @param randomLevel    新节点的层级
+     * @param minLevel       连接的最低层级 低于它的层已经连接过
+     */
+    private void connectNewElementFloat(Node<TItem> newNode, Node<TItem> entryPointCopy, int randomLevel, int minLevel) {
+        TVector vector = newNode.item.vector();
 
-                                    while (changed) {
-                                        changed = false;
+        Node<TItem> currObj = entryPointCopy;
 
-                                        synchronized (currObj) {
-                                            MutableIntList candidateConnections = currObj.connections[activeLevel];
+        // 在高于新节点层级的层上只做贪心搜索
+        if (newNode.maxLevel() < entryPointCopy.maxLevel()) {
+            currObj = greedySearchFloat(entryPointCopy, vector, entryPointCopy.maxLevel(), newNode.maxLevel());
+        }
 
-                                            for (int i = 0; i < candidateConnections.size(); i++) {
+        // 在每个层级上搜索最佳候选节点，并将新节点与候选节点互相连接
+        for (int level = Math.min(randomLevel, entryPointCopy.maxLevel()); level >= minLevel; level--) {
+            IntFloatHeap topCandidates = searchBaseLayerFloat(currObj, vector, efConstruction, level, null, null);
 
-                                                int candidateId = candidateConnections.get(i);
+            if (entryPointCopy.deleted) {
+                float distance = floatDistanceType.floatDistance(vector, entryPointCopy.getItem().vector());
+                topCandidates.push(entryPointCopy.id, distance);
 
-                                                Node<TItem> candidateNode = nodes.get(candidateId);
+                if (topCandidates.size() > efConstruction) {
+                    topCandidates.pop();
+                }
+            }
 
-                                                TDistance candidateDistance = distanceType.distance(
-                                                        item.vector(),
-                                                        candidateNode.item.vector()
-                                                );
+            mutuallyConnectNewElementFloat(newNode, topCandidates, level);
+        }
+    }
 
-                                                if (lt(candidateDistance, curDist)) {
-                                                    curDist = candidateDistance;
-                                                    currObj = candidateNode;
-                                                    changed = true;
-                                                }
-                                            }
-                                        }
-                                    }
-                                }
-                            }
+    /**
+     * 原始 float 距离的贪心搜索 从fromLevel层开始逐层向下，直到toLevel层（不含）为止，每层只保留最近的一个节点
+     *
+     * @param entryPointNode 入口点
+     * @param destination    目标向量
+     * @param fromLevel      起始层级
+     * @param toLevel        终止层级（不含）
+     * @return 最近的节点
+     */
+    private Node<TItem> greedySearchFloat(Node<TItem> entryPointNode, TVector destination, int fromLevel, int toLevel) {
+        SearchContext<TDistance> context = searchContexts.get();
+        int[] neighbours = context.neighbourScratch;
 
-                            // 在每个层级上搜索最佳候选节点，并将新节点与候选节点互相连接
-                            for (int level = Math.min(randomLevel, entryPointCopy.maxLevel()); level >= 0; level--) {
-                                PriorityQueue<NodeIdAndDistance<TDistance>> topCandidates = searchBaseLayer(currObj, item.vector(), efConstruction, level);
+        Node<TItem> curObj = entryPointNode;
+        float curDist = floatDistanceType.floatDistance(destination, curObj.getItem().vector());
+        context.distanceComputations++;
 
-                                if (entryPointCopy.deleted) {
-                                    TDistance distance = distanceType.distance(item.vector(), entryPointCopy.getItem().vector());
-                                    topCandidates.add(new NodeIdAndDistance<>(entryPointCopy.id, distance, maxValueDistanceComparator));
+        for (int activeLevel = fromLevel; activeLevel > toLevel; activeLevel--) {
+            boolean changed = true;
+            context.levelsDescended++;
 
-                                    if (topCandidates.size() > efConstruction) {
-                                        topCandidates.poll();
-                                    }
-                                }
+            // 循环直到没有距离更新
+            while (changed) {
+                changed = false;
 
-                                mutuallyConnectNewElement(newNode, topCandidates, level);
-                            }
-                        }
+                int connectionCount = copyConnections(context, curObj.id, activeLevel);
+                context.nodesExpanded++;
+                context.distanceComputations += connectionCount;
 
-                        // 如果新节点的最大层级大于入口点节点的最大层级，则将新节点设置为入口点节点
-                        if (entryPoint == null || newNode.maxLevel() > entryPointCopy.maxLevel()) {
-                            // 这是线程安全的，因为在添加level时获得了全局锁
-                            this.entryPoint = newNode;
-                        }
-                        return true;
+                for (int i = 0; i < connectionCount; i++) {
+                    int candidateId = neighbours[i];
+
+                    float candidateDist = floatDistanceType.floatDistance(destination, nodes.get(candidateId).getItem().vector());
+
+                    if (candidateDist < curDist) {
+                        curObj = nodes.get(candidateId);
+                        curDist = candidateDist;
+                        changed = true;
                     }
                 }
-            } finally {
-                // 从排除候选集合中删除新节点
-                synchronized (excludedCandidates) {
-                    excludedCandidates.remove(newNodeId);
+            }
+        }
+        return curObj;
+    }
+
+    /**
+     * 将新节点与候选节点互相连接 原始 float 距离的版本
+     * 修剪邻居列表用到的堆都来自当前线程的搜索上下文，不创建对象
+     *
+     * @param newNode       新节点
+     * @param topCandidates 候选节点 最大堆
+     * @param level         当前层级
+     */
+    private void mutuallyConnectNewElementFloat(Node<TItem> newNode,
+                                                IntFloatHeap topCandidates,
+                                                int level) {
+        int bestN = level == 0 ? this.maxM0 : this.maxM;
+
+        int newNodeId = newNode.id;
+        TVector newItemVector = newNode.getItem().vector();
+
+        SearchContext<TDistance> context = searchContexts.get();
+
+        getNeighborsByHeuristic2Float(topCandidates, m, context);
+
+        while (!topCandidates.isEmpty()) {
+            int selectedNeighbourId = topCandidates.pop();
+
+            synchronized (excludedCandidates) {
+                if (excludedCandidates.contains(selectedNeighbourId)) {
+                    continue;
                 }
             }
-        } finally {
-            // 释放全局锁
-            if (globalLock.isHeldByCurrentThread()) {
-                globalLock.unlock();
+
+            graph.add(newNodeId, level, selectedNeighbourId);
+
+            Node<TItem> neighbourNode = nodes.get(selectedNeighbourId);
+
+            synchronized (neighbourNode) {
+                // 邻居是已有节点，修改它的邻接表之前先交给正在进行的快照
+                beforeConnectionsChange(selectedNeighbourId, level);
+
+                int neighbourConnectionCount = graph.size(selectedNeighbourId, level);
+
+                if (neighbourConnectionCount < bestN) {
+                    graph.add(selectedNeighbourId, level, newNodeId);
+                } else {
+                    TVector neighbourVector = neighbourNode.getItem().vector();
+
+                    // 找到被新的元素替换的“最弱的”元素
+                    float dMax = floatDistanceType.floatDistance(newItemVector, neighbourVector);
+
+                    IntFloatHeap candidates = context.floatNeighbourCandidates;
+                    candidates.clear();
+                    candidates.push(newNodeId, dMax);
+
+                    for (int i = 0; i < neighbourConnectionCount; i++) {
+                        int id = graph.get(selectedNeighbourId, level, i);
+                        float dist = floatDistanceType.floatDistance(neighbourVector, nodes.get(id).getItem().vector());
+                        candidates.push(id, dist);
+                    }
+
+                    getNeighborsByHeuristic2Float(candidates, bestN, context);
+
+                    // 一次性替换邻居列表，读取方看到的要么是旧列表要么是新列表
+                    int[] prunedIds = context.prunedScratch;
+                    int prunedCount = 0;
+                    while (!candidates.isEmpty()) {
+                        prunedIds[prunedCount++] = candidates.pop();
+                    }
+                    graph.set(selectedNeighbourId, level, prunedIds, prunedCount);
+                }
             }
         }
     }
 
+    /**
+     * 通过启发式算法获取最佳候选节点 原始 float 距离的版本
+     *
+     * @param topCandidates 候选节点 最大堆，执行后只保留被选中的节点
+     * @param m             最佳候选节点的数量
+     * @param context       当前线程的搜索上下文 提供临时使用的堆
+     */
+    private void getNeighborsByHeuristic2Float(IntFloatHeap topCandidates, int m, SearchContext<TDistance> context) {
+        if (topCandidates.size() < m) {
+            return;
+        }
+
+        IntFloatHeap queueClosest = context.floatHeuristicClosest;
+        // 只用作列表，按下标遍历
+        IntFloatHeap returnList = context.floatHeuristicSelected;
+        queueClosest.clear();
+        returnList.clear();
+
+        while (!topCandidates.isEmpty()) {
+            float distance = topCandidates.peekDistance();
+            queueClosest.push(topCandidates.pop(), distance);
+        }
+
+        while (!queueClosest.isEmpty()) {
+            if (returnList.size() >= m) {
+                break;
+            }
+
+            float distToQuery = queueClosest.peekDistance();
+            int currentId = queueClosest.pop();
+
+            boolean good = true;
+
+            TVector currentVector = nodes.get(currentId).getItem().vector();
+
+            for (int i = 0; i < returnList.size(); i++) {
+                float curDist = floatDistanceType.floatDistance(
+                        nodes.get(returnList.idAt(i)).getItem().vector(),
+                        currentVector
+                );
+
+                if (curDist < distToQuery) {
+                    good = false;
+                    break;
+                }
+            }
+            if (good) {
+                returnList.push(currentId, distToQuery);
+            }
+        }
+
+        for (int i = 0; i < returnList.size(); i++) {
+            topCandidates.push(returnList.idAt(i), returnList.distanceAt(i));
+        }
+    }
 
     /**
      * 将新节点与候选节点互相连接
@@ -435,9 +811,6 @@ public class HnswIndex<TId, TVector, TItem extends Item<TId, TVector>, TDistance
         int newNodeId = newNode.id;
         TVector newItemVector = newNode.getItem().vector();
 
-        // 获取新节点在当前层级上的连接列表
-        MutableIntList newItemConnections = newNode.connections[level];
-
         // 根据启发式算法获取最佳候选节点
         getNeighborsByHeuristic2(topCandidates, m);
 
@@ -454,22 +827,25 @@ public class HnswIndex<TId, TVector, TItem extends Item<TId, TVector>, TDistance
             }
 
             // 将当前最佳候选节点添加到新节点的连接列表中
-            newItemConnections.add(selectedNeighbourId);
+            graph.add(newNodeId, level, selectedNeighbourId);
 
             // 获取当前最佳候选节点
             Node<TItem> neighbourNode = nodes.get(selectedNeighbourId);
 
             // 对当前最佳候选节点进行同步操作
             synchronized (neighbourNode) {
+                // 邻居是已有节点，修改它的邻接表之前先交给正在进行的快照
+                beforeConnectionsChange(selectedNeighbourId, level);
+
                 // 获取当前最佳候选节点的向量
                 TVector neighbourVector = neighbourNode.getItem().vector();
 
-                // 获取当前最佳候选节点在当前层级上的连接列表
-                MutableIntList neighbourConnectionsAtLevel = neighbourNode.connections[level];
+                // 获取当前最佳候选节点在当前层级上的连接数
+                int neighbourConnectionCount = graph.size(selectedNeighbourId, level);
 
                 // 如果当前最佳候选节点在当前层级上的连接列表未满，则将新节点添加到该列表中
-                if (neighbourConnectionsAtLevel.size() < bestN) {
-                    neighbourConnectionsAtLevel.add(newNodeId);
+                if (neighbourConnectionCount < bestN) {
+                    graph.add(selectedNeighbourId, level, newNodeId);
                 } else {
                     // 找到被新的元素替换的“最弱的”元素
                     TDistance dMax = distanceType.distance(
@@ -485,25 +861,27 @@ public class HnswIndex<TId, TVector, TItem extends Item<TId, TVector>, TDistance
                     candidates.add(new NodeIdAndDistance<>(newNodeId, dMax, maxValueDistanceComparator));
 
                     // 将当前最佳候选节点的连接列表中的节点添加到优先队列中
-                    neighbourConnectionsAtLevel.forEach(id -> {
+                    for (int i = 0; i < neighbourConnectionCount; i++) {
+                        int id = graph.get(selectedNeighbourId, level, i);
+
                         TDistance dist = distanceType.distance(
                                 neighbourVector,
                                 nodes.get(id).getItem().vector()
                         );
 
                         candidates.add(new NodeIdAndDistance<>(id, dist, maxValueDistanceComparator));
-                    });
+                    }
 
                     // 根据启发式算法获取最佳候选节点
                     getNeighborsByHeuristic2(candidates, bestN);
 
-                    // 清空当前最佳候选节点在当前层级上的连接列表
-                    neighbourConnectionsAtLevel.clear();
-
-                    // 将优先队列中的节点添加到当前最佳候选节点在当前层级上的连接列表中
+                    // 将优先队列中的节点一次性替换为当前最佳候选节点在当前层级上的连接列表
+                    int[] prunedIds = new int[candidates.size()];
+                    int prunedCount = 0;
                     while (!candidates.isEmpty()) {
-                        neighbourConnectionsAtLevel.add(candidates.poll().nodeId);
+                        prunedIds[prunedCount++] = candidates.poll().nodeId;
                     }
+                    graph.set(selectedNeighbourId, level, prunedIds, prunedCount);
                 }
             }
         }
@@ -587,44 +965,51 @@ public class HnswIndex<TId, TVector, TItem extends Item<TId, TVector>, TDistance
             return false;
         }
 
-        // 获取全局锁
-        globalLock.lock();
+        // 获取数据点的锁 与同一个ID的添加按顺序执行
+        Object lock = itemLock(id);
+
+        // 获取扩容锁的读锁
+        resizeLock.readLock().lock();
 
         try {
-            // 查找指定 ID 对应的内部节点 ID
-            int internalNodeId = lookup.getIfAbsent(id, NO_NODE_ID);
-            // 如果指定 ID 对应的内部节点 ID 不存在，则直接返回删除失败
-            if (internalNodeId == NO_NODE_ID) {
-                return false;
-            }
+            synchronized (lock) {
+                // 查找指定 ID 对应的内部节点 ID
+                Integer internalNodeId = lookup.get(id);
+                // 如果指定 ID 对应的内部节点 ID 不存在，则直接返回删除失败
+                if (internalNodeId == null) {
+                    return false;
+                }
 
-            // 获取指定 ID 对应的节点
-            Node<TItem> node = nodes.get(internalNodeId);
+                // 获取指定 ID 对应的节点
+                Node<TItem> node = nodes.get(internalNodeId);
 
-            // 如果指定 ID 对应的节点不存在，则直接返回删除失败
-            if (node == null) {
-                return false;
-            }
+                // 如果指定 ID 对应的节点不存在，则直接返回删除失败
+                if (node == null) {
+                    return false;
+                }
 
-            // 如果指定 ID 对应的节点的版本号大于要删除的版本号，则直接返回删除失败
-            if (node.getItem().version() > version) {
-                return false;
-            }
+                // 如果指定 ID 对应的节点的版本号大于要删除的版本号，则直接返回删除失败
+                if (node.getItem().version() > version) {
+                    return false;
+                }
 
-            // 将指定 ID 对应的节点标记为已删除
-            node.deleted = true;
+                // 将指定 ID 对应的节点标记为已删除
+                beforeNodeChange(node);
+                node.deleted = true;
 
-            // 从查找表中删除指定 ID
-            lookup.remove(id);
+                // 从查找表中删除指定 ID
+                lookup.remove(id);
 
-            // 将被删除的项的版本号添加到已删除项版本号列表中
-            deletedItemVersions.put(id, version);
+                // 将被删除的项的版本号添加到已删除项版本号列表中
+                beforeDeletedVersionChange(id);
+                deletedItemVersions.put(id, version);
 
-            // 返回删除成功
-            return true;
+                // 返回删除成功
+                return true;
+            }
         } finally {
-            // 释放全局锁
-            globalLock.unlock();
+            // 释放扩容锁的读锁
+            resizeLock.readLock().unlock();
         }
     }
 
@@ -637,12 +1022,7 @@ public class HnswIndex<TId, TVector, TItem extends Item<TId, TVector>, TDistance
      */
     @Override
     public int size() {
-        globalLock.lock();
-        try {
-            return lookup.size();
-        } finally {
-            globalLock.unlock();
-        }
+        return lookup.size();
     }
 
     /**
@@ -653,21 +1033,14 @@ public class HnswIndex<TId, TVector, TItem extends Item<TId, TVector>, TDistance
      */
     @Override
     public Optional<TItem> get(TId id) {
-        // 获取全局锁
-        globalLock.lock();
-        try {
-            // 查找指定 ID 对应的内部节点 ID
-            int nodeId = lookup.getIfAbsent(id, NO_NODE_ID);
-            // 如果指定 ID 对应的内部节点 ID 不存在，则返回 Optional.empty()
-            if (nodeId == NO_NODE_ID) {
-                return Optional.empty();
-            }
-            // 返回指定 ID 对应的节点的项
-            return Optional.ofNullable(nodes.get(nodeId)).map(Node::getItem);
-        } finally {
-            // 释放全局锁
-            globalLock.unlock();
+        // 查找指定 ID 对应的内部节点 ID
+        Integer nodeId = lookup.get(id);
+        // 如果指定 ID 对应的内部节点 ID 不存在，则返回 Optional.empty()
+        if (nodeId == null) {
+            return Optional.empty();
         }
+        // 返回指定 ID 对应的节点的项
+        return Optional.ofNullable(nodes.get(nodeId)).map(Node::getItem);
     }
 
 
@@ -679,20 +1052,18 @@ public class HnswIndex<TId, TVector, TItem extends Item<TId, TVector>, TDistance
      */
     @Override
     public Collection<TItem> items() {
-        globalLock.lock();
-        try {
-            List<TItem> results = new ArrayList<>(size());
-
-            Iterator<TItem> iterator = new ItemIterator();
-
-            while (iterator.hasNext()) {
-                results.add(iterator.next());
+        List<TItem> results = new ArrayList<>(size());
+
+        // 按已分配的节点ID遍历，并发添加或删除时不会越界
+        AtomicReferenceArray<Node<TItem>> nodesCopy = nodes;
+        for (int i = 0, count = nodeCount.get(); i < count; i++) {
+            Node<TItem> node = nodesCopy.get(i);
+            if (node != null && !node.deleted) {
+                results.add(node.item);
             }
-
-            return results;
-        } finally {
-            globalLock.unlock();
         }
+
+        return results;
     }
 
     /**
@@ -704,90 +1075,914 @@ public class HnswIndex<TId, TVector, TItem extends Item<TId, TVector>, TDistance
      */
     @Override
     public List<SearchResultBO<TItem, TDistance>> findNearest(TVector destination, int k) {
-        // 检查入口点是否为空
-        if (entryPoint == null) {
-            return Collections.emptyList();
-        }
-
-        // 创建入口点的副本
-        Node<TItem> entryPointCopy = entryPoint;
-
-        // 将当前对象设置为入口点的副本
-        Node<TItem> curObj = entryPointCopy;
+        return searchNearest(destination, k, ef, null, null);
+    }
+
+    /**
+     * 使用单次查询的搜索参数查找距离给定目标向量最近的k个邻居 不影响其他调用方使用的ef
+     * 设置了预算时，第0层搜索在任意一项预算用完后提前结束，返回当前找到的最近邻
+     *
+     * @param destination 向量
+     * @param k           数目
+     * @param params      搜索参数
+     * @return 搜索结果列表及是否提前结束
+     */
+    public SearchResultsBO<TItem, TDistance> findNearest(TVector destination, int k, SearchParams params) {
+        SearchBudget budget = params.hasBudget() ? new SearchBudget(params) : null;
+        int searchEf = params.getEf() > 0 ? params.getEf() : ef;
+        long start = params.isCollectStats() ? System.nanoTime() : 0L;
+
+        List<SearchResultBO<TItem, TDistance>> results = searchNearest(destination, k, searchEf, null, budget);
+
+        // 搜索的计数留在当前线程的搜索上下文中，直到下一次搜索
+        SearchStatsBO stats = params.isCollectStats()
+                ? searchContexts.get().stats(System.nanoTime() - start)
+                : null;
+        return new SearchResultsBO<>(results, budget != null && budget.isTerminatedEarly(), stats);
+    }
+
+    /**
+     * 开启或关闭搜索的统计汇总 开启后每次最近邻搜索的计数和耗时都会记入直方图，关闭时不做任何记录
+     * 统计汇总不会被序列化，加载后的索引默认关闭
+     *
+     * @param enabled 是否开启
+     */
+    public void setSearchStatisticsEnabled(boolean enabled) {
+        if (!enabled) {
+            this.searchStatistics = null;
+        } else if (this.searchStatistics == null) {
+            this.searchStatistics = new SearchStatistics();
+        }
+    }
+
+    /**
+     * 获取搜索的统计汇总
+     *
+     * @return 统计汇总 未开启时为空
+     */
+    public Optional<SearchStatistics> getSearchStatistics() {
+        return Optional.ofNullable(searchStatistics);
+    }
+
+    /**
+     * 在HNSW索引中查找距离给定目标向量最近的、满足过滤条件的k个邻居
+     * 不满足条件的节点和已删除的节点一样只用于导航，不会进入最近邻候选集；过滤条件只对进入候选集的节点求值
+     * 满足条件的节点很稀疏时，扩展的节点数达到ef的 {@link #FILTERED_EXPANSION_FACTOR} 倍仍没有凑满ef个候选就改为对每个节点求值并直接计算距离
+     *
+     * @param destination 向量
+     * @param k           数目
+     * @param filter      过滤条件
+     * @return 搜索结果列表
+     */
+    @Override
+    public List<SearchResultBO<TItem, TDistance>> findNearest(TVector destination, int k, Predicate<TItem> filter) {
+        return searchNearest(destination, k, ef, nodeId -> filter.test(nodes.get(nodeId).getItem()), null);
+    }
+
+    /**
+     * 在HNSW索引中查找与给定目标向量的距离不超过radius的item
+     * 在基础层级上只搜索一次：先和普通搜索一样以ef为宽度扩展，之后只要最近的待扩展节点仍在半径内且结果未满limit个，
+     * 就在同一个候选集和已访问集合上继续扩展，直到最近的待扩展节点超出半径、结果已满且更近的节点已经扩展完，或者图中的节点已经搜完
+     *
+     * @param destination 向量
+     * @param radius      距离的上限
+     * @param limit       最多返回的数目
+     * @return 搜索结果列表 按距离从近到远排列
+     */
+    @Override
+    public List<SearchResultBO<TItem, TDistance>> findWithinDistance(TVector destination, TDistance radius, int limit) {
+        if (limit <= 0) {
+            return Collections.emptyList();
+        }
+
+        // 清零当前线程的搜索计数
+        SearchContext<TDistance> context = searchContexts.get();
+        context.resetStats();
+
+        if (entryPoint == null) {
+            return Collections.emptyList();
+        }
+
+        SearchStatistics statistics = searchStatistics;
+        long start = statistics != null ? System.nanoTime() : 0L;
+
+        List<SearchResultBO<TItem, TDistance>> results = floatDistanceType != null
+                ? findWithinDistanceFloat(destination, ((Number) radius).floatValue(), limit)
+                : findWithinDistanceGeneric(destination, radius, limit);
+
+        if (statistics != null) {
+            statistics.record(context.stats(System.nanoTime() - start));
+        }
+        return results;
+    }
+
+    /**
+     * 任意距离类型的范围搜索
+     *
+     * @param destination 向量
+     * @param radius      距离的上限
+     * @param limit       最多返回的数目
+     * @return 搜索结果列表 按距离从近到远排列
+     */
+    private List<SearchResultBO<TItem, TDistance>> findWithinDistanceGeneric(TVector destination, TDistance radius, int limit) {
+        Node<TItem> curObj = greedySearch(entryPoint, destination);
+
+        SearchContext<TDistance> context = searchContexts.get();
+        VisitedSet visitedSet = context.begin(useSparseVisitedSet(ef));
+
+        // topCandidates是导航用的最近节点，比已找到的结果多ef个，决定扩展范围；withinRadius保存半径内最近的limit个节点
+        PriorityQueue<NodeIdAndDistance<TDistance>> topCandidates = context.topCandidates;
+        PriorityQueue<NodeIdAndDistance<TDistance>> withinRadius = context.rangeResults;
+        PriorityQueue<NodeIdAndDistance<TDistance>> candidateSet = context.candidateSet;
+        int[] neighbours = context.neighbourScratch;
+
+        TDistance distance = distanceType.distance(destination, curObj.getItem().vector());
+        context.distanceComputations++;
+        NodeIdAndDistance<TDistance> entryPair = new NodeIdAndDistance<>(curObj.id, distance, maxValueDistanceComparator);
+        candidateSet.add(entryPair);
+        visitedSet.add(curObj.id);
+        if (!curObj.deleted) {
+            offerWithinDistance(topCandidates, withinRadius, entryPair, radius, limit);
+        }
+
+        while (!candidateSet.isEmpty()) {
+            NodeIdAndDistance<TDistance> currentPair = candidateSet.poll();
+            if (!withinSearchBound(topCandidates, withinRadius, currentPair.distance, radius, limit)) {
+                break;
+            }
+
+            int connectionCount = copyConnections(context, currentPair.nodeId, 0);
+            context.nodesExpanded++;
+
+            for (int i = 0; i < connectionCount; i++) {
+                int candidateId = neighbours[i];
+                if (visitedSet.contains(candidateId)) {
+                    continue;
+                }
+                visitedSet.add(candidateId);
+
+                Node<TItem> candidateNode = nodes.get(candidateId);
+                TDistance candidateDistance = distanceType.distance(destination, candidateNode.getItem().vector());
+                context.distanceComputations++;
+
+                if (withinSearchBound(topCandidates, withinRadius, candidateDistance, radius, limit)) {
+                    NodeIdAndDistance<TDistance> candidatePair = new NodeIdAndDistance<>(candidateId, candidateDistance, maxValueDistanceComparator);
+                    candidateSet.add(candidatePair);
+                    if (!candidateNode.deleted) {
+                        offerWithinDistance(topCandidates, withinRadius, candidatePair, radius, limit);
+                    }
+                }
+            }
+        }
+
+        List<SearchResultBO<TItem, TDistance>> results = new ArrayList<>(withinRadius.size());
+        while (!withinRadius.isEmpty()) {
+            NodeIdAndDistance<TDistance> pair = withinRadius.poll();
+            results.add(new SearchResultBO<>(pair.distance, nodes.get(pair.nodeId).getItem(), maxValueDistanceComparator));
+        }
+        Collections.reverse(results);
+        return results;
+    }
+
+    /**
+     * 范围搜索中某个距离的节点是否还需要扩展：导航用的最近节点未满或者它比其中最远的更近，
+     * 或者它在半径内且半径内的结果未满limit个或者它比其中最远的更近
+     */
+    private boolean withinSearchBound(PriorityQueue<NodeIdAndDistance<TDistance>> topCandidates,
+                                      PriorityQueue<NodeIdAndDistance<TDistance>> withinRadius,
+                                      TDistance distance, TDistance radius, int limit) {
+        if (topCandidates.size() < ef + withinRadius.size() || !gt(distance, topCandidates.peek().distance)) {
+            return true;
+        }
+        return !gt(distance, radius) && (withinRadius.size() < limit || !gt(distance, withinRadius.peek().distance));
+    }
+
+    /**
+     * 把范围搜索中未删除的节点加入导航用的最近节点，在半径内时同时加入结果
+     * 导航用的最近节点比已找到的结果多ef个，使搜索始终越过半径边界ef个节点的宽度，与加倍搜索宽度时的效果相当
+     */
+    private void offerWithinDistance(PriorityQueue<NodeIdAndDistance<TDistance>> topCandidates,
+                                     PriorityQueue<NodeIdAndDistance<TDistance>> withinRadius,
+                                     NodeIdAndDistance<TDistance> pair, TDistance radius, int limit) {
+        if (!gt(pair.distance, radius)) {
+            withinRadius.add(pair);
+            if (withinRadius.size() > limit) {
+                withinRadius.poll();
+            }
+        }
+        topCandidates.add(pair);
+        if (topCandidates.size() > ef + withinRadius.size()) {
+            topCandidates.poll();
+        }
+    }
+
+    /**
+     * 原始 float 距离的范围搜索 逻辑与{@link #findWithinDistanceGeneric}相同，只有最终结果才会装箱
+     *
+     * @param destination 向量
+     * @param radius      距离的上限
+     * @param limit       最多返回的数目
+     * @return 搜索结果列表 按距离从近到远排列
+     */
+    @SuppressWarnings("unchecked")
+    private List<SearchResultBO<TItem, TDistance>> findWithinDistanceFloat(TVector destination, float radius, int limit) {
+        Node<TItem> entryPointCopy = entryPoint;
+        Node<TItem> curObj = greedySearchFloat(entryPointCopy, destination, entryPointCopy.maxLevel(), 0);
+
+        SearchContext<TDistance> context = searchContexts.get();
+        VisitedSet visitedSet = context.begin(useSparseVisitedSet(ef));
+
+        IntFloatHeap topCandidates = context.floatTopCandidates;
+        IntFloatHeap withinRadius = context.floatRangeResults;
+        IntFloatHeap candidateSet = context.floatCandidateSet;
+        int[] neighbours = context.neighbourScratch;
+
+        float distance = floatDistanceType.floatDistance(destination, curObj.getItem().vector());
+        context.distanceComputations++;
+        candidateSet.push(curObj.id, distance);
+        visitedSet.add(curObj.id);
+        if (!curObj.deleted) {
+            offerWithinDistance(topCandidates, withinRadius, curObj.id, distance, radius, limit);
+        }
+
+        while (!candidateSet.isEmpty()) {
+            if (!withinSearchBound(topCandidates, withinRadius, candidateSet.peekDistance(), radius, limit)) {
+                break;
+            }
+
+            int connectionCount = copyConnections(context, candidateSet.pop(), 0);
+            context.nodesExpanded++;
+
+            for (int i = 0; i < connectionCount; i++) {
+                int candidateId = neighbours[i];
+                if (visitedSet.contains(candidateId)) {
+                    continue;
+                }
+                visitedSet.add(candidateId);
+
+                float candidateDistance = floatDistanceType.floatDistance(destination, nodes.get(candidateId).getItem().vector());
+                context.distanceComputations++;
+
+                if (withinSearchBound(topCandidates, withinRadius, candidateDistance, radius, limit)) {
+                    candidateSet.push(candidateId, candidateDistance);
+                    if (!nodes.get(candidateId).deleted) {
+                        offerWithinDistance(topCandidates, withinRadius, candidateId, candidateDistance, radius, limit);
+                    }
+                }
+            }
+        }
+
+        List<SearchResultBO<TItem, TDistance>> results = new ArrayList<>(withinRadius.size());
+        while (!withinRadius.isEmpty()) {
+            TDistance resultDistance = (TDistance) Float.valueOf(withinRadius.peekDistance());
+            results.add(new SearchResultBO<>(resultDistance, nodes.get(withinRadius.pop()).getItem(), maxValueDistanceComparator));
+        }
+        Collections.reverse(results);
+        return results;
+    }
+
+    /**
+     * 原始 float 距离的版本，逻辑与{@link #withinSearchBound(PriorityQueue, PriorityQueue, Object, Object, int)}相同
+     */
+    private boolean withinSearchBound(IntFloatHeap topCandidates, IntFloatHeap withinRadius, float distance, float radius, int limit) {
+        if (topCandidates.size() < ef + withinRadius.size() || distance <= topCandidates.peekDistance()) {
+            return true;
+        }
+        return distance <= radius && (withinRadius.size() < limit || distance <= withinRadius.peekDistance());
+    }
+
+    /**
+     * 原始 float 距离的版本，逻辑与{@link #offerWithinDistance(PriorityQueue, PriorityQueue, NodeIdAndDistance, Object, int)}相同
+     */
+    private void offerWithinDistance(IntFloatHeap topCandidates, IntFloatHeap withinRadius,
+                                     int nodeId, float distance, float radius, int limit) {
+        if (distance <= radius) {
+            withinRadius.push(nodeId, distance);
+            if (withinRadius.size() > limit) {
+                withinRadius.pop();
+            }
+        }
+        topCandidates.push(nodeId, distance);
+        if (topCandidates.size() > ef + withinRadius.size()) {
+            topCandidates.pop();
+        }
+    }
+
+    /**
+     * 创建一个按距离从近到远逐个返回结果的搜索游标
+     * 游标持有自己的候选集和已访问集合，翻页时只在上一页的基础上继续扩展图，不需要从头搜索
+     *
+     * @param destination 向量
+     * @return 搜索游标
+     */
+    public SearchCursor searchCursor(TVector destination) {
+        return new SearchCursor(destination, Math.max(ef, 1));
+    }
+
+    /**
+     * 在HNSW索引中查找距离给定目标向量最近的k个邻居，只返回内部节点ID在allowedNodeIds中的item
+     * 与{@link #findNearest(Object, int, Predicate)}相比，过滤时不需要读取item，同一个过滤条件被大量查询复用时
+     * 可以先用{@link #nodeIdsMatching(Predicate)}求出位图；图搜索达到扩展上限时只直接扫描位图中的节点
+     *
+     * @param destination    向量
+     * @param k              数目
+     * @param allowedNodeIds 允许出现在结果中的内部节点ID 搜索期间不能修改
+     * @return 搜索结果列表
+     */
+    public List<SearchResultBO<TItem, TDistance>> findNearest(TVector destination, int k, BitSet allowedNodeIds) {
+        return searchNearest(destination, k, ef, new AllowedNodeIds(allowedNodeIds), null);
+    }
+
+    /**
+     * 求出item满足过滤条件的内部节点ID 结果可以传给{@link #findNearest(Object, int, BitSet)}
+     * 只包含调用时已经存在的节点，之后添加的item不在其中
+     *
+     * @param filter 过滤条件
+     * @return 满足条件的内部节点ID
+     */
+    public BitSet nodeIdsMatching(Predicate<TItem> filter) {
+        int count = nodeCount.get();
+        BitSet nodeIds = new BitSet(count);
+        for (int i = 0; i < count; i++) {
+            Node<TItem> node = nodes.get(i);
+            if (node != null && filter.test(node.getItem())) {
+                nodeIds.set(i);
+            }
+        }
+        return nodeIds;
+    }
+
+    /**
+     * 最近邻搜索的实现
+     *
+     * @param destination 向量
+     * @param k           数目
+     * @param searchEf    动态列表的大小
+     * @param nodeFilter  按内部节点ID的过滤条件 为null时不过滤
+     * @param budget      第0层搜索的预算 为null时不限制
+     * @return 搜索结果列表
+     */
+    private List<SearchResultBO<TItem, TDistance>> searchNearest(TVector destination, int k, int searchEf,
+                                                                 IntPredicate nodeFilter, SearchBudget budget) {
+        // 清零当前线程的搜索计数
+        SearchContext<TDistance> context = searchContexts.get();
+        context.resetStats();
+
+        // 检查入口点是否为空
+        if (entryPoint == null) {
+            return Collections.emptyList();
+        }
+
+        // 开启统计汇总时才计时
+        SearchStatistics statistics = searchStatistics;
+        long start = statistics != null ? System.nanoTime() : 0L;
+
+        // 距离为原始 float 时走专用路径
+        List<SearchResultBO<TItem, TDistance>> results = floatDistanceType != null
+                ? findNearestFloat(destination, k, searchEf, nodeFilter, budget)
+                : findNearestGeneric(destination, k, searchEf, nodeFilter, budget);
+
+        if (statistics != null) {
+            statistics.record(context.stats(System.nanoTime() - start));
+        }
+        return results;
+    }
+
+    /**
+     * 任意距离类型的最近邻搜索
+     *
+     * @param destination 向量
+     * @param k           数目
+     * @param searchEf    动态列表的大小
+     * @param nodeFilter  按内部节点ID的过滤条件 为null时不过滤
+     * @param budget      第0层搜索的预算 为null时不限制
+     * @return 搜索结果列表
+     */
+    private List<SearchResultBO<TItem, TDistance>> findNearestGeneric(TVector destination, int k, int searchEf,
+                                                                      IntPredicate nodeFilter, SearchBudget budget) {
+        // 从最高层开始向下贪心搜索，直到第1层
+        Node<TItem> entryPointCopy = entryPoint;
+        Node<TItem> curObj = greedySearch(entryPointCopy, destination);
+
+        // 在基础层级上进行搜索，获取最近的候选对象的优先级队列
+        PriorityQueue<NodeIdAndDistance<TDistance>> topCandidates = searchBaseLayer(
+                curObj,
+                destination,
+                Math.max(searchEf, k),
+                0,
+                nodeFilter,
+                budget
+        );
+
+        // 满足条件的节点太稀疏，图搜索达到扩展上限仍没能凑满候选集时直接扫描
+        if (searchContexts.get().filterExpansionLimited) {
+            return scanMatching(destination, k, nodeFilter);
+        }
+
+        // 如果队列的大小超过k，则移除距离最大的元素，保持队列的大小为k
+        while (topCandidates.size() > k) {
+            topCandidates.poll();
+        }
+
+        // 将队列中的元素转换为搜索结果列表
+        List<SearchResultBO<TItem, TDistance>> results = new ArrayList<>(topCandidates.size());
+        while (!topCandidates.isEmpty()) {
+            NodeIdAndDistance<TDistance> pair = topCandidates.poll();
+            results.add(0, new SearchResultBO<>(pair.distance, nodes.get(pair.nodeId).getItem(), maxValueDistanceComparator));
+        }
+
+        return results;
+    }
+
+    /**
+     * 从入口点所在的最高层开始向下贪心搜索，返回第0层搜索的起点
+     *
+     * @param entryPointNode 入口点
+     * @param destination    目标向量
+     * @return 距离目标向量最近的第1层节点
+     */
+    private Node<TItem> greedySearch(Node<TItem> entryPointNode, TVector destination) {
+        // 将当前对象设置为入口点
+        Node<TItem> curObj = entryPointNode;
 
         // 计算目标向量与当前对象的初始距离
         TDistance curDist = distanceType.distance(destination, curObj.getItem().vector());
 
+        // 复制连接列表用的临时数组
+        SearchContext<TDistance> context = searchContexts.get();
+        int[] neighbours = context.neighbourScratch;
+        context.distanceComputations++;
+
         // 从最高层开始向下遍历
-        for (int activeLevel = entryPointCopy.maxLevel(); activeLevel > 0; activeLevel--) {
+        for (int activeLevel = entryPointNode.maxLevel(); activeLevel > 0; activeLevel--) {
             boolean changed = true;
+            context.levelsDescended++;
 
             // 循环知道没有距离更新
             while (changed) {
                 changed = false;
 
-                // 为当前对象加锁，确保多线程访问的安全性
-                synchronized (curObj) {
-                    // 获取当前层级的候选连接列表
-                    MutableIntList candidateConnections = curObj.connections[activeLevel];
+                // 无锁地复制当前层级的候选连接列表
+                int connectionCount = copyConnections(context, curObj.id, activeLevel);
+                context.nodesExpanded++;
+                context.distanceComputations += connectionCount;
 
-                    // 遍历候选连接列表
-                    for (int i = 0; i < candidateConnections.size(); i++) {
+                // 遍历候选连接列表
+                for (int i = 0; i < connectionCount; i++) {
 
-                        // 获取候选连接的节点ID
-                        int candidateId = candidateConnections.get(i);
+                    // 获取候选连接的节点ID
+                    int candidateId = neighbours[i];
 
-                        // 计算目标向量与候选连接的距离
-                        TDistance candidateDist = distanceType.distance(
-                                destination,
-                                nodes.get(candidateId).getItem().vector()
-                        );
+                    // 计算目标向量与候选连接的距离
+                    TDistance candidateDist = distanceType.distance(
+                            destination,
+                            nodes.get(candidateId).getItem().vector()
+                    );
+
+                    // 如果候选连接的距离小于当前距离，则更新当前距离，并改变标记
+                    if (lt(candidateDist, curDist)) {
+                        curObj = nodes.get(candidateId);
+                        curDist = candidateDist;
+                        changed = true;
+                    }
+                }
+            }
+        }
+        return curObj;
+    }
+
+    /**
+     * 原始 float 距离的最近邻搜索 只有最终的k个结果才会装箱
+     *
+     * @param destination 向量
+     * @param k           数目
+     * @param searchEf    动态列表的大小
+     * @param nodeFilter  按内部节点ID的过滤条件 为null时不过滤
+     * @param budget      第0层搜索的预算 为null时不限制
+     * @return 搜索结果列表
+     */
+    @SuppressWarnings("unchecked")
+    private List<SearchResultBO<TItem, TDistance>> findNearestFloat(TVector destination, int k, int searchEf,
+                                                                    IntPredicate nodeFilter, SearchBudget budget) {
+        Node<TItem> entryPointCopy = entryPoint;
+
+        // 从最高层开始向下贪心搜索，直到第1层
+        Node<TItem> curObj = greedySearchFloat(entryPointCopy, destination, entryPointCopy.maxLevel(), 0);
+
+        // 在基础层级上进行搜索
+        IntFloatHeap topCandidates = searchBaseLayerFloat(curObj, destination, Math.max(searchEf, k), 0, nodeFilter, budget);
+
+        // 满足条件的节点太稀疏，图搜索达到扩展上限仍没能凑满候选集时直接扫描
+        if (searchContexts.get().filterExpansionLimited) {
+            return scanMatching(destination, k, nodeFilter);
+        }
+
+        while (topCandidates.size() > k) {
+            topCandidates.pop();
+        }
+
+        // 堆顶为距离最大的节点，依次取出后再反转；此时TDistance即为Float
+        List<SearchResultBO<TItem, TDistance>> results = new ArrayList<>(topCandidates.size());
+        while (!topCandidates.isEmpty()) {
+            TDistance distance = (TDistance) Float.valueOf(topCandidates.peekDistance());
+            results.add(new SearchResultBO<>(distance, nodes.get(topCandidates.pop()).getItem(), maxValueDistanceComparator));
+        }
+        Collections.reverse(results);
+        return results;
+    }
+
+    /**
+     * 直接计算所有满足过滤条件的节点的距离，返回最近的k个 带过滤条件的图搜索达到扩展上限时使用
+     * 过滤条件是位图时只遍历其中的节点ID，否则逐个节点求值
+     *
+     * @param destination 向量
+     * @param k           数目
+     * @param nodeFilter  按内部节点ID的过滤条件
+     * @return 搜索结果列表
+     */
+    @SuppressWarnings("unchecked")
+    private List<SearchResultBO<TItem, TDistance>> scanMatching(TVector destination, int k, IntPredicate nodeFilter) {
+        SearchContext<TDistance> context = searchContexts.get();
+        BitSet allowed = nodeFilter instanceof AllowedNodeIds ? ((AllowedNodeIds) nodeFilter).nodeIds : null;
+        int count = nodeCount.get();
+
+        IntFloatHeap floatTopCandidates = context.floatTopCandidates;
+        PriorityQueue<NodeIdAndDistance<TDistance>> topCandidates = context.topCandidates;
+        floatTopCandidates.clear();
+        topCandidates.clear();
+
+        for (int nodeId = allowed != null ? allowed.nextSetBit(0) : 0; nodeId >= 0 && nodeId < count;
+             nodeId = allowed != null ? allowed.nextSetBit(nodeId + 1) : nodeId + 1) {
+            Node<TItem> node = nodes.get(nodeId);
+            if (node == null || node.deleted || (allowed == null && !nodeFilter.test(nodeId))) {
+                continue;
+            }
+            context.distanceComputations++;
+            if (floatDistanceType != null) {
+                floatTopCandidates.push(nodeId, floatDistanceType.floatDistance(destination, node.getItem().vector()));
+                if (floatTopCandidates.size() > k) {
+                    floatTopCandidates.pop();
+                }
+            } else {
+                TDistance distance = distanceType.distance(destination, node.getItem().vector());
+                topCandidates.add(new NodeIdAndDistance<>(nodeId, distance, maxValueDistanceComparator));
+                if (topCandidates.size() > k) {
+                    topCandidates.poll();
+                }
+            }
+        }
+
+        List<SearchResultBO<TItem, TDistance>> results = new ArrayList<>(k);
+        while (!floatTopCandidates.isEmpty()) {
+            TDistance distance = (TDistance) Float.valueOf(floatTopCandidates.peekDistance());
+            results.add(new SearchResultBO<>(distance, nodes.get(floatTopCandidates.pop()).getItem(), maxValueDistanceComparator));
+        }
+        while (!topCandidates.isEmpty()) {
+            NodeIdAndDistance<TDistance> pair = topCandidates.poll();
+            results.add(new SearchResultBO<>(pair.distance, nodes.get(pair.nodeId).getItem(), maxValueDistanceComparator));
+        }
+        Collections.reverse(results);
+        return results;
+    }
+
+    /**
+     * 将 HNSW 索引保存到输出流中
+     *
+     * @param out 输出流
+     * @throws IOException 如果写入输出流时发生错误
+     */
+    @Override
+    public void save(OutputStream out) throws IOException {
+        try (ObjectOutputStream oos = new ObjectOutputStream(out)) {
+            oos.writeObject(this);
+        }
+    }
+
+    /**
+     * 将 HNSW 索引以二进制格式保存到文件中
+     * 向量和邻接表以原始的定长数组写入，每一段都带有CRC32C；item仍然通过item序列化器写入，每个item一条独立的记录。
+     * 用 {@link #load(File)} 等方法载入时自动识别二进制格式和Java序列化格式，也可以用 {@link MappedHnswIndex} 直接映射。
+     * 保存的是开始保存那一刻的快照，期间的添加和删除照常进行，不会写入文件；同一时刻只进行一次保存
+     *
+     * @param file 文件
+     * @throws IOException 如果写入文件时发生错误
+     */
+    @Override
+    public void save(File file) throws IOException {
+        save(file.toPath());
+    }
+
+    /**
+     * 将 HNSW 索引以二进制格式保存到指定的路径
+     * 向量和邻接表以原始的定长数组写入，每一段都带有CRC32C；item仍然通过item序列化器写入，每个item一条独立的记录。
+     * 用 {@link #load(Path)} 等方法载入时自动识别二进制格式和Java序列化格式，也可以用 {@link MappedHnswIndex} 直接映射。
+     * 保存的是开始保存那一刻的快照，期间的添加和删除照常进行，不会写入文件；同一时刻只进行一次保存。
+     * 先写入同目录下的临时文件，落盘后原子地替换目标文件，保存失败时原来的文件不变
+     *
+     * @param path 路径
+     * @throws IOException 如果写入文件时发生错误
+     */
+    @Override
+    public void save(Path path) throws IOException {
+        save(path, beginSnapshot());
+    }
+
+    /**
+     * 把已经开始的快照以二进制格式保存到指定的路径 结束后快照失效
+     *
+     * @param path     路径
+     * @param snapshot 用 {@link #beginSnapshot()} 开始的快照
+     * @throws IOException 如果写入文件时发生错误
+     */
+    void save(Path path, Snapshot snapshot) throws IOException {
+        // 先写同目录下的临时文件，落盘后原子地替换目标文件，保存失败或中途崩溃时原来的文件不受影响
+        Path temp = path.resolveSibling(path.getFileName() + TEMP_FILE_SUFFIX);
+        boolean saved = false;
+        try {
+            try (FileChannel channel = FileChannel.open(temp,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                IndexFileWriter writer = new IndexFileWriter(channel, BINARY_SECTION_COUNT);
+                writeSections(writer, snapshot);
+                writer.finish();
+            } finally {
+                this.snapshot = null;
+                snapshotLock.unlock();
+            }
+            Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            saved = true;
+        } finally {
+            if (!saved) {
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+
+    /**
+     * 开始一次快照 在扩容锁的写锁下记下节点数和入口点
+     * 写锁只需等待进行中的添加和删除结束，拿到后立即释放，不做与节点数成正比的工作；
+     * 同一时刻只有一次快照，开始后必须由同一线程调用 {@link #save(Path, Snapshot)} 结束
+     *
+     * @return 快照
+     */
+    Snapshot beginSnapshot() {
+        snapshotLock.lock();
+        resizeLock.writeLock().lock();
+        try {
+            Snapshot started = new Snapshot(nodeCount.get(), entryPoint);
+            this.snapshot = started;
+            return started;
+        } finally {
+            resizeLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 修改已有节点的邻接表之前调用 调用方持有该节点的锁
+     *
+     * @param nodeId 节点ID
+     * @param level  层级
+     */
+    private void beforeConnectionsChange(int nodeId, int level) {
+        Snapshot current = snapshot;
+        if (current != null) {
+            current.captureConnections(nodeId, level);
+        }
+    }
+
+    /**
+     * 修改已有节点的item或删除标记之前调用 调用方持有该数据点的锁
+     *
+     * @param node 节点
+     */
+    private void beforeNodeChange(Node<TItem> node) {
+        Snapshot current = snapshot;
+        if (current != null) {
+            current.captureNode(node);
+        }
+    }
+
+    /**
+     * 修改已删除数据点的版本之前调用 调用方持有该数据点的锁
+     *
+     * @param id 数据点标识符
+     */
+    private void beforeDeletedVersionChange(TId id) {
+        Snapshot current = snapshot;
+        if (current != null) {
+            current.captureDeletedVersion(id);
+        }
+    }
+
+    /**
+     * 按二进制格式依次写入索引的各段 节点的item、删除标记和邻接表都从快照中读取
+     *
+     * @param writer   二进制索引文件的写入器
+     * @param snapshot 快照
+     * @throws IOException IO异常
+     */
+    private void writeSections(IndexFileWriter writer, Snapshot snapshot) throws IOException {
+        int count = snapshot.nodeCount;
+        Node<TItem> entryPointCopy = snapshot.entryPoint;
+
+        // 元数据
+        writer.beginSection(IndexFileWriter.SECTION_META);
+        try (ObjectOutputStream oos = new ObjectOutputStream(writer.outputStream())) {
+            oos.writeInt(dimensions);
+            oos.writeObject(distanceType);
+            oos.writeObject(distanceComparator);
+            oos.writeObject(itemIdSerializer);
+            oos.writeObject(itemSerializer);
+            oos.writeInt(maxItemCount);
+            oos.writeInt(m);
+            oos.writeInt(maxM);
+            oos.writeInt(maxM0);
+            oos.writeDouble(levelLambda);
+            oos.writeInt(ef);
+            oos.writeInt(efConstruction);
+            oos.writeBoolean(removeEnabled);
+            oos.writeInt(count);
+            oos.writeInt(entryPointCopy == null ? -1 : entryPointCopy.id);
+            oos.writeInt(IndexFileWriter.ITEM_SEGMENT_SIZE);
+        }
+        writer.endSection();
+
+        // 每个节点的最大层级和高层槽位的起始下标 空节点的层级为-1
+        writer.beginSection(IndexFileWriter.SECTION_NODES);
+        int upperSlots = 0;
+        for (int nodeId = 0; nodeId < count; nodeId++) {
+            Node<TItem> node = nodes.get(nodeId);
+            if (node == null) {
+                writer.putInt(-1);
+                writer.putInt(-1);
+            } else {
+                writer.putInt(node.maxLevel());
+                writer.putInt(node.maxLevel() > 0 ? upperSlots : -1);
+                upperSlots += node.maxLevel();
+            }
+        }
+        writer.endSection();
+
+        // 删除标记
+        writer.beginSection(IndexFileWriter.SECTION_TOMBSTONES);
+        for (int wordStart = 0; wordStart < count; wordStart += Long.SIZE) {
+            long word = 0L;
+            for (int bit = 0; bit < Long.SIZE && wordStart + bit < count; bit++) {
+                if (nodes.get(wordStart + bit) != null && snapshot.deleted(wordStart + bit)) {
+                    word |= 1L << bit;
+                }
+            }
+            writer.putLong(word);
+        }
+        writer.endSection();
+
+        // 第0层和高层的邻接表 每层定长，不足的补0
+        int[] connections = new int[maxM0];
+        writer.beginSection(IndexFileWriter.SECTION_LEVEL0);
+        for (int nodeId = 0; nodeId < count; nodeId++) {
+            int size = nodes.get(nodeId) == null ? 0 : snapshot.copyConnections(nodeId, 0, connections);
+            writeConnections(writer, connections, size, maxM0);
+        }
+        writer.endSection();
+
+        writer.beginSection(IndexFileWriter.SECTION_UPPER_LEVELS);
+        for (int nodeId = 0; nodeId < count; nodeId++) {
+            Node<TItem> node = nodes.get(nodeId);
+            if (node != null) {
+                for (int level = 1; level <= node.maxLevel(); level++) {
+                    writeConnections(writer, connections, snapshot.copyConnections(nodeId, level, connections), maxM);
+                }
+            }
+        }
+        writer.endSection();
+
+        // 向量为 float[] 且走原始 float 的专用路径时另存一份原始的向量，供内存映射的只读索引直接读取
+        if (hasFloatVectors(snapshot)) {
+            writer.beginSection(IndexFileWriter.SECTION_VECTORS);
+            for (int nodeId = 0; nodeId < count; nodeId++) {
+                float[] vector = nodes.get(nodeId) == null ? null : (float[]) snapshot.item(nodeId).vector();
+                for (int i = 0; i < dimensions; i++) {
+                    writer.putFloat(vector == null ? 0f : vector[i]);
+                }
+            }
+            writer.endSection();
+        }
 
-                        // 如果候选连接的距离小于当前距离，则更新当前距离，并改变标记
-                        if (lt(candidateDist, curDist)) {
-                            curObj = nodes.get(candidateId);
-                            curDist = candidateDist;
-                            changed = true;
-                        }
+        // 数据点 每ITEM_SEGMENT_SIZE个节点的item序列化为一条可以独立解码的记录，记录的偏移量和校验和另存一段
+        int segmentCount = (count + IndexFileWriter.ITEM_SEGMENT_SIZE - 1) / IndexFileWriter.ITEM_SEGMENT_SIZE;
+        long[] segmentOffsets = new long[segmentCount];
+        int[] segmentChecksums = new int[segmentCount];
+        Checksum recordChecksum = Crc32c.newChecksum();
+        ByteArrayOutputStream record = new ByteArrayOutputStream();
+        writer.beginSection(IndexFileWriter.SECTION_ITEM_RECORDS);
+        for (int segment = 0; segment < segmentCount; segment++) {
+            int from = segment * IndexFileWriter.ITEM_SEGMENT_SIZE;
+            int to = Math.min(from + IndexFileWriter.ITEM_SEGMENT_SIZE, count);
+            record.reset();
+            int itemCount = 0;
+            try (ObjectOutputStream oos = new ObjectOutputStream(record)) {
+                for (int nodeId = from; nodeId < to; nodeId++) {
+                    if (nodes.get(nodeId) != null) {
+                        itemSerializer.write(snapshot.item(nodeId), oos);
+                        itemCount++;
                     }
                 }
             }
+            if (itemCount == 0) {
+                segmentOffsets[segment] = -1L;
+                continue;
+            }
+            byte[] bytes = record.toByteArray();
+            recordChecksum.reset();
+            recordChecksum.update(bytes, 0, bytes.length);
+            segmentOffsets[segment] = writer.sectionPosition();
+            segmentChecksums[segment] = (int) recordChecksum.getValue();
+            writer.putInt(bytes.length);
+            writer.put(bytes, 0, bytes.length);
         }
+        writer.endSection();
 
-        // 在基础层级上进行搜索，获取最近的候选对象的优先级队列
-        PriorityQueue<NodeIdAndDistance<TDistance>> topCandidates = searchBaseLayer(
-                curObj,
-                destination,
-                Math.max(ef, k),
-                0
-        );
-
-        // 如果队列的大小超过k，则移除距离最大的元素，保持队列的大小为k
-        while (topCandidates.size() > k) {
-            topCandidates.poll();
+        writer.beginSection(IndexFileWriter.SECTION_ITEM_OFFSETS);
+        for (int segment = 0; segment < segmentCount; segment++) {
+            writer.putLong(segmentOffsets[segment]);
+            writer.putInt(segmentChecksums[segment]);
+        }
+        writer.endSection();
+
+        // lookup中的节点ID 即快照中所有未删除的节点
+        int[] lookupNodeIds = snapshot.liveNodeIds();
+        writer.beginSection(IndexFileWriter.SECTION_IDS);
+        writer.putInt(lookupNodeIds.length);
+        for (int nodeId : lookupNodeIds) {
+            writer.putInt(nodeId);
+        }
+        writer.endSection();
+
+        // 标识符的哈希表 槽位数为2的幂且至少是标识符数的两倍
+        int slots = Integer.highestOneBit(Math.max(lookupNodeIds.length, 1) * 2 - 1) << 1;
+        int[] hashes = new int[slots];
+        int[] slotNodeIds = new int[slots];
+        Arrays.fill(slotNodeIds, -1);
+        for (int nodeId : lookupNodeIds) {
+            int hash = IndexFileWriter.idHash(snapshot.item(nodeId).id());
+            int slot = hash & (slots - 1);
+            while (slotNodeIds[slot] != -1) {
+                slot = (slot + 1) & (slots - 1);
+            }
+            hashes[slot] = hash;
+            slotNodeIds[slot] = nodeId;
         }
+        writer.beginSection(IndexFileWriter.SECTION_ID_HASH);
+        writer.putInt(slots);
+        for (int slot = 0; slot < slots; slot++) {
+            writer.putInt(hashes[slot]);
+            writer.putInt(slotNodeIds[slot]);
+        }
+        writer.endSection();
 
-        // 将队列中的元素转换为搜索结果列表
-        List<SearchResultBO<TItem, TDistance>> results = new ArrayList<>(topCandidates.size());
-        while (!topCandidates.isEmpty()) {
-            NodeIdAndDistance<TDistance> pair = topCandidates.poll();
-            results.add(0, new SearchResultBO<>(pair.distance, nodes.get(pair.nodeId).getItem(), maxValueDistanceComparator));
+        // 已删除数据点的版本
+        writer.beginSection(IndexFileWriter.SECTION_DELETED_VERSIONS);
+        try (ObjectOutputStream oos = new ObjectOutputStream(writer.outputStream())) {
+            writeDeletedItemVersions(oos, snapshot.deletedItemVersions());
         }
+        writer.endSection();
+    }
 
-        return results;
+    /**
+     * 写入节点在某一层的连接 邻居数之后是定长的邻居槽位，不足的补0
+     *
+     * @param writer      二进制索引文件的写入器
+     * @param connections 邻居
+     * @param size        邻居数
+     * @param capacity    该层的最大邻居数
+     * @throws IOException IO异常
+     */
+    private static void writeConnections(IndexFileWriter writer, int[] connections, int size, int capacity) throws IOException {
+        writer.putInt(size);
+        for (int i = 0; i < capacity; i++) {
+            writer.putInt(i < size ? connections[i] : 0);
+        }
     }
 
     /**
-     * 将 HNSW 索引保存到输出流中
+     * 是否走原始 float 的专用路径且所有节点的向量都是维度正确的 float[]
      *
-     * @param out 输出流
-     * @throws IOException 如果写入输出流时发生错误
+     * @param snapshot 快照
+     * @return 是否都是 float[]
      */
-    @Override
-    public void save(OutputStream out) throws IOException {
-        try (ObjectOutputStream oos = new ObjectOutputStream(out)) {
-            oos.writeObject(this);
+    private boolean hasFloatVectors(Snapshot snapshot) {
+        if (floatDistanceType == null) {
+            return false;
+        }
+        for (int nodeId = 0; nodeId < snapshot.nodeCount; nodeId++) {
+            if (nodes.get(nodeId) == null) {
+                continue;
+            }
+            TVector vector = snapshot.item(nodeId).vector();
+            if (!(vector instanceof float[] && ((float[]) vector).length == dimensions)) {
+                return false;
+            }
         }
+        return true;
     }
 
 
@@ -798,111 +1993,274 @@ public class HnswIndex<TId, TVector, TItem extends Item<TId, TVector>, TDistance
      * @param destination    目标向量
      * @param k              数目
      * @param layer          层级
-     * @return 最近的候选对象的优先级队列
+     * @param nodeFilter     按内部节点ID的过滤条件 为null时不过滤
+     * @param budget         预算 为null时不限制，用完时提前结束并在budget中标记
+     * @return 最近的候选对象的优先级队列 属于当前线程的搜索上下文，在下一次搜索前有效
      */
     private PriorityQueue<NodeIdAndDistance<TDistance>> searchBaseLayer(
             Node<TItem> entryPointNode,
             TVector destination,
             int k,
-            int layer
+            int layer,
+            IntPredicate nodeFilter,
+            SearchBudget budget
     ) {
-        // 创建已访问过的节点的位集合对象
-        ArrayBitSet visitedBitSet = visitedBitSetPool.borrowObject();
+        // 取出当前线程的搜索上下文，重置其中的已访问集合和候选队列
+        SearchContext<TDistance> context = searchContexts.get();
+        VisitedSet visitedSet = context.begin(useSparseVisitedSet(k));
+
+        // 两个优先级队列，一个用于存储最近的候选对象，一个用于存储所有候选对象
+        PriorityQueue<NodeIdAndDistance<TDistance>> topCandidates = context.topCandidates;
+        PriorityQueue<NodeIdAndDistance<TDistance>> candidateSet = context.candidateSet;
+        int[] neighbours = context.neighbourScratch;
+
+        TDistance lowerBound;
+
+        // 如果入口节点未被删除且满足过滤条件
+        if (!entryPointNode.deleted && accepts(nodeFilter, entryPointNode.id)) {
+            // 计算目标向量与入口节点的距离，并创建一个NodeIdAndDistance对象
+            TDistance distance = distanceType.distance(destination, entryPointNode.getItem().vector());
+            NodeIdAndDistance<TDistance> pair = new NodeIdAndDistance<>(entryPointNode.id, distance, maxValueDistanceComparator);
+            context.distanceComputations++;
+
+            topCandidates.add(pair);
+            lowerBound = distance;
+            candidateSet.add(pair);
+        } else {
+            // 如果入口节点已被删除或不满足过滤条件，设置下界为最大值
+            lowerBound = MaxValueComparator.maxValue();
+            NodeIdAndDistance<TDistance> pair = new NodeIdAndDistance<>(entryPointNode.id, lowerBound, maxValueDistanceComparator);
+            candidateSet.add(pair);
+        }
 
-        try {
-            // 创建两个优先级队列，一个用于存储最近的候选对象，一个用于存储所有候选对象
-            PriorityQueue<NodeIdAndDistance<TDistance>> topCandidates =
-                    new PriorityQueue<>(Comparator.<NodeIdAndDistance<TDistance>>naturalOrder().reversed());
-            PriorityQueue<NodeIdAndDistance<TDistance>> candidateSet = new PriorityQueue<>();
-
-            TDistance lowerBound;
-
-            // 如果入口节点未被删除
-            if (!entryPointNode.deleted) {
-                // 计算目标向量与入口节点的距离，并创建一个NodeIdAndDistance对象
-                TDistance distance = distanceType.distance(destination, entryPointNode.getItem().vector());
-                NodeIdAndDistance<TDistance> pair = new NodeIdAndDistance<>(entryPointNode.id, distance, maxValueDistanceComparator);
-
-                topCandidates.add(pair);
-                lowerBound = distance;
-                candidateSet.add(pair);
-            } else {
-                // 如果入口节点已被删除，设置下界为最大值
-                lowerBound = MaxValueComparator.maxValue();
-                NodeIdAndDistance<TDistance> pair = new NodeIdAndDistance<>(entryPointNode.id, lowerBound, maxValueDistanceComparator);
-                candidateSet.add(pair);
+        // 将入口点节点标记为已访问
+        visitedSet.add(entryPointNode.id);
+        int filteredExpansions = 0;
+
+        while (!candidateSet.isEmpty()) {
+            // 从候选节点集合中取出距离最近的节点
+            NodeIdAndDistance<TDistance> currentPair = candidateSet.poll();
+
+            // 如果当前节点的距离大于下界，则跳出循环；有过滤条件时满足条件的节点可能很稀疏，凑满k个之前不提前结束
+            if (gt(currentPair.distance, lowerBound) && (nodeFilter == null || topCandidates.size() >= k)) {
+                break;
             }
 
-            // 将入口点节点标记为已访问
-            visitedBitSet.add(entryPointNode.id);
+            // 有过滤条件且扩展次数达到上限时仍未凑满，停止搜索并交由调用方直接扫描满足条件的节点
+            if (nodeFilter != null && topCandidates.size() < k && ++filteredExpansions > (long) k * FILTERED_EXPANSION_FACTOR) {
+                context.filterExpansionLimited = true;
+                break;
+            }
+
+            // 预算用完时提前结束
+            if (budget != null && budget.exhausted()) {
+                break;
+            }
 
-            while (!candidateSet.isEmpty()) {
-                // 从候选节点集合中取出距离最近的节点
-                NodeIdAndDistance<TDistance> currentPair = candidateSet.poll();
+            // 无锁地复制当前节点在指定层级的连接列表
+            int connectionCount = copyConnections(context, currentPair.nodeId, layer);
+            context.nodesExpanded++;
 
-                // 如果当前节点的距离大于下界，则跳出循环
-                if (gt(currentPair.distance, lowerBound)) {
-                    break;
+            // 本次扩展计算距离的次数，以及最近邻候选集是否发生了变化
+            int computed = 0;
+            boolean improved = false;
+
+            // 遍历连接列表中的候选节点
+            for (int i = 0; i < connectionCount; i++) {
+
+                int candidateId = neighbours[i];
+
+                // 如果候选节点未被访问过
+                if (!visitedSet.contains(candidateId)) {
+
+                    // 将候选节点标记为已访问
+                    visitedSet.add(candidateId);
+
+                    // 获取候选节点对象
+                    Node<TItem> candidateNode = nodes.get(candidateId);
+
+                    // 计算目标向量与候选节点的距离
+                    TDistance candidateDistance = distanceType.distance(destination, candidateNode.getItem().vector());
+                    computed++;
+
+                    // 如果最近邻候选集的大小小于k或者候选节点的距离小于下界
+                    if (topCandidates.size() < k || gt(lowerBound, candidateDistance)) {
+
+                        // 创建一个NodeIdAndDistance对象，并将其添加到候选集合中
+                        NodeIdAndDistance<TDistance> candidatePair = new NodeIdAndDistance<>(candidateId, candidateDistance, maxValueDistanceComparator);
+                        candidateSet.add(candidatePair);
+
+                        // 如果候选节点未被删除且满足过滤条件，则将其添加到最近邻候选集中
+                        if (!candidateNode.deleted && accepts(nodeFilter, candidateId)) {
+                            topCandidates.add(candidatePair);
+                            improved = true;
+                        }
+
+                        // 如果最近邻候选集的大小大于k，则移除距离最大的元素，保持队列的大小为k
+                        if (topCandidates.size() > k) {
+                            topCandidates.poll();
+                        }
+
+                        // 如果最近邻候选集非空，更新下界为最近邻候选集中距离最小的节点的距离
+                        if (!topCandidates.isEmpty()) {
+                            lowerBound = topCandidates.peek().distance;
+                        }
+                    }
                 }
+            }
 
-                // 获取当前节点对象
-                Node<TItem> node = nodes.get(currentPair.nodeId);
+            context.distanceComputations += computed;
+            if (budget != null) {
+                budget.expanded(computed, improved);
+            }
+        }
+        return topCandidates;
+    }
 
-                // 对当前节点加锁，确保多线程访问的安全性
-                synchronized (node) {
+    /**
+     * 在 HNSW 索引中搜索基础层级 原始 float 距离的版本，逻辑与{@link #searchBaseLayer}相同
+     * 已删除的节点和不满足过滤条件的节点只用于导航，不会进入最近邻候选集
+     *
+     * @param entryPointNode 入口点
+     * @param destination    目标向量
+     * @param k              数目
+     * @param layer          层级
+     * @param nodeFilter     按内部节点ID的过滤条件 为null时不过滤
+     * @param budget         预算 为null时不限制，用完时提前结束并在budget中标记
+     * @return 最近的候选对象的最大堆，堆顶为距离最大的节点 属于当前线程的搜索上下文，在下一次搜索前有效
+     */
+    private IntFloatHeap searchBaseLayerFloat(
+            Node<TItem> entryPointNode,
+            TVector destination,
+            int k,
+            int layer,
+            IntPredicate nodeFilter,
+            SearchBudget budget
+    ) {
+        SearchContext<TDistance> context = searchContexts.get();
+        VisitedSet visitedSet = context.begin(useSparseVisitedSet(k));
 
-                    // 获取当前节点在指定层级的连接列表
-                    MutableIntList candidates = node.connections[layer];
+        IntFloatHeap topCandidates = context.floatTopCandidates;
+        IntFloatHeap candidateSet = context.floatCandidateSet;
+        int[] neighbours = context.neighbourScratch;
 
-                    // 遍历连接列表中的候选节点
-                    for (int i = 0; i < candidates.size(); i++) {
+        float lowerBound;
 
-                        int candidateId = candidates.get(i);
+        if (!entryPointNode.deleted && accepts(nodeFilter, entryPointNode.id)) {
+            float distance = floatDistanceType.floatDistance(destination, entryPointNode.getItem().vector());
+            context.distanceComputations++;
 
-                        // 如果候选节点未被访问过
-                        if (!visitedBitSet.contains(candidateId)) {
+            topCandidates.push(entryPointNode.id, distance);
+            lowerBound = distance;
+            candidateSet.push(entryPointNode.id, distance);
+        } else {
+            // 如果入口节点已被删除或不满足过滤条件，设置下界为最大值
+            lowerBound = Float.POSITIVE_INFINITY;
+            candidateSet.push(entryPointNode.id, lowerBound);
+        }
 
-                            // 将候选节点标记为已访问
-                            visitedBitSet.add(candidateId);
+        visitedSet.add(entryPointNode.id);
+        int filteredExpansions = 0;
 
-                            // 获取候选节点对象
-                            Node<TItem> candidateNode = nodes.get(candidateId);
+        while (!candidateSet.isEmpty()) {
+            if (candidateSet.peekDistance() > lowerBound && (nodeFilter == null || topCandidates.size() >= k)) {
+                break;
+            }
 
-                            // 计算目标向量与候选节点的距离
-                            TDistance candidateDistance = distanceType.distance(destination, candidateNode.getItem().vector());
+            if (budget != null && budget.exhausted()) {
+                break;
+            }
 
-                            // 如果最近邻候选集的大小小于k或者候选节点的距离小于下界
-                            if (topCandidates.size() < k || gt(lowerBound, candidateDistance)) {
+            // 有过滤条件且扩展次数达到上限时仍未凑满，停止搜索并交由调用方直接扫描满足条件的节点
+            if (nodeFilter != null && topCandidates.size() < k && ++filteredExpansions > (long) k * FILTERED_EXPANSION_FACTOR) {
+                context.filterExpansionLimited = true;
+                break;
+            }
 
-                                // 创建一个NodeIdAndDistance对象，并将其添加到候选集合中
-                                NodeIdAndDistance<TDistance> candidatePair = new NodeIdAndDistance<>(candidateId, candidateDistance, maxValueDistanceComparator);
-                                candidateSet.add(candidatePair);
+            int connectionCount = copyConnections(context, candidateSet.pop(), layer);
+            context.nodesExpanded++;
 
-                                // 如果候选节点未被删除，则将其添加到最近邻候选集中
-                                if (!candidateNode.deleted) {
-                                    topCandidates.add(candidatePair);
-                                }
+            int computed = 0;
+            boolean improved = false;
 
-                                // 如果最近邻候选集的大小大于k，则移除距离最大的元素，保持队列的大小为k
-                                if (topCandidates.size() > k) {
-                                    topCandidates.poll();
-                                }
+            for (int i = 0; i < connectionCount; i++) {
+                int candidateId = neighbours[i];
 
-                                // 如果最近邻候选集非空，更新下界为最近邻候选集中距离最小的节点的距离
-                                if (!topCandidates.isEmpty()) {
-                                    lowerBound = topCandidates.peek().distance;
-                                }
-                            }
+                if (!visitedSet.contains(candidateId)) {
+                    visitedSet.add(candidateId);
+
+                    Node<TItem> candidateNode = nodes.get(candidateId);
+
+                    float candidateDistance = floatDistanceType.floatDistance(destination, candidateNode.getItem().vector());
+                    computed++;
+
+                    // 只有进入候选集的节点才需要判断是否已删除、是否满足过滤条件
+                    if (topCandidates.size() < k || lowerBound > candidateDistance) {
+                        candidateSet.push(candidateId, candidateDistance);
+
+                        if (!candidateNode.deleted && accepts(nodeFilter, candidateId)) {
+                            topCandidates.push(candidateId, candidateDistance);
+                            improved = true;
+                        }
+
+                        if (topCandidates.size() > k) {
+                            topCandidates.pop();
+                        }
+
+                        if (!topCandidates.isEmpty()) {
+                            lowerBound = topCandidates.peekDistance();
                         }
                     }
                 }
             }
-            return topCandidates;
-        } finally {
-            // 清空已访问过的节点的位集合对象，并将其返回到对象池中
-            visitedBitSet.clear();
-            visitedBitSetPool.returnObject(visitedBitSet);
+
+            context.distanceComputations += computed;
+            if (budget != null) {
+                budget.expanded(computed, improved);
+            }
+        }
+        return topCandidates;
+    }
+
+    /**
+     * 无锁地把节点在某一层的邻居复制到上下文的neighbourScratch中 遇到并发写入时重读，并记录重读次数
+     *
+     * @param context 当前线程的搜索上下文
+     * @param nodeId  节点ID
+     * @param level   层级
+     * @return 邻居数
+     */
+    private int copyConnections(SearchContext<TDistance> context, int nodeId, int level) {
+        int count;
+        while ((count = graph.tryCopy(nodeId, level, context.neighbourScratch)) < 0) {
+            // 写入方正在修改，让出CPU等待写入完成
+            context.readRetries++;
+            Thread.yield();
         }
+        return count;
+    }
+
+    /**
+     * 节点是否满足过滤条件
+     *
+     * @param nodeFilter 按内部节点ID的过滤条件 为null时不过滤
+     * @param nodeId     节点ID
+     * @return 是否满足
+     */
+    private static boolean accepts(IntPredicate nodeFilter, int nodeId) {
+        return nodeFilter == null || nodeFilter.test(nodeId);
+    }
+
+    /**
+     * 根据预计访问的节点数选择已访问集合 每个被扩展的节点最多带来maxM0个邻居，
+     * 预计访问数远小于maxItemCount时使用稀疏的哈希集合，否则使用稠密集合
+     *
+     * @param k 搜索的动态列表大小
+     * @return 是否使用稀疏的哈希集合
+     */
+    private boolean useSparseVisitedSet(int k) {
+        long expectedVisits = (long) k * maxM0;
+        return expectedVisits * SPARSE_VISITED_SET_RATIO < maxItemCount;
     }
 
     /**
@@ -1051,11 +2409,11 @@ public class HnswIndex<TId, TVector, TItem extends Item<TId, TVector>, TDistance
         // 写入删除是否可用
         objectOutputStream.writeBoolean(removeEnabled);
         // 写入节点数量
-        objectOutputStream.writeInt(nodeCount);
+        objectOutputStream.writeInt(nodeCount.get());
         // 写入lookup
-        writeMutableObjectIntMap(objectOutputStream, lookup);
+        writeLookup(objectOutputStream, lookup);
         // 写入删除的item版本
-        writeMutableObjectLongMap(objectOutputStream, deletedItemVersions);
+        writeDeletedItemVersions(objectOutputStream, deletedItemVersions);
         // 写入节点数组
         writeNodesArray(objectOutputStream, nodes);
         // 写入entryPoint
@@ -1063,107 +2421,501 @@ public class HnswIndex<TId, TVector, TItem extends Item<TId, TVector>, TDistance
     }
 
     /**
-     * 从输入流中反序列化Index对象
+     * 从输入流中反序列化Index对象
+     *
+     * @param objectInputStream 输入流
+     * @throws IOException            IO异常
+     * @throws ClassNotFoundException 类未找到异常
+     */
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream objectInputStream) throws IOException, ClassNotFoundException {
+        // 读取版本号，用于应对未来不兼容的序列化版本
+        @SuppressWarnings("unused") byte version = objectInputStream.readByte();
+        // 读取维度
+        this.dimensions = objectInputStream.readInt();
+        // 读取距离类型
+        this.distanceType = (DistanceType<TVector, TDistance>) objectInputStream.readObject();
+        // 读取距离比较器
+        this.distanceComparator = (Comparator<TDistance>) objectInputStream.readObject();
+        // 创建最大值比较器
+        this.maxValueDistanceComparator = new MaxValueComparator<>(distanceComparator);
+        // 检测是否可以使用原始 float 的专用路径
+        this.floatDistanceType = floatDistanceTypeOf(distanceType, distanceComparator);
+        // 读取id序列化器
+        this.itemIdSerializer = (ObjectSerializer<TId>) objectInputStream.readObject();
+        // 读取item序列化器
+        this.itemSerializer = (ObjectSerializer<TItem>) objectInputStream.readObject();
+        // 读取最大节点数量
+        this.maxItemCount = objectInputStream.readInt();
+        // 读取m值
+        this.m = objectInputStream.readInt();
+        // 读取最大m值
+        this.maxM = objectInputStream.readInt();
+        // 读取最大m0值
+        this.maxM0 = objectInputStream.readInt();
+        // 读取levelLambda值
+        this.levelLambda = objectInputStream.readDouble();
+        // 读取ef值
+        this.ef = objectInputStream.readInt();
+        // 读取efConstruction值
+        this.efConstruction = objectInputStream.readInt();
+        // 读取删除是否可用
+        this.removeEnabled = objectInputStream.readBoolean();
+        // 读取节点数量
+        this.nodeCount = new AtomicInteger(objectInputStream.readInt());
+        // 读取lookup
+        this.lookup = readLookup(objectInputStream, itemIdSerializer);
+        // 读取删除的item版本
+        this.deletedItemVersions = readDeletedItemVersions(objectInputStream, itemIdSerializer);
+        // 读取节点数组
+        this.graph = new FlatGraph(maxItemCount, maxM0, maxM);
+        this.nodes = readNodesArray(objectInputStream, itemSerializer, graph);
+        // 读取entryPoint
+        int entryPointNodeId = objectInputStream.readInt();
+        this.entryPoint = entryPointNodeId == -1 ? null : nodes.get(entryPointNodeId);
+
+        initTransientState();
+    }
+
+    /**
+     * 从二进制索引文件中载入索引 格式见 {@link IndexFileWriter}
+     *
+     * 给出文件通道时跳过数据点记录段，读完每条记录的偏移量和校验和后按块并行地按位置读取、核对并解码，同时并发地重建lookup
+     *
+     * @param reader      二进制索引文件的读取器
+     * @param classLoader 读取距离类型、序列化器和item用的类加载器
+     * @param channel     同一个文件的通道 用于并行地按位置读取数据点记录，为null时顺序读取
+     * @throws IOException            IO异常或文件已损坏
+     * @throws ClassNotFoundException 类未找到异常
+     */
+    @SuppressWarnings("unchecked")
+    private HnswIndex(IndexFileReader reader, ClassLoader classLoader, FileChannel channel) throws IOException, ClassNotFoundException {
+        // 元数据
+        reader.beginSection(IndexFileWriter.SECTION_META);
+        int entryPointNodeId;
+        int itemSegmentSize;
+        try (ObjectInputStream ois = new ClassLoaderObjectInputStream(classLoader, reader.inputStream())) {
+            this.dimensions = ois.readInt();
+            this.distanceType = (DistanceType<TVector, TDistance>) ois.readObject();
+            this.distanceComparator = (Comparator<TDistance>) ois.readObject();
+            this.itemIdSerializer = (ObjectSerializer<TId>) ois.readObject();
+            this.itemSerializer = (ObjectSerializer<TItem>) ois.readObject();
+            this.maxItemCount = ois.readInt();
+            this.m = ois.readInt();
+            this.maxM = ois.readInt();
+            this.maxM0 = ois.readInt();
+            this.levelLambda = ois.readDouble();
+            this.ef = ois.readInt();
+            this.efConstruction = ois.readInt();
+            this.removeEnabled = ois.readBoolean();
+            this.nodeCount = new AtomicInteger(ois.readInt());
+            entryPointNodeId = ois.readInt();
+            itemSegmentSize = ois.readInt();
+        }
+        reader.endSection();
+        if (itemSegmentSize <= 0) {
+            throw new IOException("索引文件中每条数据点记录的节点数 " + itemSegmentSize + " 不正确，文件可能已损坏");
+        }
+        this.maxValueDistanceComparator = new MaxValueComparator<>(distanceComparator);
+        this.floatDistanceType = floatDistanceTypeOf(distanceType, distanceComparator);
+
+        int count = nodeCount.get();
+
+        // 每个节点的最大层级 空节点为-1
+        int[] maxLevels = new int[count];
+        reader.beginSection(IndexFileWriter.SECTION_NODES);
+        for (int nodeId = 0; nodeId < count; nodeId++) {
+            maxLevels[nodeId] = reader.getInt();
+            reader.getInt();
+        }
+        reader.endSection();
+
+        // 删除标记
+        BitSet tombstones = new BitSet(count);
+        reader.beginSection(IndexFileWriter.SECTION_TOMBSTONES);
+        for (int wordStart = 0; wordStart < count; wordStart += Long.SIZE) {
+            long word = reader.getLong();
+            for (int bit = 0; bit < Long.SIZE; bit++) {
+                if ((word & (1L << bit)) != 0) {
+                    tombstones.set(wordStart + bit);
+                }
+            }
+        }
+        reader.endSection();
+
+        // 邻接表
+        this.graph = new FlatGraph(maxItemCount, maxM0, maxM);
+        int[] connections = new int[maxM0];
+        reader.beginSection(IndexFileWriter.SECTION_LEVEL0);
+        for (int nodeId = 0; nodeId < count; nodeId++) {
+            if (maxLevels[nodeId] >= 0) {
+                graph.allocate(nodeId, maxLevels[nodeId]);
+            }
+            int size = readConnections(reader, connections, maxM0);
+            if (maxLevels[nodeId] >= 0) {
+                graph.set(nodeId, 0, connections, size);
+            }
+        }
+        reader.endSection();
+
+        reader.beginSection(IndexFileWriter.SECTION_UPPER_LEVELS);
+        for (int nodeId = 0; nodeId < count; nodeId++) {
+            for (int level = 1; level <= maxLevels[nodeId]; level++) {
+                graph.set(nodeId, level, connections, readConnections(reader, connections, maxM));
+            }
+        }
+        reader.endSection();
+
+        // 数据点 每itemSegmentSize个节点是一条独立的记录
+        this.nodes = new AtomicReferenceArray<>(maxItemCount);
+        boolean parallel = channel != null;
+        long[] itemRecordBounds = reader.sectionBounds(IndexFileWriter.SECTION_ITEM_RECORDS);
+        long[] segmentOffsets = null;
+        int[] segmentChecksums = null;
+        if (parallel) {
+            // 记录段由并行任务按位置读取并逐条核对校验和，这里不读取
+            reader.skipSection(IndexFileWriter.SECTION_ITEM_RECORDS);
+
+            int segmentCount = (count + itemSegmentSize - 1) / itemSegmentSize;
+            segmentOffsets = new long[segmentCount];
+            segmentChecksums = new int[segmentCount];
+            reader.beginSection(IndexFileWriter.SECTION_ITEM_OFFSETS);
+            for (int segment = 0; segment < segmentCount; segment++) {
+                segmentOffsets[segment] = reader.getLong();
+                segmentChecksums[segment] = reader.getInt();
+            }
+            reader.endSection();
+        } else {
+            reader.beginSection(IndexFileWriter.SECTION_ITEM_RECORDS);
+            byte[] record = new byte[0];
+            for (int from = 0; from < count; from += itemSegmentSize) {
+                int to = Math.min(from + itemSegmentSize, count);
+                if (countItems(maxLevels, from, to) == 0) {
+                    continue;
+                }
+                int length = reader.getInt();
+                if (length > record.length) {
+                    record = new byte[Math.max(length, record.length * 2)];
+                }
+                reader.get(record, 0, length);
+                setItems(record, 0, length, from, to, maxLevels, tombstones, null, classLoader);
+            }
+            reader.endSection();
+        }
+
+        // lookup 标识符从对应节点的item中取得；并行载入时先记下节点ID，解码item时再放入
+        reader.beginSection(IndexFileWriter.SECTION_IDS);
+        int lookupSize = reader.getInt();
+        this.lookup = new ConcurrentHashMap<>(lookupSize);
+        BitSet lookupNodeIds = new BitSet(count);
+        for (int i = 0; i < lookupSize; i++) {
+            int nodeId = reader.getInt();
+            if (parallel) {
+                lookupNodeIds.set(nodeId);
+            } else {
+                lookup.put(nodes.get(nodeId).item.id(), nodeId);
+            }
+        }
+        reader.endSection();
+
+        // 已删除数据点的版本
+        reader.beginSection(IndexFileWriter.SECTION_DELETED_VERSIONS);
+        try (ObjectInputStream ois = new ClassLoaderObjectInputStream(classLoader, reader.inputStream())) {
+            this.deletedItemVersions = readDeletedItemVersions(ois, itemIdSerializer);
+        }
+        reader.endSection();
+
+        if (parallel) {
+            readItemsParallel(channel, itemRecordBounds, segmentOffsets, segmentChecksums, itemSegmentSize,
+                    maxLevels, tombstones, lookupNodeIds, classLoader);
+        }
+
+        this.entryPoint = entryPointNodeId == -1 ? null : nodes.get(entryPointNodeId);
+
+        initTransientState();
+    }
+
+    /**
+     * 按块并行地解码数据点记录 每块在公共的ForkJoinPool上用一次按位置的读取取出连续的若干条记录，核对校验和并解码后设置节点并放入lookup
+     *
+     * @param channel          文件通道
+     * @param itemRecordBounds 数据点记录段的偏移量和长度
+     * @param segmentOffsets   每条记录在段中的偏移量 没有记录时为-1
+     * @param segmentChecksums 每条记录的CRC32C
+     * @param segmentSize      每条记录包含的节点数
+     * @param maxLevels        每个节点的最大层级
+     * @param tombstones       删除标记
+     * @param lookupNodeIds    需要放入lookup的节点ID
+     * @param classLoader      类加载器
+     * @throws IOException            IO异常或文件已损坏
+     * @throws ClassNotFoundException 类未找到异常
+     */
+    private void readItemsParallel(FileChannel channel, long[] itemRecordBounds, long[] segmentOffsets, int[] segmentChecksums,
+                                   int segmentSize, int[] maxLevels, BitSet tombstones, BitSet lookupNodeIds, ClassLoader classLoader)
+            throws IOException, ClassNotFoundException {
+        int segmentsPerChunk = Math.max(1, ITEM_LOAD_CHUNK_SIZE / segmentSize);
+        int chunks = (segmentOffsets.length + segmentsPerChunk - 1) / segmentsPerChunk;
+
+        // 每块的记录从块内第一条记录开始，到后面第一条记录之前结束，从后往前求出
+        long[] chunkStarts = new long[chunks + 1];
+        chunkStarts[chunks] = itemRecordBounds[1];
+        for (int chunk = chunks - 1; chunk >= 0; chunk--) {
+            chunkStarts[chunk] = chunkStarts[chunk + 1];
+            for (int segment = Math.min((chunk + 1) * segmentsPerChunk, segmentOffsets.length) - 1; segment >= chunk * segmentsPerChunk; segment--) {
+                if (segmentOffsets[segment] >= 0) {
+                    chunkStarts[chunk] = segmentOffsets[segment];
+                }
+            }
+        }
+
+        List<Integer> chunkIds = new ArrayList<>(chunks);
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            chunkIds.add(chunk);
+        }
+        try {
+            ParallelBatch.map(chunkIds, chunk -> {
+                try {
+                    readItemChunk(channel, itemRecordBounds[0], chunkStarts[chunk], chunkStarts[chunk + 1],
+                            chunk * segmentsPerChunk, Math.min((chunk + 1) * segmentsPerChunk, segmentOffsets.length),
+                            segmentOffsets, segmentChecksums, segmentSize, maxLevels, tombstones, lookupNodeIds, classLoader);
+                } catch (IOException | ClassNotFoundException e) {
+                    throw new UncategorizedIndexException("解码第 " + chunk + " 块数据点失败", e);
+                }
+                return null;
+            }, ForkJoinPool.commonPool());
+        } catch (UncategorizedIndexException e) {
+            // 抛出原始的异常
+            for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                if (cause instanceof ClassNotFoundException) {
+                    throw (ClassNotFoundException) cause;
+                }
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 解码一块数据点记录
+     *
+     * @param channel          文件通道
+     * @param sectionOffset    数据点记录段在文件中的偏移量
+     * @param from             本块的记录在段中的起始偏移量
+     * @param to               本块的记录在段中的结束偏移量
+     * @param firstSegment     本块的第一条记录
+     * @param endSegment       本块的最后一条记录之后
+     * @param segmentOffsets   每条记录在段中的偏移量
+     * @param segmentChecksums 每条记录的CRC32C
+     * @param segmentSize      每条记录包含的节点数
+     * @param maxLevels        每个节点的最大层级
+     * @param tombstones       删除标记
+     * @param lookupNodeIds    需要放入lookup的节点ID
+     * @param classLoader      类加载器
+     * @throws IOException            IO异常或文件已损坏
+     * @throws ClassNotFoundException 类未找到异常
+     */
+    private void readItemChunk(FileChannel channel, long sectionOffset, long from, long to, int firstSegment, int endSegment,
+                               long[] segmentOffsets, int[] segmentChecksums, int segmentSize, int[] maxLevels,
+                               BitSet tombstones, BitSet lookupNodeIds, ClassLoader classLoader)
+            throws IOException, ClassNotFoundException {
+        if (to < from || to - from > Integer.MAX_VALUE - 8) {
+            throw new IOException("索引文件中第 " + firstSegment + " 条起的数据点记录范围不正确，文件可能已损坏");
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) (to - from)).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, sectionOffset + from + buffer.position()) < 0) {
+                throw new EOFException("索引文件不完整");
+            }
+        }
+
+        byte[] records = buffer.array();
+        Checksum checksum = Crc32c.newChecksum();
+        for (int segment = firstSegment; segment < endSegment; segment++) {
+            if (segmentOffsets[segment] < 0) {
+                continue;
+            }
+            long position = segmentOffsets[segment] - from;
+            if (position < 0 || position + Integer.BYTES > records.length) {
+                throw new IOException("索引文件中第 " + segment + " 条数据点记录的偏移量不正确，文件可能已损坏");
+            }
+            int length = buffer.getInt((int) position);
+            if (length < 0 || position + Integer.BYTES + length > records.length) {
+                throw new IOException("索引文件中第 " + segment + " 条数据点记录的长度不正确，文件可能已损坏");
+            }
+            checksum.reset();
+            checksum.update(records, (int) position + Integer.BYTES, length);
+            if ((int) checksum.getValue() != segmentChecksums[segment]) {
+                throw new IOException("索引文件中第 " + segment + " 条数据点记录的校验和不一致，文件可能已损坏");
+            }
+            int firstNodeId = segment * segmentSize;
+            setItems(records, (int) position + Integer.BYTES, length, firstNodeId,
+                    Math.min(firstNodeId + segmentSize, maxLevels.length), maxLevels, tombstones, lookupNodeIds, classLoader);
+        }
+    }
+
+    /**
+     * 解码一条数据点记录 设置其中的节点，需要时放入lookup
+     *
+     * @param record        记录所在的数组
+     * @param offset        记录在数组中的起始下标
+     * @param length        记录的长度
+     * @param from          记录的第一个节点ID
+     * @param to            记录的最后一个节点ID之后
+     * @param maxLevels     每个节点的最大层级
+     * @param tombstones    删除标记
+     * @param lookupNodeIds 需要放入lookup的节点ID 为null时不放入
+     * @param classLoader   类加载器
+     * @throws IOException            IO异常
+     * @throws ClassNotFoundException 类未找到异常
+     */
+    private void setItems(byte[] record, int offset, int length, int from, int to, int[] maxLevels, BitSet tombstones,
+                          BitSet lookupNodeIds, ClassLoader classLoader) throws IOException, ClassNotFoundException {
+        List<TItem> items = readItemRecord(record, offset, length, countItems(maxLevels, from, to), itemSerializer, classLoader);
+        int next = 0;
+        for (int nodeId = from; nodeId < to; nodeId++) {
+            if (maxLevels[nodeId] < 0) {
+                continue;
+            }
+            TItem item = items.get(next++);
+            nodes.set(nodeId, new Node<>(nodeId, maxLevels[nodeId], item, tombstones.get(nodeId)));
+            if (lookupNodeIds != null && lookupNodeIds.get(nodeId)) {
+                lookup.put(item.id(), nodeId);
+            }
+        }
+    }
+
+    /**
+     * 非空节点数
      *
-     * @param objectInputStream 输入流
+     * @param maxLevels 每个节点的最大层级 空节点为-1
+     * @param from      起始节点ID
+     * @param to        结束节点ID 不含
+     * @return 非空节点数
+     */
+    static int countItems(int[] maxLevels, int from, int to) {
+        int itemCount = 0;
+        for (int nodeId = from; nodeId < to; nodeId++) {
+            if (maxLevels[nodeId] >= 0) {
+                itemCount++;
+            }
+        }
+        return itemCount;
+    }
+
+    /**
+     * 从一条数据点记录中依次读取前itemCount个item
+     *
+     * @param record         记录所在的数组
+     * @param offset         记录在数组中的起始下标
+     * @param length         记录的长度
+     * @param itemCount      读取的item数
+     * @param itemSerializer item序列化器
+     * @param classLoader    类加载器
+     * @param <TItem>        item 类型
+     * @return item列表
      * @throws IOException            IO异常
      * @throws ClassNotFoundException 类未找到异常
      */
-    @SuppressWarnings("unchecked")
-    private void readObject(ObjectInputStream objectInputStream) throws IOException, ClassNotFoundException {
-        // 读取版本号，用于应对未来不兼容的序列化版本
-        @SuppressWarnings("unused") byte version = objectInputStream.readByte();
-        // 读取维度
-        this.dimensions = objectInputStream.readInt();
-        // 读取距离类型
-        this.distanceType = (DistanceType<TVector, TDistance>) objectInputStream.readObject();
-        // 读取距离比较器
-        this.distanceComparator = (Comparator<TDistance>) objectInputStream.readObject();
-        // 创建最大值比较器
-        this.maxValueDistanceComparator = new MaxValueComparator<>(distanceComparator);
-        // 读取id序列化器
-        this.itemIdSerializer = (ObjectSerializer<TId>) objectInputStream.readObject();
-        // 读取item序列化器
-        this.itemSerializer = (ObjectSerializer<TItem>) objectInputStream.readObject();
-        // 读取最大节点数量
-        this.maxItemCount = objectInputStream.readInt();
-        // 读取m值
-        this.m = objectInputStream.readInt();
-        // 读取最大m值
-        this.maxM = objectInputStream.readInt();
-        // 读取最大m0值
-        this.maxM0 = objectInputStream.readInt();
-        // 读取levelLambda值
-        this.levelLambda = objectInputStream.readDouble();
-        // 读取ef值
-        this.ef = objectInputStream.readInt();
-        // 读取efConstruction值
-        this.efConstruction = objectInputStream.readInt();
-        // 读取删除是否可用
-        this.removeEnabled = objectInputStream.readBoolean();
-        // 读取节点数量
-        this.nodeCount = objectInputStream.readInt();
-        // 读取lookup
-        this.lookup = readMutableObjectIntMap(objectInputStream, itemIdSerializer);
-        // 读取删除的item版本
-        this.deletedItemVersions = readMutableObjectLongMap(objectInputStream, itemIdSerializer);
-        // 读取节点数组
-        this.nodes = readNodesArray(objectInputStream, itemSerializer, maxM0, maxM);
-        // 读取entryPoint
-        int entryPointNodeId = objectInputStream.readInt();
-        this.entryPoint = entryPointNodeId == -1 ? null : nodes.get(entryPointNodeId);
+    static <TItem> List<TItem> readItemRecord(byte[] record, int offset, int length, int itemCount,
+                                              ObjectSerializer<TItem> itemSerializer, ClassLoader classLoader)
+            throws IOException, ClassNotFoundException {
+        List<TItem> items = new ArrayList<>(itemCount);
+        try (ObjectInputStream ois = new ClassLoaderObjectInputStream(classLoader, new ByteArrayInputStream(record, offset, length))) {
+            for (int i = 0; i < itemCount; i++) {
+                items.add(itemSerializer.read(ois));
+            }
+        }
+        return items;
+    }
+
+    /**
+     * 读取节点在某一层的连接
+     *
+     * @param reader      二进制索引文件的读取器
+     * @param connections 存放邻居的数组
+     * @param capacity    该层的最大邻居数
+     * @return 邻居数
+     * @throws IOException IO异常或文件已损坏
+     */
+    private static int readConnections(IndexFileReader reader, int[] connections, int capacity) throws IOException {
+        int size = reader.getInt();
+        if (size < 0 || size > capacity) {
+            throw new IOException("索引文件中的邻居数 " + size + " 超出了上限 " + capacity + "，文件可能已损坏");
+        }
+        for (int i = 0; i < capacity; i++) {
+            int neighbour = reader.getInt();
+            if (i < size) {
+                connections[i] = neighbour;
+            }
+        }
+        return size;
+    }
 
-        // 初始化全局锁
-        this.globalLock = new ReentrantLock();
-        // 初始化已访问过的节点的位集合对象池
-        this.visitedBitSetPool = new GenericObjectPool<>(() -> new ArrayBitSet(this.maxItemCount),
-                Runtime.getRuntime().availableProcessors());
+    /**
+     * 初始化不参与保存的状态 两种载入方式共用
+     */
+    private void initTransientState() {
+        // 初始化扩容锁和入口点锁
+        this.resizeLock = new ReentrantReadWriteLock();
+        this.entryPointLock = new ReentrantLock();
+        // 初始化每个线程的搜索上下文
+        this.searchContexts = ThreadLocal.withInitial(() -> new SearchContext<>(this.nodeCount.get(), this.maxM0));
         // 初始化排除候选集合
         this.excludedCandidates = new ArrayBitSet(this.maxItemCount);
         // 初始化item锁
-        this.itemLocks = new HashMap<>();
+        this.itemLocks = newItemLocks();
         // 初始化只读视图
         this.exactView = new ExactView();
+        // 初始化快照锁
+        this.snapshotLock = new ReentrantLock();
     }
 
     /**
-     * 将可变对象和整数映射写入对象输出流中
+     * 将数据点标识符到节点ID的映射写入对象输出流中
+     * 先取快照再写入，写入的大小与条目数始终一致
      *
      * @param objectOutputStream 对象输出流
-     * @param map                可变对象和整数映射
+     * @param map                数据点标识符到节点ID的映射
      * @throws IOException IO异常
      */
-    private void writeMutableObjectIntMap(ObjectOutputStream objectOutputStream, MutableObjectIntMap<TId> map) throws IOException {
+    private void writeLookup(ObjectOutputStream objectOutputStream, Map<TId, Integer> map) throws IOException {
+        List<Map.Entry<TId, Integer>> entries = new ArrayList<>(map.entrySet());
+
         // 写入映射的大小
-        objectOutputStream.writeInt(map.size());
+        objectOutputStream.writeInt(entries.size());
 
         // 遍历映射中的键值对，将键和值写入对象输出流中
-        for (ObjectIntPair<TId> pair : map.keyValuesView()) {
+        for (Map.Entry<TId, Integer> entry : entries) {
             // 写入键
-            itemIdSerializer.write(pair.getOne(), objectOutputStream);
+            itemIdSerializer.write(entry.getKey(), objectOutputStream);
             // 写入值
-            objectOutputStream.writeInt(pair.getTwo());
+            objectOutputStream.writeInt(entry.getValue());
         }
     }
 
 
     /**
-     * 将可变对象和长整型映射写入对象输出流中
+     * 将已删除数据点的版本记录写入对象输出流中
+     * 先取快照再写入，写入的大小与条目数始终一致
      *
      * @param objectOutputStream 对象输出流
-     * @param map                可变对象和长整型映射
+     * @param map                已删除数据点的版本记录
      * @throws IOException IO异常
      */
-    private void writeMutableObjectLongMap(ObjectOutputStream objectOutputStream, MutableObjectLongMap<TId> map) throws IOException {
+    private void writeDeletedItemVersions(ObjectOutputStream objectOutputStream, Map<TId, Long> map) throws IOException {
+        List<Map.Entry<TId, Long>> entries = new ArrayList<>(map.entrySet());
+
         // 写入映射的大小
-        objectOutputStream.writeInt(map.size());
+        objectOutputStream.writeInt(entries.size());
 
         // 遍历映射中的键值对，将键和值写入对象输出流中
-        for (ObjectLongPair<TId> pair : map.keyValuesView()) {
+        for (Map.Entry<TId, Long> entry : entries) {
             // 写入键
-            itemIdSerializer.write(pair.getOne(), objectOutputStream);
+            itemIdSerializer.write(entry.getKey(), objectOutputStream);
             // 写入值
-            objectOutputStream.writeLong(pair.getTwo());
+            objectOutputStream.writeLong(entry.getValue());
         }
     }
 
@@ -1201,27 +2953,24 @@ public class HnswIndex<TId, TVector, TItem extends Item<TId, TVector>, TDistance
         } else {
             // 否则，写入节点id和连接数
             objectOutputStream.writeInt(node.id);
-            objectOutputStream.writeInt(node.connections.length);
+            objectOutputStream.writeInt(node.maxLevel() + 1);
 
             // 遍历节点的连接，将每个连接写入对象输出流中
-            for (MutableIntList connection : node.connections) {
+            for (int level = 0; level <= node.maxLevel(); level++) {
+                int connectionCount = graph.size(node.id, level);
+
                 // 写入连接的大小
-                objectOutputStream.writeInt(connection.size());
+                objectOutputStream.writeInt(connectionCount);
 
                 // 遍历连接中的每个元素，将每个元素写入对象输出流中
-                for (int i = 0; i < connection.size(); i++) {
-                    objectOutputStream.writeInt(connection.get(i));
-
-                    // 遍历连接中的每个元素，将每个元素写入对象输出流中
-                    for (int j = 0; j < connection.size(); j++) {
-                        objectOutputStream.writeInt(connection.get(j));
-                    }
+                for (int i = 0; i < connectionCount; i++) {
+                    objectOutputStream.writeInt(graph.get(node.id, level, i));
                 }
-                // 写入节点的item
-                itemSerializer.write(node.item, objectOutputStream);
-                // 写入节点是否被删除
-                objectOutputStream.writeBoolean(node.deleted);
             }
+            // 写入节点的item
+            itemSerializer.write(node.item, objectOutputStream);
+            // 写入节点是否被删除
+            objectOutputStream.writeBoolean(node.deleted);
         }
     }
 
@@ -1239,7 +2988,7 @@ public class HnswIndex<TId, TVector, TItem extends Item<TId, TVector>, TDistance
      */
     public static <TId, TVector, TItem extends Item<TId, TVector>, TDistance> HnswIndex<TId, TVector, TItem, TDistance> load(File file)
             throws IOException {
-        return load(new FileInputStream(file));
+        return load(file.toPath());
     }
 
     /**
@@ -1256,7 +3005,7 @@ public class HnswIndex<TId, TVector, TItem extends Item<TId, TVector>, TDistance
      */
     public static <TId, TVector, TItem extends Item<TId, TVector>, TDistance> HnswIndex<TId, TVector, TItem, TDistance> load(File file, ClassLoader classLoader)
             throws IOException {
-        return load(new FileInputStream(file), classLoader);
+        return load(file.toPath(), classLoader);
     }
 
     /**
@@ -1272,11 +3021,12 @@ public class HnswIndex<TId, TVector, TItem extends Item<TId, TVector>, TDistance
      */
     public static <TId, TVector, TItem extends Item<TId, TVector>, TDistance> HnswIndex<TId, TVector, TItem, TDistance> load(Path path)
             throws IOException {
-        return load(Files.newInputStream(path));
+        return load(path, Thread.currentThread().getContextClassLoader());
     }
 
     /**
      * 从路径中载入索引 HnswIndex
+     * 二进制格式的文件在公共的ForkJoinPool上按块并行解码item并重建lookup，Java序列化格式的文件顺序读取
      *
      * @param path        路径 Path
      * @param classLoader 类加载器 ClassLoader
@@ -1289,6 +3039,19 @@ public class HnswIndex<TId, TVector, TItem extends Item<TId, TVector>, TDistance
      */
     public static <TId, TVector, TItem extends Item<TId, TVector>, TDistance> HnswIndex<TId, TVector, TItem, TDistance> load(Path path, ClassLoader classLoader)
             throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // 根据开头的magic区分二进制格式和Java序列化格式
+            ByteBuffer prefix = ByteBuffer.allocate(IndexFileWriter.MAGIC.length);
+            while (prefix.hasRemaining() && channel.read(prefix) > 0) {
+                // 读满magic的长度或到达文件末尾
+            }
+            if (IndexFileReader.hasMagic(prefix.array(), prefix.position())) {
+                channel.position(0);
+                return new HnswIndex<>(new IndexFileReader(channel), classLoader, channel);
+            }
+        } catch (ClassNotFoundException e) {
+            throw new IllegalArgumentException("找不到用于载入的文件", e);
+        }
         return load(Files.newInputStream(path), classLoader);
     }
 
@@ -1325,7 +3088,26 @@ public class HnswIndex<TId, TVector, TItem extends Item<TId, TVector>, TDistance
     @SuppressWarnings("unchecked")
     public static <TId, TVector, TItem extends Item<TId, TVector>, TDistance> HnswIndex<TId, TVector, TItem, TDistance> load(InputStream inputStream, ClassLoader classLoader)
             throws IOException {
-        try (ObjectInputStream ois = new ClassLoaderObjectInputStream(classLoader, inputStream)) {
+        // 根据开头的magic区分二进制格式和Java序列化格式
+        InputStream in = inputStream.markSupported() ? inputStream : new BufferedInputStream(inputStream);
+        byte[] prefix = new byte[IndexFileWriter.MAGIC.length];
+        in.mark(prefix.length);
+        int length = 0;
+        int read;
+        while (length < prefix.length && (read = in.read(prefix, length, prefix.length - length)) > 0) {
+            length += read;
+        }
+        in.reset();
+
+        if (IndexFileReader.hasMagic(prefix, length)) {
+            try (ReadableByteChannel channel = Channels.newChannel(in)) {
+                return new HnswIndex<>(new IndexFileReader(channel), classLoader, null);
+            } catch (ClassNotFoundException e) {
+                throw new IllegalArgumentException("找不到用于载入的文件", e);
+            }
+        }
+
+        try (ObjectInputStream ois = new ClassLoaderObjectInputStream(classLoader, in)) {
             return (HnswIndex<TId, TVector, TItem, TDistance>) ois.readObject();
         } catch (ClassNotFoundException e) {
             throw new IllegalArgumentException("找不到用于载入的文件", e);
@@ -1333,26 +3115,22 @@ public class HnswIndex<TId, TVector, TItem extends Item<TId, TVector>, TDistance
     }
 
     /**
-     * 从 ObjectInputStream 中读取 IntArrayList
+     * 从 ObjectInputStream 中读取节点在某一层的连接 写入图的邻接表中
      *
-     * @param ois         ObjectInputStream 对象
-     * @param initialSize IntArrayList 的初始大小
-     * @return 读取到的 IntArrayList 对象
+     * @param ois    ObjectInputStream 对象
+     * @param graph  图的邻接表
+     * @param nodeId 节点ID
+     * @param level  层级
      * @throws IOException IO 异常
      */
-    private static IntArrayList readIntArrayList(ObjectInputStream ois, int initialSize) throws IOException {
-        // 读取 IntArrayList 的大小
+    private static void readConnections(ObjectInputStream ois, FlatGraph graph, int nodeId, int level) throws IOException {
+        // 读取连接的大小
         int size = ois.readInt();
 
-        // 创建 IntArrayList 对象
-        IntArrayList list = new IntArrayList(initialSize);
-
-        // 读取 IntArrayList 中的元素
+        // 读取连接中的元素
         for (int j = 0; j < size; j++) {
-            list.add(ois.readInt());
+            graph.add(nodeId, level, ois.readInt());
         }
-
-        return list;
     }
 
 
@@ -1361,8 +3139,7 @@ public class HnswIndex<TId, TVector, TItem extends Item<TId, TVector>, TDistance
      *
      * @param ois            ObjectInputStream 对象
      * @param itemSerializer ItemSerializer 对象
-     * @param maxM0          0 级最大 M 值
-     * @param maxM           最大 M 值
+     * @param graph          图的邻接表 节点的连接写入其中
      * @param <TItem>        item 类型
      * @return 读取到的 Node 对象
      * @throws IOException            IO 异常
@@ -1370,8 +3147,7 @@ public class HnswIndex<TId, TVector, TItem extends Item<TId, TVector>, TDistance
      */
     private static <TItem> Node<TItem> readNode(ObjectInputStream ois,
                                                 ObjectSerializer<TItem> itemSerializer,
-                                                int maxM0,
-                                                int maxM) throws IOException, ClassNotFoundException {
+                                                FlatGraph graph) throws IOException, ClassNotFoundException {
 
         int id = ois.readInt();
 
@@ -1380,18 +3156,17 @@ public class HnswIndex<TId, TVector, TItem extends Item<TId, TVector>, TDistance
         } else {
             int connectionsSize = ois.readInt();
 
-            MutableIntList[] connections = new MutableIntList[connectionsSize];
+            graph.allocate(id, connectionsSize - 1);
 
             for (int i = 0; i < connectionsSize; i++) {
-                int levelM = i == 0 ? maxM0 : maxM;
-                connections[i] = readIntArrayList(ois, levelM);
+                readConnections(ois, graph, id, i);
             }
 
             TItem item = itemSerializer.read(ois);
 
             boolean deleted = ois.readBoolean();
 
-            return new Node<>(id, connections, item, deleted);
+            return new Node<>(id, connectionsSize - 1, item, deleted);
         }
     }
 
@@ -1400,8 +3175,7 @@ public class HnswIndex<TId, TVector, TItem extends Item<TId, TVector>, TDistance
      *
      * @param ois            ObjectInputStream 对象
      * @param itemSerializer ItemSerializer 对象
-     * @param maxM0          0 级最大 M 值
-     * @param maxM           最大 M 值
+     * @param graph          图的邻接表 节点的连接写入其中
      * @param <TItem>        item 类型
      * @return 读取到的 AtomicReferenceArray<Node> 对象
      * @throws IOException            IO 异常
@@ -1409,37 +3183,36 @@ public class HnswIndex<TId, TVector, TItem extends Item<TId, TVector>, TDistance
      */
     private static <TItem> AtomicReferenceArray<Node<TItem>> readNodesArray(ObjectInputStream ois,
                                                                             ObjectSerializer<TItem> itemSerializer,
-                                                                            int maxM0,
-                                                                            int maxM)
+                                                                            FlatGraph graph)
             throws IOException, ClassNotFoundException {
 
         int size = ois.readInt();
         AtomicReferenceArray<Node<TItem>> nodes = new AtomicReferenceArray<>(size);
 
         for (int i = 0; i < nodes.length(); i++) {
-            nodes.set(i, readNode(ois, itemSerializer, maxM0, maxM));
+            nodes.set(i, readNode(ois, itemSerializer, graph));
         }
 
         return nodes;
     }
 
     /**
-     * 从 ObjectInputStream 中读取 MutableObjectIntMap 对象
+     * 从 ObjectInputStream 中读取数据点标识符到节点ID的映射
      *
      * @param ois              ObjectInputStream 对象
      * @param itemIdSerializer ItemIdSerializer 对象
      * @param <TId>            id 类型
-     * @return 读取到的 MutableObjectIntMap 对象
+     * @return 读取到的映射
      * @throws IOException            IO 异常
      * @throws ClassNotFoundException 找不到类异常
      */
-    private static <TId> MutableObjectIntMap<TId> readMutableObjectIntMap(ObjectInputStream ois,
-                                                                          ObjectSerializer<TId> itemIdSerializer)
+    private static <TId> ConcurrentHashMap<TId, Integer> readLookup(ObjectInputStream ois,
+                                                                    ObjectSerializer<TId> itemIdSerializer)
             throws IOException, ClassNotFoundException {
 
         int size = ois.readInt();
 
-        MutableObjectIntMap<TId> map = new ObjectIntHashMap<>(size);
+        ConcurrentHashMap<TId, Integer> map = new ConcurrentHashMap<>(size);
 
         for (int i = 0; i < size; i++) {
             TId key = itemIdSerializer.read(ois);
@@ -1451,22 +3224,22 @@ public class HnswIndex<TId, TVector, TItem extends Item<TId, TVector>, TDistance
     }
 
     /**
-     * 从 ObjectInputStream 中读取 MutableObjectLongMap 对象
+     * 从 ObjectInputStream 中读取已删除数据点的版本记录
      *
      * @param ois              ObjectInputStream 对象
      * @param itemIdSerializer ItemIdSerializer 对象
      * @param <TId>            id 类型
-     * @return 读取到的 MutableObjectLongMap 对象
+     * @return 读取到的版本记录
      * @throws IOException            IO 异常
      * @throws ClassNotFoundException 找不到类异常
      */
-    private static <TId> MutableObjectLongMap<TId> readMutableObjectLongMap(ObjectInputStream ois,
-                                                                            ObjectSerializer<TId> itemIdSerializer)
+    private static <TId> ConcurrentHashMap<TId, Long> readDeletedItemVersions(ObjectInputStream ois,
+                                                                              ObjectSerializer<TId> itemIdSerializer)
             throws IOException, ClassNotFoundException {
 
         int size = ois.readInt();
 
-        MutableObjectLongMap<TId> map = new ObjectLongHashMap<>(size);
+        ConcurrentHashMap<TId, Long> map = new ConcurrentHashMap<>(size);
 
         for (int i = 0; i < size; i++) {
             TId key = itemIdSerializer.read(ois);
@@ -1523,67 +3296,21 @@ public class HnswIndex<TId, TVector, TItem extends Item<TId, TVector>, TDistance
      * @param newSize 新的大小
      */
     public void resize(int newSize) {
-        globalLock.lock();
+        resizeLock.writeLock().lock();
         try {
             this.maxItemCount = newSize;
 
-            this.visitedBitSetPool = new GenericObjectPool<>(() -> new ArrayBitSet(this.maxItemCount),
-                    Runtime.getRuntime().availableProcessors());
-
             AtomicReferenceArray<Node<TItem>> newNodes = new AtomicReferenceArray<>(newSize);
 
             for (int i = 0; i < this.nodes.length(); i++) {
                 newNodes.set(i, this.nodes.get(i));
             }
             this.nodes = newNodes;
+            this.graph.resize(newSize);
 
             this.excludedCandidates = new ArrayBitSet(this.excludedCandidates, newSize);
         } finally {
-            globalLock.unlock();
-        }
-    }
-
-    /**
-     * 迭代器的实现 用于遍历Index中的所有项
-     */
-    class ItemIterator implements Iterator<TItem> {
-
-        /**
-         * 当前Index
-         */
-        private int index;
-
-        /**
-         * 已经完成的项数
-         */
-        private int done;
-
-        /**
-         * hasNext()方法的实现
-         *
-         * @return 是否还有下一个元素
-         */
-        @Override
-        public boolean hasNext() {
-            return done < HnswIndex.this.size();
-        }
-
-        /**
-         * next()方法的实现
-         *
-         * @return 下一个元素
-         */
-        @Override
-        public TItem next() {
-            Node<TItem> node;
-
-            do {
-                node = HnswIndex.this.nodes.get(index++);
-            } while (node == null || node.deleted);
-
-            done++;
-
-            return node.item;
+            resizeLock.writeLock().unlock();
         }
     }
 
@@ -1634,52 +3361,408 @@ public class HnswIndex<TId, TVector, TItem extends Item<TId, TVector>, TDistance
     }
 
     /**
-     * 用于存储节点ID和距离的类
-     *
-     * @param <TDistance> 距离类型
+     * 判断是否可以使用原始 float 的专用路径：距离函数需实现FloatDistanceType，且距离按自然顺序比较
+     *
+     * @param distanceType       距离函数
+     * @param distanceComparator 距离比较器
+     * @return 可用时返回原始 float 距离函数，否则返回null
+     */
+    @SuppressWarnings("unchecked")
+    private static <TVector, TDistance> FloatDistanceType<TVector> floatDistanceTypeOf(
+            DistanceType<TVector, TDistance> distanceType,
+            Comparator<TDistance> distanceComparator) {
+        if (distanceType instanceof FloatDistanceType && distanceComparator == Comparator.naturalOrder()) {
+            return (FloatDistanceType<TVector>) distanceType;
+        }
+        return null;
+    }
+
+    /**
+     * 以位图表示的过滤条件 直接扫描时只需遍历其中的节点ID
+     */
+    private static final class AllowedNodeIds implements IntPredicate {
+
+        /**
+         * 允许出现在结果中的内部节点ID
+         */
+        final BitSet nodeIds;
+
+        AllowedNodeIds(BitSet nodeIds) {
+            this.nodeIds = nodeIds;
+        }
+
+        @Override
+        public boolean test(int nodeId) {
+            return nodeIds.get(nodeId);
+        }
+    }
+
+    /**
+     * 用于存储节点ID和距离的类
+     *
+     * @param <TDistance> 距离类型
+     */
+    static class NodeIdAndDistance<TDistance> implements Comparable<NodeIdAndDistance<TDistance>> {
+
+        /**
+         * 节点ID
+         */
+        final int nodeId;
+
+        /**
+         * 距离
+         */
+        final TDistance distance;
+
+        /**
+         * 距离比较器
+         */
+        final Comparator<TDistance> distanceComparator;
+
+        /**
+         * 构造函数
+         *
+         * @param nodeId             节点ID
+         * @param distance           距离
+         * @param distanceComparator 距离比较器
+         */
+        NodeIdAndDistance(int nodeId, TDistance distance, Comparator<TDistance> distanceComparator) {
+            this.nodeId = nodeId;
+            this.distance = distance;
+            this.distanceComparator = distanceComparator;
+        }
+
+        /**
+         * 用于比较两个NodeIdAndDistance对象的距离大小
+         *
+         * @param o 另一个NodeIdAndDistance对象
+         * @return 如果当前对象的距离小于另一个对象的距离，则返回负整数；如果当前对象的距离等于另一个对象的距离，则返回0；否则返回正整数
+         */
+        @Override
+        public int compareTo(NodeIdAndDistance<TDistance> o) {
+            return distanceComparator.compare(distance, o.distance);
+        }
+    }
+
+    /**
+     * 每个线程独享的搜索上下文 包含一次搜索需要的已访问集合、候选队列和插入时修剪邻居用的堆，在同一线程的多次搜索之间重复使用
+     * 原始 float 距离的路径只使用其中的原始类型堆，稳定状态下一次查询除了最终结果列表之外不分配任何对象
+     * 稠密的已访问集合按当前节点数分配并按需增长，稀疏的哈希集合按访问过的节点数增长
+     * searchBaseLayer返回的队列就是上下文中的队列，只在同一线程的下一次搜索之前有效
+     *
+     * @param <TDistance> 距离类型
+     */
+    static class SearchContext<TDistance> {
+
+        /**
+         * 堆的初始容量 不够时自动增长
+         */
+        private static final int INITIAL_HEAP_CAPACITY = 64;
+
+        /**
+         * 稠密的已访问集合
+         */
+        private final EpochVisitedSet denseVisitedSet;
+
+        /**
+         * 稀疏的已访问集合
+         */
+        private final IntHashVisitedSet sparseVisitedSet;
+
+        /**
+         * 最近邻候选集 队首为距离最大的节点
+         */
+        final PriorityQueue<NodeIdAndDistance<TDistance>> topCandidates =
+                new PriorityQueue<>(Comparator.<NodeIdAndDistance<TDistance>>naturalOrder().reversed());
+
+        /**
+         * 待扩展的候选集 队首为距离最小的节点
+         */
+        final PriorityQueue<NodeIdAndDistance<TDistance>> candidateSet = new PriorityQueue<>();
+
+        /**
+         * 原始 float 距离的最近邻候选集 堆顶为距离最大的节点
+         */
+        final IntFloatHeap floatTopCandidates = IntFloatHeap.maxHeap(INITIAL_HEAP_CAPACITY);
+
+        /**
+         * 原始 float 距离的待扩展的候选集 堆顶为距离最小的节点
+         */
+        final IntFloatHeap floatCandidateSet = IntFloatHeap.minHeap(INITIAL_HEAP_CAPACITY);
+
+        /**
+         * 范围搜索中半径内的结果 队首为距离最大的节点
+         */
+        final PriorityQueue<NodeIdAndDistance<TDistance>> rangeResults =
+                new PriorityQueue<>(Comparator.<NodeIdAndDistance<TDistance>>naturalOrder().reversed());
+
+        /**
+         * 原始 float 距离的范围搜索中半径内的结果 堆顶为距离最大的节点
+         */
+        final IntFloatHeap floatRangeResults = IntFloatHeap.maxHeap(INITIAL_HEAP_CAPACITY);
+
+        /**
+         * 插入时修剪邻居列表用的候选集 堆顶为距离最大的节点
+         */
+        final IntFloatHeap floatNeighbourCandidates = IntFloatHeap.maxHeap(INITIAL_HEAP_CAPACITY);
+
+        /**
+         * 启发式选邻居时按距离从小到大取候选节点的堆
+         */
+        final IntFloatHeap floatHeuristicClosest = IntFloatHeap.minHeap(INITIAL_HEAP_CAPACITY);
+
+        /**
+         * 启发式选邻居时已选中的节点 只当作列表使用
+         */
+        final IntFloatHeap floatHeuristicSelected = IntFloatHeap.maxHeap(INITIAL_HEAP_CAPACITY);
+
+        /**
+         * 无锁地复制节点连接列表用的临时数组
+         */
+        final int[] neighbourScratch;
+
+        /**
+         * 插入时修剪后的邻居列表
+         */
+        final int[] prunedScratch;
+
+        /**
+         * 本次搜索计算距离的次数
+         * 以下计数不判断是否开启统计，总是累加：它们是当前线程独占的上下文中的int字段，自增的开销与判断一次开关相当；
+         * 关闭统计时不读取时钟、不创建SearchStatsBO，也不写入共享的直方图
+         */
+        int distanceComputations;
+
+        /**
+         * 本次搜索扩展的节点数
+         */
+        int nodesExpanded;
+
+        /**
+         * 本次搜索贪心向下经过的层数
+         */
+        int levelsDescended;
+
+        /**
+         * 本次搜索读取邻居列表时重读的次数
+         */
+        int readRetries;
+
+        /**
+         * 第0层搜索是否因为带过滤条件的扩展次数达到上限而停止
+         */
+        boolean filterExpansionLimited;
+
+        /**
+         * 构造方法
+         *
+         * @param nodeCount      当前的节点数 稠密集合的初始大小
+         * @param maxConnections 每个节点的最大连接数 即maxM0，也是稀疏集合的初始大小
+         */
+        SearchContext(int nodeCount, int maxConnections) {
+            this.denseVisitedSet = new EpochVisitedSet(nodeCount);
+            this.sparseVisitedSet = new IntHashVisitedSet(maxConnections);
+            this.neighbourScratch = new int[maxConnections];
+            this.prunedScratch = new int[maxConnections];
+        }
+
+        /**
+         * 开始一次新的搜索 清空候选队列，并返回清空后的已访问集合
+         *
+         * @param sparse 是否使用稀疏的已访问集合
+         * @return 已访问集合
+         */
+        VisitedSet begin(boolean sparse) {
+            topCandidates.clear();
+            candidateSet.clear();
+            floatTopCandidates.clear();
+            floatCandidateSet.clear();
+            rangeResults.clear();
+            floatRangeResults.clear();
+            filterExpansionLimited = false;
+
+            VisitedSet visitedSet = sparse ? sparseVisitedSet : denseVisitedSet;
+            visitedSet.clear();
+            return visitedSet;
+        }
+
+        /**
+         * 清零搜索的计数 在每次最近邻搜索开始时调用
+         */
+        void resetStats() {
+            distanceComputations = 0;
+            nodesExpanded = 0;
+            levelsDescended = 0;
+            readRetries = 0;
+        }
+
+        /**
+         * 当前的搜索计数
+         *
+         * @param elapsedNanos 搜索耗时
+         * @return 单次搜索的统计
+         */
+        SearchStatsBO stats(long elapsedNanos) {
+            return new SearchStatsBO(distanceComputations, nodesExpanded, levelsDescended, readRetries, elapsedNanos);
+        }
+    }
+
+    /**
+     * 保存时的时间点快照
+     * 开始时在扩容锁的写锁下记下节点数和入口点，此时没有进行中的添加和删除，之后的添加和删除照常进行：
+     * 新节点的ID不小于快照的节点数，不会被读到；已有节点的邻接表、item、删除标记以及已删除数据点的版本
+     * 在第一次被修改之前把旧值记下来(写时复制)。读取时先读当前值再查旧值，有旧值时以旧值为准，
+     * 因此读到的始终是开始时的状态，额外占用的内存只与保存期间被修改的节点数成正比
      */
-    static class NodeIdAndDistance<TDistance> implements Comparable<NodeIdAndDistance<TDistance>> {
+    class Snapshot {
 
         /**
-         * 节点ID
+         * 开始时的节点数
          */
-        final int nodeId;
+        final int nodeCount;
 
         /**
-         * 距离
+         * 开始时的入口点
          */
-        final TDistance distance;
+        final Node<TItem> entryPoint;
 
         /**
-         * 距离比较器
+         * 被修改的邻接表的旧值 键为节点ID和层级
          */
-        final Comparator<TDistance> distanceComparator;
+        private final ConcurrentHashMap<Long, int[]> connections = new ConcurrentHashMap<>();
 
         /**
-         * 构造函数
+         * 被修改的节点的旧值 只用到其中的item和删除标记
+         */
+        private final ConcurrentHashMap<Integer, Node<TItem>> nodeStates = new ConcurrentHashMap<>();
+
+        /**
+         * 被修改的已删除数据点版本的旧值 原来没有记录时为空
+         */
+        private final ConcurrentHashMap<TId, Optional<Long>> deletedVersions = new ConcurrentHashMap<>();
+
+        Snapshot(int nodeCount, Node<TItem> entryPoint) {
+            this.nodeCount = nodeCount;
+            this.entryPoint = entryPoint;
+        }
+
+        /**
+         * 记下邻接表的旧值 调用方持有该节点的锁，因此复制时邻接表不会被修改
          *
-         * @param nodeId             节点ID
-         * @param distance           距离
-         * @param distanceComparator 距离比较器
+         * @param nodeId 节点ID
+         * @param level  层级
          */
-        NodeIdAndDistance(int nodeId, TDistance distance, Comparator<TDistance> distanceComparator) {
-            this.nodeId = nodeId;
-            this.distance = distance;
-            this.distanceComparator = distanceComparator;
+        void captureConnections(int nodeId, int level) {
+            if (nodeId >= nodeCount) {
+                return;
+            }
+            connections.computeIfAbsent(connectionKey(nodeId, level), key -> {
+                int[] target = new int[level == 0 ? maxM0 : maxM];
+                return Arrays.copyOf(target, graph.copy(nodeId, level, target));
+            });
         }
 
         /**
-         * 用于比较两个NodeIdAndDistance对象的距离大小
+         * 记下节点的item和删除标记的旧值 调用方持有该数据点的锁
          *
-         * @param o 另一个NodeIdAndDistance对象
-         * @return 如果当前对象的距离小于另一个对象的距离，则返回负整数；如果当前对象的距离等于另一个对象的距离，则返回0；否则返回正整数
+         * @param node 节点
          */
-        @Override
-        public int compareTo(NodeIdAndDistance<TDistance> o) {
-            return distanceComparator.compare(distance, o.distance);
+        void captureNode(Node<TItem> node) {
+            if (node.id < nodeCount && !nodeStates.containsKey(node.id)) {
+                nodeStates.putIfAbsent(node.id, new Node<>(node.id, node.level, node.item, node.deleted));
+            }
+        }
+
+        /**
+         * 记下已删除数据点版本的旧值 调用方持有该数据点的锁
+         *
+         * @param id 数据点标识符
+         */
+        void captureDeletedVersion(TId id) {
+            if (!deletedVersions.containsKey(id)) {
+                deletedVersions.putIfAbsent(id, Optional.ofNullable(deletedItemVersions.get(id)));
+            }
+        }
+
+        /**
+         * 开始时节点在某一层的邻居
+         *
+         * @param nodeId 节点ID
+         * @param level  层级
+         * @param target 目标数组 长度不小于该层的最大邻居数
+         * @return 邻居数
+         */
+        int copyConnections(int nodeId, int level, int[] target) {
+            int count = graph.copy(nodeId, level, target);
+            int[] before = connections.get(connectionKey(nodeId, level));
+            if (before != null) {
+                System.arraycopy(before, 0, target, 0, before.length);
+                count = before.length;
+            }
+            return count;
+        }
+
+        /**
+         * 开始时节点的item 节点不能为空
+         *
+         * @param nodeId 节点ID
+         * @return item
+         */
+        TItem item(int nodeId) {
+            TItem item = nodes.get(nodeId).item;
+            Node<TItem> before = nodeStates.get(nodeId);
+            return before == null ? item : before.item;
+        }
+
+        /**
+         * 开始时节点是否已被删除 节点不能为空
+         *
+         * @param nodeId 节点ID
+         * @return 是否已删除
+         */
+        boolean deleted(int nodeId) {
+            boolean deleted = nodes.get(nodeId).deleted;
+            Node<TItem> before = nodeStates.get(nodeId);
+            return before == null ? deleted : before.deleted;
+        }
+
+        /**
+         * 开始时所有未删除的节点 与当时lookup中的节点ID一致
+         *
+         * @return 节点ID
+         */
+        int[] liveNodeIds() {
+            int[] nodeIds = new int[nodeCount];
+            int size = 0;
+            for (int nodeId = 0; nodeId < nodeCount; nodeId++) {
+                if (nodes.get(nodeId) != null && !deleted(nodeId)) {
+                    nodeIds[size++] = nodeId;
+                }
+            }
+            return Arrays.copyOf(nodeIds, size);
+        }
+
+        /**
+         * 开始时已删除数据点的版本 先复制当前的记录，再用旧值覆盖
+         *
+         * @return 数据点标识符到版本的映射
+         */
+        Map<TId, Long> deletedItemVersions() {
+            Map<TId, Long> versions = new HashMap<>(deletedItemVersions);
+            for (Map.Entry<TId, Optional<Long>> entry : deletedVersions.entrySet()) {
+                if (entry.getValue().isPresent()) {
+                    versions.put(entry.getKey(), entry.getValue().get());
+                } else {
+                    versions.remove(entry.getKey());
+                }
+            }
+            return versions;
         }
-    }
 
+        private long connectionKey(int nodeId, int level) {
+            return ((long) nodeId << 32) | level;
+        }
+    }
 
     /**
      * HNSW索引的构造函数 用于创建一个新的HNSW索引 该索引使用默认的参数
@@ -1748,36 +3831,192 @@ public class HnswIndex<TId, TVector, TItem extends Item<TId, TVector>, TDistance
          */
         @Override
         public List<SearchResultBO<TItem, TDistance>> findNearest(TVector vector, int k) {
+            return findNearest(vector, k, item -> true);
+        }
+
+        /**
+         * 查找满足过滤条件的最近的向量k个 这是一个精确的方法，它遍历所有的向量。
+         * 节点按ID切分为若干块，在公共的ForkJoinPool上并行扫描，每块各自保留最近的k个，最后在调用线程中合并
+         *
+         * @param vector 向量
+         * @param k      数目
+         * @param filter 过滤条件
+         * @return 最近的向量k个 按距离从近到远排列
+         */
+        @Override
+        public List<SearchResultBO<TItem, TDistance>> findNearest(TVector vector, int k, Predicate<TItem> filter) {
+            if (k <= 0) {
+                return Collections.emptyList();
+            }
+
+            // 每块的起始节点ID
+            int count = nodeCount.get();
+            List<Integer> chunkStarts = new ArrayList<>(count / EXACT_SCAN_CHUNK_SIZE + 1);
+            for (int start = 0; start < count; start += EXACT_SCAN_CHUNK_SIZE) {
+                chunkStarts.add(start);
+            }
+
+            // 距离为原始 float 时走专用路径
+            return floatDistanceType != null
+                    ? findNearestFloat(vector, k, filter, count, chunkStarts)
+                    : findNearestGeneric(vector, k, filter, count, chunkStarts);
+        }
+
+        /**
+         * 原始 float 距离的精确搜索 每块的前k个保存在原始类型的堆中，扫描过程中不创建对象，只有最终的k个结果才会装箱
+         *
+         * @param vector      向量
+         * @param k           数目
+         * @param filter      过滤条件
+         * @param count       扫描的节点数
+         * @param chunkStarts 每块的起始节点ID
+         * @return 最近的向量k个 按距离从近到远排列
+         */
+        @SuppressWarnings("unchecked")
+        private List<SearchResultBO<TItem, TDistance>> findNearestFloat(TVector vector, int k, Predicate<TItem> filter,
+                                                                        int count, List<Integer> chunkStarts) {
+            List<IntFloatHeap> chunkResults = ParallelBatch.map(chunkStarts, start -> {
+                // 堆顶为距离最大的节点
+                IntFloatHeap topResults = IntFloatHeap.maxHeap(k + 1);
+
+                int end = Math.min(start + EXACT_SCAN_CHUNK_SIZE, count);
+                for (int i = start; i < end; i++) {
+                    Node<TItem> node = nodes.get(i);
+                    if (node == null || node.deleted || !filter.test(node.item)) {
+                        continue;
+                    }
+                    float distance = floatDistanceType.floatDistance(node.getItem().vector(), vector);
+                    if (topResults.size() < k) {
+                        topResults.push(i, distance);
+                    } else if (distance < topResults.peekDistance()) {
+                        topResults.pop();
+                        topResults.push(i, distance);
+                    }
+                }
+                return topResults;
+            }, ForkJoinPool.commonPool());
+
+            // 合并每块的结果
+            IntFloatHeap topResults = IntFloatHeap.maxHeap(k + 1);
+            for (IntFloatHeap chunk : chunkResults) {
+                for (int i = 0; i < chunk.size(); i++) {
+                    float distance = chunk.distanceAt(i);
+                    if (topResults.size() < k) {
+                        topResults.push(chunk.idAt(i), distance);
+                    } else if (distance < topResults.peekDistance()) {
+                        topResults.pop();
+                        topResults.push(chunk.idAt(i), distance);
+                    }
+                }
+            }
+
+            // 堆顶为距离最大的节点，依次取出后再反转；此时TDistance即为Float
+            List<SearchResultBO<TItem, TDistance>> results = new ArrayList<>(topResults.size());
+            while (!topResults.isEmpty()) {
+                TDistance distance = (TDistance) Float.valueOf(topResults.peekDistance());
+                results.add(new SearchResultBO<>(distance, nodes.get(topResults.pop()).getItem(), maxValueDistanceComparator));
+            }
+            Collections.reverse(results);
+            return results;
+        }
 
-            // 用于比较距离的比较器
+        /**
+         * 任意距离类型的精确搜索 每块的前k个保存在有界的最大堆中，只有比堆顶更近的节点才会创建结果对象
+         *
+         * @param vector      向量
+         * @param k           数目
+         * @param filter      过滤条件
+         * @param count       扫描的节点数
+         * @param chunkStarts 每块的起始节点ID
+         * @return 最近的向量k个 按距离从近到远排列
+         */
+        private List<SearchResultBO<TItem, TDistance>> findNearestGeneric(TVector vector, int k, Predicate<TItem> filter,
+                                                                          int count, List<Integer> chunkStarts) {
+            // 堆顶为距离最大的结果
             Comparator<SearchResultBO<TItem, TDistance>> comparator = Comparator
                     .<SearchResultBO<TItem, TDistance>>naturalOrder()
                     .reversed();
 
-            // 用于存储最近的向量k个 优先队列 优先队列的大小为k 优先队列的比较器为comparator
-            PriorityQueue<SearchResultBO<TItem, TDistance>> topResults = new PriorityQueue<>(k, comparator);
+            List<PriorityQueue<SearchResultBO<TItem, TDistance>>> chunkResults = ParallelBatch.map(chunkStarts, start -> {
+                PriorityQueue<SearchResultBO<TItem, TDistance>> topResults = new PriorityQueue<>(k + 1, comparator);
+
+                int end = Math.min(start + EXACT_SCAN_CHUNK_SIZE, count);
+                for (int i = start; i < end; i++) {
+                    Node<TItem> node = nodes.get(i);
+                    if (node == null || node.deleted || !filter.test(node.item)) {
+                        continue;
+                    }
+                    TDistance distance = distanceType.distance(node.item.vector(), vector);
+                    if (topResults.size() < k || lt(distance, topResults.peek().getDistance())) {
+                        topResults.add(new SearchResultBO<>(distance, node.item, maxValueDistanceComparator));
+                        if (topResults.size() > k) {
+                            topResults.poll();
+                        }
+                    }
+                }
+                return topResults;
+            }, ForkJoinPool.commonPool());
+
+            // 合并每块的结果
+            PriorityQueue<SearchResultBO<TItem, TDistance>> topResults = new PriorityQueue<>(k + 1, comparator);
+            for (PriorityQueue<SearchResultBO<TItem, TDistance>> chunk : chunkResults) {
+                for (SearchResultBO<TItem, TDistance> result : chunk) {
+                    if (topResults.size() < k || lt(result.getDistance(), topResults.peek().getDistance())) {
+                        topResults.add(result);
+                        if (topResults.size() > k) {
+                            topResults.poll();
+                        }
+                    }
+                }
+            }
+
+            List<SearchResultBO<TItem, TDistance>> results = new ArrayList<>(topResults.size());
+            while (!topResults.isEmpty()) {
+                results.add(topResults.poll());
+            }
+            Collections.reverse(results);
+            return results;
+        }
+
+        /**
+         * 查找与向量的距离不超过radius的item 这是一个精确的方法，它遍历所有的向量。
+         *
+         * @param vector 向量
+         * @param radius 距离的上限
+         * @param limit  最多返回的数目
+         * @return 距离不超过radius的item 按距离从近到远排列
+         */
+        @Override
+        public List<SearchResultBO<TItem, TDistance>> findWithinDistance(TVector vector, TDistance radius, int limit) {
+            if (limit <= 0) {
+                return Collections.emptyList();
+            }
+
+            // 半径内的item超过limit个时只保留最近的limit个 堆顶为距离最大的结果
+            PriorityQueue<SearchResultBO<TItem, TDistance>> topResults = new PriorityQueue<>(
+                    Comparator.<SearchResultBO<TItem, TDistance>>naturalOrder().reversed());
 
-            // 遍历所有的向量 通过距离比较器比较距离 选出最近的向量k个
-            for (int i = 0; i < nodeCount; i++) {
+            int count = nodeCount.get();
+            for (int i = 0; i < count; i++) {
                 Node<TItem> node = nodes.get(i);
                 if (node == null || node.deleted) {
                     continue;
                 }
                 TDistance distance = distanceType.distance(node.item.vector(), vector);
+                if (gt(distance, radius)) {
+                    continue;
+                }
                 topResults.add(new SearchResultBO<>(distance, node.item, maxValueDistanceComparator));
-                if (topResults.size() > k) {
+                if (topResults.size() > limit) {
                     topResults.poll();
                 }
             }
 
-            // 将优先队列中的结果转换为List
             List<SearchResultBO<TItem, TDistance>> results = new ArrayList<>(topResults.size());
-
-            // 从优先队列中取出结果
-            SearchResultBO<TItem, TDistance> result;
-            while ((result = topResults.poll()) != null) {
-                results.add(result);
+            while (!topResults.isEmpty()) {
+                results.add(topResults.poll());
             }
+            Collections.reverse(results);
             return results;
         }
 
@@ -1850,6 +4089,284 @@ public class HnswIndex<TId, TVector, TItem extends Item<TId, TVector>, TDistance
         }
     }
 
+    /**
+     * 可恢复的搜索游标 按距离从近到远逐个返回结果
+     * 与普通搜索一样以最佳优先的方式扩展第0层的图，不同的是候选集和已访问集合属于游标本身：
+     * 已返回n个结果时，游标相当于一次ef为 n+lookahead 的普通搜索，返回下一个结果之前先把这次搜索扩展到收敛，
+     * 因此第一个结果与ef为lookahead的普通搜索一致，之后每返回一个结果只需要增量地扩展，不需要从头搜索
+     * 比普通搜索距离更远、暂时不扩展的节点也保留在待扩展的节点中，供之后的结果使用
+     * 与普通搜索一样结果是近似的，偶尔会有后返回的结果比先返回的更近
+     * 游标不是线程安全的；创建之后添加的节点也可能被搜到
+     */
+    public class SearchCursor implements Iterator<SearchResultBO<TItem, TDistance>> {
+
+        /**
+         * 目标向量
+         */
+        private final TVector destination;
+
+        /**
+         * 窗口中除已返回的结果以外的大小 相当于普通搜索的ef
+         */
+        private final int lookahead;
+
+        /**
+         * 待扩展的节点 队首为距离最小的节点；走原始 float 的专用路径时为null
+         */
+        private final PriorityQueue<NodeIdAndDistance<TDistance>> frontier;
+
+        /**
+         * 已发现但未返回的结果 队首为距离最小的节点，不包括已删除的节点；走原始 float 的专用路径时为null
+         */
+        private final PriorityQueue<NodeIdAndDistance<TDistance>> pending;
+
+        /**
+         * 已发现的最近的 returned+lookahead 个结果 队首为其中距离最大的节点，即扩展的下界；走原始 float 的专用路径时为null
+         */
+        private final PriorityQueue<NodeIdAndDistance<TDistance>> window;
+
+        /**
+         * 已发现但不在窗口中的结果 队首为距离最小的节点，窗口变大时从这里补充；走原始 float 的专用路径时为null
+         */
+        private final PriorityQueue<NodeIdAndDistance<TDistance>> evicted;
+
+        /**
+         * 原始 float 的待扩展的节点 只在走原始 float 的专用路径时使用，含义同frontier
+         */
+        private final IntFloatHeap floatFrontier;
+
+        /**
+         * 原始 float 的未返回的结果 只在走原始 float 的专用路径时使用，含义同pending
+         */
+        private final IntFloatHeap floatPending;
+
+        /**
+         * 原始 float 的窗口 只在走原始 float 的专用路径时使用，含义同window
+         */
+        private final IntFloatHeap floatWindow;
+
+        /**
+         * 原始 float 的窗口之外的结果 只在走原始 float 的专用路径时使用，含义同evicted
+         */
+        private final IntFloatHeap floatEvicted;
+
+        /**
+         * 已返回的结果数
+         */
+        private int returned;
+
+        /**
+         * 已访问的节点
+         */
+        private final IntHashVisitedSet visitedSet;
+
+        /**
+         * 构造方法 在高层贪心地找到第0层的起点
+         *
+         * @param destination 目标向量
+         * @param lookahead   窗口中除已返回的结果以外的大小
+         */
+        SearchCursor(TVector destination, int lookahead) {
+            this.destination = destination;
+            this.lookahead = lookahead;
+            this.visitedSet = new IntHashVisitedSet(lookahead * maxM0);
+
+            if (floatDistanceType != null) {
+                this.frontier = null;
+                this.pending = null;
+                this.window = null;
+                this.evicted = null;
+                this.floatFrontier = IntFloatHeap.minHeap(lookahead * maxM0);
+                this.floatPending = IntFloatHeap.minHeap(lookahead * maxM0);
+                this.floatWindow = IntFloatHeap.maxHeap(lookahead + 1);
+                this.floatEvicted = IntFloatHeap.minHeap(lookahead * maxM0);
+            } else {
+                this.frontier = new PriorityQueue<>();
+                this.pending = new PriorityQueue<>();
+                this.window = new PriorityQueue<>(Comparator.<NodeIdAndDistance<TDistance>>naturalOrder().reversed());
+                this.evicted = new PriorityQueue<>();
+                this.floatFrontier = null;
+                this.floatPending = null;
+                this.floatWindow = null;
+                this.floatEvicted = null;
+            }
+
+            Node<TItem> entryPointCopy = entryPoint;
+            if (entryPointCopy != null) {
+                Node<TItem> start = floatDistanceType != null
+                        ? greedySearchFloat(entryPointCopy, destination, entryPointCopy.maxLevel(), 0)
+                        : greedySearch(entryPointCopy, destination);
+                visit(start.id);
+            }
+        }
+
+        /**
+         * 是否还有下一个结果
+         *
+         * @return 是否还有结果
+         */
+        @Override
+        public boolean hasNext() {
+            if (floatDistanceType != null) {
+                expandFloat();
+                return !floatPending.isEmpty();
+            }
+            expand();
+            return !pending.isEmpty();
+        }
+
+        /**
+         * 返回距离次近的结果
+         *
+         * @return 搜索结果
+         */
+        @Override
+        @SuppressWarnings("unchecked")
+        public SearchResultBO<TItem, TDistance> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            returned++;
+            if (floatDistanceType != null) {
+                // 只有返回的结果才装箱
+                TDistance distance = (TDistance) Float.valueOf(floatPending.peekDistance());
+                return new SearchResultBO<>(distance, nodes.get(floatPending.pop()).getItem(), maxValueDistanceComparator);
+            }
+            NodeIdAndDistance<TDistance> pair = pending.poll();
+            return new SearchResultBO<>(pair.distance, nodes.get(pair.nodeId).getItem(), maxValueDistanceComparator);
+        }
+
+        /**
+         * 返回接下来的最多count个结果
+         *
+         * @param count 数目
+         * @return 搜索结果列表 按距离从近到远排列，没有更多结果时比count少
+         */
+        public List<SearchResultBO<TItem, TDistance>> next(int count) {
+            List<SearchResultBO<TItem, TDistance>> results = new ArrayList<>(count);
+            while (results.size() < count && hasNext()) {
+                results.add(next());
+            }
+            return results;
+        }
+
+        /**
+         * 扩展待扩展的节点 直到最近的待扩展节点比窗口中距离最大的结果更远，与普通搜索的结束条件相同
+         */
+        private void expand() {
+            // 游标可能在不同的线程中迭代，每次扩展时取当前线程的上下文
+            SearchContext<TDistance> context = searchContexts.get();
+            int[] neighbours = context.neighbourScratch;
+
+            // 每返回一个结果窗口就变大一个，先用已发现的最近的结果补满
+            while (window.size() < windowSize() && !evicted.isEmpty()) {
+                window.add(evicted.poll());
+            }
+
+            while (!frontier.isEmpty()
+                    && (window.size() < windowSize() || !gt(frontier.peek().distance, window.peek().distance))) {
+                int connectionCount = copyConnections(context, frontier.poll().nodeId, 0);
+                for (int i = 0; i < connectionCount; i++) {
+                    if (!visitedSet.contains(neighbours[i])) {
+                        visit(neighbours[i]);
+                    }
+                }
+            }
+        }
+
+        /**
+         * 原始 float 距离的扩展 与expand相同，候选集和窗口都是原始类型的堆，扩展过程中不创建对象
+         */
+        private void expandFloat() {
+            SearchContext<TDistance> context = searchContexts.get();
+            int[] neighbours = context.neighbourScratch;
+
+            while (floatWindow.size() < windowSize() && !floatEvicted.isEmpty()) {
+                float distance = floatEvicted.peekDistance();
+                floatWindow.push(floatEvicted.pop(), distance);
+            }
+
+            while (!floatFrontier.isEmpty()
+                    && (floatWindow.size() < windowSize() || floatFrontier.peekDistance() <= floatWindow.peekDistance())) {
+                int connectionCount = copyConnections(context, floatFrontier.pop(), 0);
+                for (int i = 0; i < connectionCount; i++) {
+                    if (!visitedSet.contains(neighbours[i])) {
+                        visitFloat(neighbours[i]);
+                    }
+                }
+            }
+        }
+
+        /**
+         * 访问一个节点 计算距离，加入待扩展的节点，未删除时加入未返回的结果
+         *
+         * @param nodeId 节点ID
+         */
+        private void visit(int nodeId) {
+            if (floatDistanceType != null) {
+                visitFloat(nodeId);
+                return;
+            }
+            visitedSet.add(nodeId);
+
+            Node<TItem> node = nodes.get(nodeId);
+            TDistance distance = distanceType.distance(destination, node.getItem().vector());
+            NodeIdAndDistance<TDistance> pair = new NodeIdAndDistance<>(nodeId, distance, maxValueDistanceComparator);
+
+            frontier.add(pair);
+            if (node.deleted) {
+                return;
+            }
+
+            pending.add(pair);
+            if (window.size() < windowSize()) {
+                window.add(pair);
+            } else if (gt(window.peek().distance, distance)) {
+                evicted.add(window.poll());
+                window.add(pair);
+            } else {
+                evicted.add(pair);
+            }
+        }
+
+        /**
+         * 原始 float 距离的访问 与visit相同，通过floatDistance计算距离并存入原始类型的堆
+         *
+         * @param nodeId 节点ID
+         */
+        private void visitFloat(int nodeId) {
+            visitedSet.add(nodeId);
+
+            Node<TItem> node = nodes.get(nodeId);
+            float distance = floatDistanceType.floatDistance(destination, node.getItem().vector());
+
+            floatFrontier.push(nodeId, distance);
+            if (node.deleted) {
+                return;
+            }
+
+            floatPending.push(nodeId, distance);
+            if (floatWindow.size() < windowSize()) {
+                floatWindow.push(nodeId, distance);
+            } else if (floatWindow.peekDistance() > distance) {
+                float evictedDistance = floatWindow.peekDistance();
+                floatEvicted.push(floatWindow.pop(), evictedDistance);
+                floatWindow.push(nodeId, distance);
+            } else {
+                floatEvicted.push(nodeId, distance);
+            }
+        }
+
+        /**
+         * 窗口的大小 随已返回的结果数增长
+         *
+         * @return 窗口的大小
+         */
+        private int windowSize() {
+            return returned + lookahead;
+        }
+    }
+
     /**
      * 节点
      *
@@ -1869,9 +4386,9 @@ public class HnswIndex<TId, TVector, TItem extends Item<TId, TVector>, TDistance
         final int id;
 
         /**
-         * 节点的层级, connections[level] 包含了层级为level的节点的IDs
+         * 节点的最大层级 各层的连接存放在索引的邻接表FlatGraph中
          */
-        final MutableIntList[] connections;
+        final int level;
 
         /**
          * 节点的Item
@@ -1883,9 +4400,9 @@ public class HnswIndex<TId, TVector, TItem extends Item<TId, TVector>, TDistance
          */
         volatile boolean deleted;
 
-        Node(int id, MutableIntList[] connections, TItem item, boolean deleted) {
+        Node(int id, int level, TItem item, boolean deleted) {
             this.id = id;
-            this.connections = connections;
+            this.level = level;
             this.item = item;
             this.deleted = deleted;
         }
@@ -1896,7 +4413,7 @@ public class HnswIndex<TId, TVector, TItem extends Item<TId, TVector>, TDistance
          * @return 节点的最大层级
          */
         int maxLevel() {
-            return this.connections.length - 1;
+            return this.level;
         }
 
     }
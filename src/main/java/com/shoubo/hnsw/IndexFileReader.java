@@ -0,0 +1,379 @@
+package com.shoubo.hnsw;
+
+import com.shoubo.utils.Crc32c;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.util.Arrays;
+import java.util.zip.Checksum;
+
+/**
+ * Author: shoubo
+ * Date: 2026/10/18
+ * Desc: 二进制索引文件的读取器 格式见 {@link IndexFileWriter}
+ * 从头到尾顺序读取，因此既可以读文件通道也可以读任意输入流；段必须按文件中的顺序读取，跳过的段也会核对校验和，
+ * 只有调用方自行核对内容时才用 {@link #skipSection(int)} 跳过一段而不读取
+ * 每读完一段都会核对它的CRC32C，不一致时抛出IOException
+ */
+class IndexFileReader {
+
+    /**
+     * 缓冲区大小
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final ReadableByteChannel channel;
+
+    /**
+     * 读模式的缓冲区 position之前的字节已被读取
+     */
+    private final ByteBuffer buffer;
+
+    private final Checksum checksum;
+
+    /**
+     * 缓冲区下标0在文件中的偏移量
+     */
+    private long bufferStart;
+
+    /**
+     * 缓冲区中从该下标到position之间的字节已被读取但还没有计入校验和
+     */
+    private int checksumFrom;
+
+    /**
+     * 文件头中的段 每段依次为编号、偏移量、长度和CRC32C
+     */
+    private final long[][] sections;
+
+    /**
+     * 当前段 没有正在读取的段时为null
+     */
+    private long[] currentSection;
+
+    /**
+     * 当前段的末尾在文件中的偏移量
+     */
+    private long sectionEnd;
+
+    /**
+     * 构造方法 读取并校验文件头
+     *
+     * @param channel 从文件开头开始的通道
+     * @throws IOException 不是二进制索引文件、版本不支持或文件头已损坏
+     */
+    IndexFileReader(ReadableByteChannel channel) throws IOException {
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        this.buffer.flip();
+        this.checksum = Crc32c.newChecksum();
+
+        ensure(IndexFileWriter.MAGIC.length + Integer.BYTES * 2);
+        byte[] magic = new byte[IndexFileWriter.MAGIC.length];
+        buffer.get(magic);
+        if (!Arrays.equals(magic, IndexFileWriter.MAGIC)) {
+            throw new IOException("不是二进制索引文件");
+        }
+        int version = buffer.getInt();
+        if (version != IndexFileWriter.FORMAT_VERSION) {
+            throw new IOException("不支持的索引文件版本: " + version + "，当前支持的版本为 " + IndexFileWriter.FORMAT_VERSION);
+        }
+
+        int sectionCount = buffer.getInt();
+        if (sectionCount < 0 || sectionCount > (BUFFER_SIZE - IndexFileWriter.headerBytes(0)) / IndexFileWriter.SECTION_ENTRY_BYTES) {
+            throw new IOException("索引文件头已损坏，段数为 " + sectionCount);
+        }
+        this.sections = new long[sectionCount][];
+        ensure(sectionCount * IndexFileWriter.SECTION_ENTRY_BYTES + Integer.BYTES);
+        for (int i = 0; i < sectionCount; i++) {
+            sections[i] = new long[]{buffer.getInt(), buffer.getLong(), buffer.getLong(), buffer.getInt()};
+        }
+
+        consumeChecksum();
+        int expected = buffer.getInt();
+        if ((int) checksum.getValue() != expected) {
+            throw new IOException("索引文件头的校验和不一致，文件可能已损坏");
+        }
+    }
+
+    /**
+     * 判断数据是否以二进制索引文件的magic开头
+     *
+     * @param prefix 数据的开头
+     * @param length prefix中有效的字节数
+     * @return 是否为二进制索引文件
+     */
+    static boolean hasMagic(byte[] prefix, int length) {
+        if (length < IndexFileWriter.MAGIC.length) {
+            return false;
+        }
+        for (int i = 0; i < IndexFileWriter.MAGIC.length; i++) {
+            if (prefix[i] != IndexFileWriter.MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 文件中是否有某一段
+     *
+     * @param section 段的编号
+     * @return 是否存在
+     */
+    boolean hasSection(int section) {
+        return find(section) != null;
+    }
+
+    /**
+     * 开始读取一段 跳过它之前还没有读取的段
+     *
+     * @param section 段的编号
+     * @throws IOException 段不存在或已经读过
+     */
+    void beginSection(int section) throws IOException {
+        if (currentSection != null) {
+            throw new IllegalStateException("第 " + currentSection[0] + " 段还没有结束");
+        }
+        long[] entry = find(section);
+        if (entry == null) {
+            throw new IOException("索引文件中缺少第 " + section + " 段");
+        }
+        long offset = entry[1];
+        if (offset < position()) {
+            throw new IOException("索引文件的第 " + section + " 段已经读过，段只能按顺序读取");
+        }
+
+        // 中间跳过的段同样核对校验和
+        for (long[] skipped : sections) {
+            if (skipped[1] >= position() && skipped[1] < offset) {
+                start(skipped);
+                endSection();
+            }
+        }
+        start(entry);
+    }
+
+    /**
+     * 跳过一段 不读取也不核对它的校验和，由调用方自行核对其中的内容；通道支持定位时直接移动位置，否则读取并丢弃
+     * 它之前还没有读取的段照常核对校验和
+     *
+     * @param section 段的编号
+     * @throws IOException 段不存在或已经读过
+     */
+    void skipSection(int section) throws IOException {
+        beginSection(section);
+        currentSection = null;
+        if (channel instanceof SeekableByteChannel && sectionEnd - position() > buffer.remaining()) {
+            ((SeekableByteChannel) channel).position(sectionEnd);
+            bufferStart = sectionEnd;
+            buffer.clear();
+            buffer.flip();
+            checksumFrom = 0;
+        } else {
+            skipTo(sectionEnd);
+            checksumFrom = buffer.position();
+        }
+    }
+
+    /**
+     * 结束当前段 跳过未读取的内容并核对校验和
+     *
+     * @throws IOException 校验和不一致
+     */
+    void endSection() throws IOException {
+        skipTo(sectionEnd);
+        consumeChecksum();
+
+        long[] entry = currentSection;
+        currentSection = null;
+        if ((int) checksum.getValue() != (int) entry[3]) {
+            throw new IOException("索引文件第 " + entry[0] + " 段的校验和不一致，文件可能已损坏");
+        }
+    }
+
+    byte getByte() throws IOException {
+        require(Byte.BYTES);
+        return buffer.get();
+    }
+
+    int getInt() throws IOException {
+        require(Integer.BYTES);
+        return buffer.getInt();
+    }
+
+    long getLong() throws IOException {
+        require(Long.BYTES);
+        return buffer.getLong();
+    }
+
+    float getFloat() throws IOException {
+        require(Float.BYTES);
+        return buffer.getFloat();
+    }
+
+    void get(byte[] bytes, int offset, int length) throws IOException {
+        checkBounds(length);
+        while (length > 0) {
+            ensure(1);
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            offset += count;
+            length -= count;
+        }
+    }
+
+    /**
+     * 核对剩余所有段的校验和 不保留其中的内容
+     *
+     * @throws IOException 校验和不一致
+     */
+    void verifyRemaining() throws IOException {
+        if (currentSection != null) {
+            endSection();
+        }
+        for (long[] entry : sections) {
+            if (entry[1] >= position()) {
+                start(entry);
+                endSection();
+            }
+        }
+    }
+
+    /**
+     * 文件头中某一段的偏移量和长度
+     *
+     * @param section 段的编号
+     * @return 依次为偏移量和长度 段不存在时为null
+     */
+    long[] sectionBounds(int section) {
+        long[] entry = find(section);
+        return entry == null ? null : new long[]{entry[1], entry[2]};
+    }
+
+    /**
+     * 读取当前段的输入流 到段的末尾即结束，用于读取Java序列化的内容；关闭它不会关闭文件
+     *
+     * @return 输入流
+     */
+    InputStream inputStream() {
+        return new InputStream() {
+            @Override
+            public int read() throws IOException {
+                if (position() >= sectionEnd) {
+                    return -1;
+                }
+                ensure(1);
+                return buffer.get() & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (len == 0) {
+                    return 0;
+                }
+                long left = sectionEnd - position();
+                if (left <= 0) {
+                    return -1;
+                }
+                ensure(1);
+                int count = (int) Math.min(Math.min(len, left), buffer.remaining());
+                buffer.get(b, off, count);
+                return count;
+            }
+
+            @Override
+            public int available() {
+                return (int) Math.min(buffer.remaining(), sectionEnd - position());
+            }
+        };
+    }
+
+    /**
+     * 跳到某一段的开头并开始计算校验和 中间的内容不计入校验和
+     */
+    private void start(long[] entry) throws IOException {
+        skipTo(entry[1]);
+        checksumFrom = buffer.position();
+        checksum.reset();
+
+        this.currentSection = entry;
+        this.sectionEnd = entry[1] + entry[2];
+    }
+
+    /**
+     * 读取并丢弃内容直到文件中的某个偏移量
+     */
+    private void skipTo(long offset) throws IOException {
+        while (position() < offset) {
+            ensure(1);
+            int count = (int) Math.min(buffer.remaining(), offset - position());
+            buffer.position(buffer.position() + count);
+        }
+    }
+
+    /**
+     * 当前在文件中的偏移量
+     */
+    private long position() {
+        return bufferStart + buffer.position();
+    }
+
+    /**
+     * 检查当前段是否还剩bytes个字节，并保证它们在缓冲区中
+     */
+    private void require(int bytes) throws IOException {
+        checkBounds(bytes);
+        ensure(bytes);
+    }
+
+    /**
+     * 检查当前段是否还剩bytes个字节
+     */
+    private void checkBounds(long bytes) throws IOException {
+        if (bytes < 0 || position() + bytes > sectionEnd) {
+            throw new IOException("超出了索引文件第 " + currentSection[0] + " 段的末尾，文件可能已损坏");
+        }
+    }
+
+    /**
+     * 保证缓冲区中至少还有bytes个未读取的字节
+     */
+    private void ensure(int bytes) throws IOException {
+        if (buffer.remaining() >= bytes) {
+            return;
+        }
+        consumeChecksum();
+        bufferStart += buffer.position();
+        buffer.compact();
+        while (buffer.position() < bytes) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("索引文件不完整");
+            }
+        }
+        buffer.flip();
+        checksumFrom = 0;
+    }
+
+    /**
+     * 把已读取的字节计入校验和
+     */
+    private void consumeChecksum() {
+        checksum.update(buffer.array(), checksumFrom, buffer.position() - checksumFrom);
+        checksumFrom = buffer.position();
+    }
+
+    private long[] find(int section) {
+        for (long[] entry : sections) {
+            if (entry[0] == section) {
+                return entry;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,332 @@
+package com.shoubo.hnsw;
+
+import com.shoubo.utils.Crc32c;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.zip.Checksum;
+
+/**
+ * Author: shoubo
+ * Date: 2026/10/18
+ * Desc: 二进制索引文件的写入器
+ * 文件由定长的文件头和若干段组成，各段紧挨着依次写入，文件头在所有段写完后回填到文件开头，
+ * 其中记录每一段的编号、偏移量、长度和 CRC32C；所有数值均为小端序
+ * <p>
+ * 文件头：magic(8字节) 格式版本(int) 段数(int)，每段 编号(int) 偏移量(long) 长度(long) CRC32C(int)，最后是文件头本身的CRC32C(int)
+ * 读取方不认识的段直接跳过，因此新增段不需要提升格式版本
+ */
+class IndexFileWriter implements Closeable {
+
+    /**
+     * 文件开头的 magic 与Java序列化流的开头(0xACED)不同，载入时据此区分两种格式
+     */
+    static final byte[] MAGIC = {'M', 'Y', 'H', 'N', 'S', 'W', 0x00, 0x01};
+
+    /**
+     * 当前的格式版本
+     */
+    static final int FORMAT_VERSION = 1;
+
+    /**
+     * 每条数据点记录包含的节点数 同一个Java序列化流中的类描述只写一次，段越大解码越快，按ID读取单个item时要多解码前面的item
+     */
+    static final int ITEM_SEGMENT_SIZE = 16;
+
+    /**
+     * 每一段在文件头中占用的字节数
+     */
+    static final int SECTION_ENTRY_BYTES = Integer.BYTES + Long.BYTES + Long.BYTES + Integer.BYTES;
+
+    /**
+     * 元数据段 索引的参数、距离类型和序列化器，Java序列化
+     */
+    static final int SECTION_META = 1;
+
+    /**
+     * 节点段 每个节点的最大层级和高层槽位的起始下标，各一个int
+     */
+    static final int SECTION_NODES = 2;
+
+    /**
+     * 删除标记段 按节点ID的位图
+     */
+    static final int SECTION_TOMBSTONES = 3;
+
+    /**
+     * 第0层邻接段 每个节点 maxM0+1 个int：邻居数和邻居，不足的补0
+     */
+    static final int SECTION_LEVEL0 = 4;
+
+    /**
+     * 高层邻接段 每个节点的每个高层 maxM+1 个int：邻居数和邻居，不足的补0
+     */
+    static final int SECTION_UPPER_LEVELS = 5;
+
+    /**
+     * 向量段 向量为 float[] 且距离为原始 float 时按节点ID依次存放所有向量，空节点补0
+     */
+    static final int SECTION_VECTORS = 6;
+
+    /**
+     * 标识符段 lookup中的节点ID，标识符本身从对应节点的item中取得
+     */
+    static final int SECTION_IDS = 7;
+
+    /**
+     * 已删除数据点的版本段 Java序列化
+     */
+    static final int SECTION_DELETED_VERSIONS = 8;
+
+    /**
+     * 数据点记录段 按节点ID每 {@link #ITEM_SEGMENT_SIZE} 个节点一条记录：长度(int)和单独的Java序列化流，
+     * 流中依次是其中非空节点的item，全部为空节点时没有记录
+     */
+    static final int SECTION_ITEM_RECORDS = 9;
+
+    /**
+     * 数据点偏移量段 每条记录 {@link #ITEM_OFFSET_ENTRY_BYTES} 个字节：它在数据点记录段中的偏移量(long)，没有记录时为-1，
+     * 以及记录中Java序列化流的CRC32C(int)；并行载入时各个任务按位置读取记录并自行核对，不必再顺序读一遍整段
+     */
+    static final int SECTION_ITEM_OFFSETS = 10;
+
+    /**
+     * 数据点偏移量段中每条记录占用的字节数
+     */
+    static final int ITEM_OFFSET_ENTRY_BYTES = Long.BYTES + Integer.BYTES;
+
+    /**
+     * 标识符哈希段 开放寻址的哈希表，槽位数(int)之后每个槽位为标识符的哈希值和节点ID(各一个int)，空槽位的节点ID为-1；
+     * 只有标识符的hashCode在不同JVM之间稳定时(如String、Integer、Long)才能在载入后使用
+     */
+    static final int SECTION_ID_HASH = 11;
+
+    /**
+     * 缓冲区大小
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final FileChannel channel;
+
+    private final ByteBuffer buffer;
+
+    private final Checksum checksum;
+
+    /**
+     * 预留给文件头的段数
+     */
+    private final int maxSections;
+
+    /**
+     * 已写完的段 每段依次为编号、偏移量、长度和CRC32C
+     */
+    private final long[][] sections;
+
+    private int sectionCount;
+
+    /**
+     * 当前段的编号 没有正在写入的段时为0
+     */
+    private int currentSection;
+
+    /**
+     * 当前段的起始偏移量
+     */
+    private long sectionStart;
+
+    /**
+     * 构造方法 预留文件头的空间，第一段紧跟在文件头之后
+     *
+     * @param channel     可写的文件通道 从位置0开始写入
+     * @param maxSections 最多写入的段数
+     * @throws IOException IO异常
+     */
+    IndexFileWriter(FileChannel channel, int maxSections) throws IOException {
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        this.checksum = Crc32c.newChecksum();
+        this.maxSections = maxSections;
+        this.sections = new long[maxSections][];
+        channel.truncate(0);
+        channel.position(headerBytes(maxSections));
+    }
+
+    /**
+     * 文件头的字节数
+     *
+     * @param sectionCount 段数
+     * @return 字节数
+     */
+    static int headerBytes(int sectionCount) {
+        return MAGIC.length + Integer.BYTES * 2 + sectionCount * SECTION_ENTRY_BYTES + Integer.BYTES;
+    }
+
+    /**
+     * 开始写入一段
+     *
+     * @param section 段的编号
+     * @throws IOException IO异常
+     */
+    void beginSection(int section) throws IOException {
+        if (currentSection != 0) {
+            throw new IllegalStateException("第 " + currentSection + " 段还没有结束");
+        }
+        if (sectionCount == maxSections) {
+            throw new IllegalStateException("段数超过了预留的 " + maxSections + " 段");
+        }
+        this.currentSection = section;
+        this.sectionStart = channel.position();
+        this.checksum.reset();
+    }
+
+    /**
+     * 结束当前段 记录它的偏移量、长度和CRC32C
+     *
+     * @throws IOException IO异常
+     */
+    void endSection() throws IOException {
+        flush();
+        long end = channel.position();
+        sections[sectionCount++] = new long[]{currentSection, sectionStart, end - sectionStart, checksum.getValue()};
+        currentSection = 0;
+    }
+
+    void putByte(byte value) throws IOException {
+        ensure(Byte.BYTES);
+        buffer.put(value);
+    }
+
+    void putInt(int value) throws IOException {
+        ensure(Integer.BYTES);
+        buffer.putInt(value);
+    }
+
+    void putLong(long value) throws IOException {
+        ensure(Long.BYTES);
+        buffer.putLong(value);
+    }
+
+    void putFloat(float value) throws IOException {
+        ensure(Float.BYTES);
+        buffer.putFloat(value);
+    }
+
+    void put(byte[] bytes, int offset, int length) throws IOException {
+        while (length > 0) {
+            ensure(1);
+            int count = Math.min(length, buffer.remaining());
+            buffer.put(bytes, offset, count);
+            offset += count;
+            length -= count;
+        }
+    }
+
+    /**
+     * 当前段已经写入的字节数
+     *
+     * @return 字节数
+     * @throws IOException IO异常
+     */
+    long sectionPosition() throws IOException {
+        return channel.position() + buffer.position() - sectionStart;
+    }
+
+    /**
+     * 标识符在标识符哈希段中使用的哈希值 对hashCode再做一次混合，使低位分布均匀
+     *
+     * @param id 标识符
+     * @return 哈希值
+     */
+    static int idHash(Object id) {
+        int h = id.hashCode();
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    /**
+     * 写入当前段的输出流 用于写入Java序列化的内容；关闭它不会关闭文件
+     *
+     * @return 输出流
+     */
+    OutputStream outputStream() {
+        return new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                putByte((byte) b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                put(b, off, len);
+            }
+        };
+    }
+
+    /**
+     * 回填文件头并把数据刷到磁盘
+     *
+     * @throws IOException IO异常
+     */
+    void finish() throws IOException {
+        if (currentSection != 0) {
+            throw new IllegalStateException("第 " + currentSection + " 段还没有结束");
+        }
+
+        // 文件头只记录实际写入的段，预留空间中剩余的部分留空，第一段的偏移量之前都属于文件头
+        ByteBuffer header = ByteBuffer.allocate(headerBytes(sectionCount)).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(MAGIC);
+        header.putInt(FORMAT_VERSION);
+        header.putInt(sectionCount);
+        for (int i = 0; i < sectionCount; i++) {
+            header.putInt((int) sections[i][0]);
+            header.putLong(sections[i][1]);
+            header.putLong(sections[i][2]);
+            header.putInt((int) sections[i][3]);
+        }
+
+        Checksum headerChecksum = Crc32c.newChecksum();
+        headerChecksum.update(header.array(), 0, header.position());
+        header.putInt((int) headerChecksum.getValue());
+
+        header.flip();
+        long position = 0;
+        while (header.hasRemaining()) {
+            position += channel.write(header, position);
+        }
+        channel.force(true);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * 缓冲区剩余空间不足时先写出
+     */
+    private void ensure(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush();
+        }
+    }
+
+    /**
+     * 把缓冲区的内容计入校验和并写入文件
+     */
+    private void flush() throws IOException {
+        checksum.update(buffer.array(), 0, buffer.position());
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
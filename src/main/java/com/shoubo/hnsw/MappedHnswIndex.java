@@ -0,0 +1,872 @@
+package com.shoubo.hnsw;
+
+import com.shoubo.Index;
+import com.shoubo.Item;
+import com.shoubo.exception.UncategorizedIndexException;
+import com.shoubo.model.DistanceType;
+import com.shoubo.model.FloatDistanceType;
+import com.shoubo.model.bo.SearchResultBO;
+import com.shoubo.serializer.ObjectSerializer;
+import com.shoubo.utils.ClassLoaderObjectInputStream;
+import com.shoubo.utils.Crc32c;
+import com.shoubo.utils.EpochVisitedSet;
+import com.shoubo.utils.IntFloatHeap;
+import com.shoubo.utils.IntHashVisitedSet;
+import com.shoubo.utils.VisitedSet;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+import java.util.zip.Checksum;
+
+/**
+ * Author: shoubo
+ * Date: 2026/10/18
+ * Desc: 内存映射的只读 HNSW 索引 直接在 {@link HnswIndex#save(Path)} 保存的二进制文件上搜索
+ * 向量、第0层和高层的邻接表、删除标记都按文件中的定长布局映射到内存，打开时只读取元数据，不需要反序列化整个索引，
+ * 常驻内存的是操作系统的页缓存，多个进程打开同一个文件时共享；item只在出现在结果中或需要过滤时才从所在的记录中反序列化
+ * <p>
+ * 只支持 float[] 向量和原始 float 距离(实现了 {@link FloatDistanceType} 且按自然顺序比较)的索引；
+ * 打开时只核对文件头和元数据的校验和，需要时用 {@link #verify()} 核对整个文件。
+ * {@link #get(Object)} 通过文件中的标识符哈希表查找，要求标识符的hashCode在不同JVM之间稳定(如String、Integer、Long)
+ *
+ * @param <TId>   Item的唯一标识符的类型
+ * @param <TItem> Item的类型
+ */
+public class MappedHnswIndex<TId, TItem extends Item<TId, float[]>> implements Index<TId, float[], TItem, Float>, Closeable {
+
+    /**
+     * 序列化版本ID
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 预计访问的节点数乘以该倍数仍小于节点数时，搜索使用稀疏的哈希已访问集合，否则使用按需增长的稠密集合
+     */
+    private static final int SPARSE_VISITED_SET_RATIO = 32;
+
+    /**
+     * 堆的初始容量 不够时自动增长
+     */
+    private static final int INITIAL_HEAP_CAPACITY = 64;
+
+    /**
+     * 带过滤条件的搜索在凑满候选集之前最多扩展的节点数为候选集大小的该倍数，超过后改为直接扫描满足条件的节点
+     */
+    private static final int FILTERED_EXPANSION_FACTOR = 8;
+
+    /**
+     * 每个线程缓存的已解码记录数 必须是2的幂
+     */
+    private static final int ITEM_CACHE_SEGMENTS = 64;
+
+    private final transient Path path;
+
+    private final transient FileChannel channel;
+
+    private final transient ClassLoader classLoader;
+
+    private final int dimensions;
+
+    private final transient FloatDistanceType<float[]> distanceType;
+
+    private final transient ObjectSerializer<TItem> itemSerializer;
+
+    private final int maxM;
+
+    private final int maxM0;
+
+    /**
+     * 节点数 包括空节点和已删除的节点
+     */
+    private final int nodeCount;
+
+    /**
+     * 索引中的item数
+     */
+    private final int size;
+
+    /**
+     * 入口点的节点ID 索引为空时为-1
+     */
+    private final int entryPointNodeId;
+
+    private volatile int ef;
+
+    private final transient MappedSection nodes;
+
+    private final transient MappedSection tombstones;
+
+    private final transient MappedSection level0;
+
+    private final transient MappedSection upperLevels;
+
+    private final transient MappedSection vectors;
+
+    private final transient MappedSection itemRecords;
+
+    private final transient MappedSection itemOffsets;
+
+    /**
+     * 每条数据点记录包含的节点数
+     */
+    private final int itemSegmentSize;
+
+    /**
+     * 标识符哈希表的槽位 不含开头的槽位数
+     */
+    private final transient MappedSection idHash;
+
+    private final int idHashSlots;
+
+    /**
+     * 每个线程的搜索上下文
+     */
+    private final transient ThreadLocal<SearchContext> searchContexts;
+
+    /**
+     * 打开并映射索引文件
+     *
+     * @param path        文件路径
+     * @param classLoader 读取距离类型、序列化器和item用的类加载器
+     * @throws IOException 不是二进制索引文件、文件已损坏或缺少必需的段
+     */
+    @SuppressWarnings("unchecked")
+    private MappedHnswIndex(Path path, ClassLoader classLoader) throws IOException {
+        this.path = path;
+        this.classLoader = classLoader;
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            IndexFileReader reader = new IndexFileReader(channel);
+
+            // 元数据 字段顺序与HnswIndex#writeSections一致
+            DistanceType<float[], Float> rawDistanceType;
+            Comparator<Float> distanceComparator;
+            reader.beginSection(IndexFileWriter.SECTION_META);
+            try (ObjectInputStream ois = new ClassLoaderObjectInputStream(classLoader, reader.inputStream())) {
+                this.dimensions = ois.readInt();
+                rawDistanceType = (DistanceType<float[], Float>) ois.readObject();
+                distanceComparator = (Comparator<Float>) ois.readObject();
+                ois.readObject();
+                this.itemSerializer = (ObjectSerializer<TItem>) ois.readObject();
+                ois.readInt();
+                ois.readInt();
+                this.maxM = ois.readInt();
+                this.maxM0 = ois.readInt();
+                ois.readDouble();
+                this.ef = ois.readInt();
+                ois.readInt();
+                ois.readBoolean();
+                this.nodeCount = ois.readInt();
+                this.entryPointNodeId = ois.readInt();
+                this.itemSegmentSize = ois.readInt();
+            } catch (ClassNotFoundException e) {
+                throw new IllegalArgumentException("找不到用于载入的文件", e);
+            }
+            reader.endSection();
+
+            if (!(rawDistanceType instanceof FloatDistanceType) || distanceComparator != Comparator.naturalOrder()) {
+                throw new IllegalArgumentException("内存映射的索引只支持按自然顺序比较的原始 float 距离");
+            }
+            if (!reader.hasSection(IndexFileWriter.SECTION_VECTORS)) {
+                throw new IllegalArgumentException("索引文件中没有向量段，向量不是 float[] 的索引不能映射");
+            }
+            this.distanceType = (FloatDistanceType<float[]>) rawDistanceType;
+
+            // 定长的段必须与节点数一致，否则搜索时会越界
+            this.nodes = map(reader, IndexFileWriter.SECTION_NODES, Integer.BYTES * 2, (long) nodeCount * Integer.BYTES * 2);
+            this.tombstones = map(reader, IndexFileWriter.SECTION_TOMBSTONES, Long.BYTES, ((nodeCount + Long.SIZE - 1L) / Long.SIZE) * Long.BYTES);
+            this.level0 = map(reader, IndexFileWriter.SECTION_LEVEL0, (maxM0 + 1) * Integer.BYTES, (long) nodeCount * (maxM0 + 1) * Integer.BYTES);
+            this.upperLevels = map(reader, IndexFileWriter.SECTION_UPPER_LEVELS, (maxM + 1) * Integer.BYTES, -1L);
+            this.vectors = map(reader, IndexFileWriter.SECTION_VECTORS, dimensions * Float.BYTES, (long) nodeCount * dimensions * Float.BYTES);
+            this.itemRecords = map(reader, IndexFileWriter.SECTION_ITEM_RECORDS, 1, -1L);
+            if (itemSegmentSize <= 0) {
+                throw new IOException("索引文件中每条数据点记录的节点数 " + itemSegmentSize + " 不正确，文件可能已损坏");
+            }
+            this.itemOffsets = map(reader, IndexFileWriter.SECTION_ITEM_OFFSETS, IndexFileWriter.ITEM_OFFSET_ENTRY_BYTES,
+                    (nodeCount + itemSegmentSize - 1L) / itemSegmentSize * IndexFileWriter.ITEM_OFFSET_ENTRY_BYTES);
+
+            // 标识符段和哈希表的开头各有一个int
+            long[] idsBounds = bounds(reader, IndexFileWriter.SECTION_IDS);
+            this.size = new MappedSection(channel, idsBounds[0], Integer.BYTES, Integer.BYTES).getInt(0);
+            long[] hashBounds = bounds(reader, IndexFileWriter.SECTION_ID_HASH);
+            MappedSection hashHeader = new MappedSection(channel, hashBounds[0], Integer.BYTES, Integer.BYTES);
+            this.idHashSlots = hashHeader.getInt(0);
+            if (idHashSlots <= 0 || Integer.bitCount(idHashSlots) != 1
+                    || hashBounds[1] != Integer.BYTES + (long) idHashSlots * Integer.BYTES * 2) {
+                throw new IOException("索引文件的标识符哈希段已损坏");
+            }
+            this.idHash = new MappedSection(channel, hashBounds[0] + Integer.BYTES, hashBounds[1] - Integer.BYTES, Integer.BYTES * 2);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        this.searchContexts = ThreadLocal.withInitial(SearchContext::new);
+    }
+
+    /**
+     * 打开并映射用 {@link HnswIndex#save(Path)} 保存的索引文件 使用当前线程的上下文类加载器
+     *
+     * @param path      文件路径
+     * @param <TId>     id 类型
+     * @param <TItem>   item 类型
+     * @return 只读索引 不再使用时需要关闭
+     * @throws IOException 不是二进制索引文件或文件已损坏
+     */
+    public static <TId, TItem extends Item<TId, float[]>> MappedHnswIndex<TId, TItem> open(Path path) throws IOException {
+        return open(path, Thread.currentThread().getContextClassLoader());
+    }
+
+    /**
+     * 打开并映射用 {@link HnswIndex#save(Path)} 保存的索引文件
+     *
+     * @param path        文件路径
+     * @param classLoader 类加载器
+     * @param <TId>       id 类型
+     * @param <TItem>     item 类型
+     * @return 只读索引 不再使用时需要关闭
+     * @throws IOException 不是二进制索引文件或文件已损坏
+     */
+    public static <TId, TItem extends Item<TId, float[]>> MappedHnswIndex<TId, TItem> open(Path path, ClassLoader classLoader)
+            throws IOException {
+        return new MappedHnswIndex<>(path, classLoader);
+    }
+
+    /**
+     * 映射一段
+     *
+     * @param reader         读取器 只用来取得段的位置
+     * @param section        段的编号
+     * @param recordBytes    定长记录的字节数
+     * @param expectedLength 期望的字节数 为-1时不检查
+     * @return 映射的段
+     * @throws IOException 段不存在或长度不符
+     */
+    private MappedSection map(IndexFileReader reader, int section, int recordBytes, long expectedLength) throws IOException {
+        long[] sectionBounds = bounds(reader, section);
+        if (expectedLength >= 0 && sectionBounds[1] != expectedLength) {
+            throw new IOException("索引文件第 " + section + " 段的长度为 " + sectionBounds[1] + "，应为 " + expectedLength + "，文件可能已损坏");
+        }
+        return new MappedSection(channel, sectionBounds[0], sectionBounds[1], recordBytes);
+    }
+
+    private static long[] bounds(IndexFileReader reader, int section) throws IOException {
+        long[] sectionBounds = reader.sectionBounds(section);
+        if (sectionBounds == null) {
+            throw new IOException("索引文件中缺少第 " + section + " 段");
+        }
+        return sectionBounds;
+    }
+
+    /**
+     * 核对整个文件所有段的校验和 需要顺序读取整个文件
+     *
+     * @throws IOException 校验和不一致
+     */
+    public void verify() throws IOException {
+        try (FileChannel verifyChannel = FileChannel.open(path, StandardOpenOption.READ)) {
+            new IndexFileReader(verifyChannel).verifyRemaining();
+        }
+    }
+
+    /**
+     * 只读索引不支持添加
+     *
+     * @param item item
+     * @return 不会返回
+     */
+    @Override
+    public boolean add(TItem item) {
+        throw new UnsupportedOperationException("内存映射的索引是只读的");
+    }
+
+    /**
+     * 只读索引不支持删除
+     *
+     * @param id      item的id
+     * @param version item的版本
+     * @return 不会返回
+     */
+    @Override
+    public boolean remove(TId id, long version) {
+        throw new UnsupportedOperationException("内存映射的索引是只读的");
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 通过标识符哈希表查找item 哈希值相同时再反序列化item比较标识符
+     *
+     * @param id 标识符
+     * @return item
+     */
+    @Override
+    public Optional<TItem> get(TId id) {
+        int hash = IndexFileWriter.idHash(id);
+        for (int slot = hash & (idHashSlots - 1); ; slot = (slot + 1) & (idHashSlots - 1)) {
+            long position = (long) slot * Integer.BYTES * 2;
+            int nodeId = idHash.getInt(position + Integer.BYTES);
+            if (nodeId == -1) {
+                return Optional.empty();
+            }
+            if (idHash.getInt(position) == hash) {
+                TItem item = item(nodeId);
+                if (id.equals(item.id())) {
+                    return Optional.of(item);
+                }
+            }
+        }
+    }
+
+    /**
+     * 获取所有未删除的item 每次调用都会重新反序列化
+     *
+     * @return 所有的item
+     */
+    @Override
+    public Collection<TItem> items() {
+        List<TItem> results = new ArrayList<>(size);
+        for (int nodeId = 0; nodeId < nodeCount; nodeId++) {
+            if (maxLevel(nodeId) >= 0 && !deleted(nodeId)) {
+                results.add(item(nodeId));
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public List<SearchResultBO<TItem, Float>> findNearest(float[] vector, int k) {
+        return searchNearest(vector, k, ef, null);
+    }
+
+    /**
+     * 查找距离给定向量最近的、满足过滤条件的k个item 过滤条件只对进入候选集的节点求值，此时才反序列化item；
+     * 满足条件的节点很稀疏、扩展次数达到上限时改为直接扫描所有节点
+     *
+     * @param vector 向量
+     * @param k      数目
+     * @param filter 过滤条件
+     * @return 搜索结果列表
+     */
+    @Override
+    public List<SearchResultBO<TItem, Float>> findNearest(float[] vector, int k, Predicate<TItem> filter) {
+        return searchNearest(vector, k, ef, nodeId -> filter.test(item(nodeId)));
+    }
+
+    /**
+     * 查找与给定向量的距离不超过radius的item 与 {@link HnswIndex#findWithinDistance} 一样只搜索一次，
+     * 以ef为宽度扩展之后，只要最近的待扩展节点仍在半径内且结果未满limit个就在同一个候选集上继续扩展
+     *
+     * @param vector 向量
+     * @param radius 距离的上限
+     * @param limit  最多返回的数目
+     * @return 搜索结果列表 按距离从近到远排列
+     */
+    @Override
+    public List<SearchResultBO<TItem, Float>> findWithinDistance(float[] vector, Float radius, int limit) {
+        if (limit <= 0 || entryPointNodeId == -1) {
+            return Collections.emptyList();
+        }
+        SearchContext context = searchContexts.get();
+        float maxDistance = radius;
+
+        int start = greedySearch(context, vector);
+        VisitedSet visitedSet = context.begin((long) ef * maxM0 * SPARSE_VISITED_SET_RATIO < nodeCount);
+        IntFloatHeap topCandidates = context.topCandidates;
+        IntFloatHeap withinRadius = context.rangeResults;
+        IntFloatHeap candidateSet = context.candidateSet;
+        float[] scratch = context.vectorScratch;
+        int[] neighbours = context.neighbourScratch;
+
+        float distance = distanceType.floatDistance(vector, vector(start, scratch));
+        candidateSet.push(start, distance);
+        visitedSet.add(start);
+        if (!deleted(start)) {
+            offerWithinDistance(topCandidates, withinRadius, start, distance, maxDistance, limit);
+        }
+
+        while (!candidateSet.isEmpty()) {
+            if (!withinSearchBound(topCandidates, withinRadius, candidateSet.peekDistance(), maxDistance, limit)) {
+                break;
+            }
+
+            int connectionCount = connections(candidateSet.pop(), 0, neighbours);
+            for (int i = 0; i < connectionCount; i++) {
+                int candidateId = neighbours[i];
+                if (visitedSet.contains(candidateId)) {
+                    continue;
+                }
+                visitedSet.add(candidateId);
+
+                float candidateDistance = distanceType.floatDistance(vector, vector(candidateId, scratch));
+                if (withinSearchBound(topCandidates, withinRadius, candidateDistance, maxDistance, limit)) {
+                    candidateSet.push(candidateId, candidateDistance);
+                    if (!deleted(candidateId)) {
+                        offerWithinDistance(topCandidates, withinRadius, candidateId, candidateDistance, maxDistance, limit);
+                    }
+                }
+            }
+        }
+
+        List<SearchResultBO<TItem, Float>> results = new ArrayList<>(withinRadius.size());
+        while (!withinRadius.isEmpty()) {
+            float resultDistance = withinRadius.peekDistance();
+            results.add(SearchResultBO.create(item(withinRadius.pop()), resultDistance));
+        }
+        Collections.reverse(results);
+        return results;
+    }
+
+    /**
+     * 范围搜索中某个距离的节点是否还需要扩展：导航用的最近节点未满或者它比其中最远的更近，
+     * 或者它在半径内且半径内的结果未满limit个或者它比其中最远的更近
+     */
+    private boolean withinSearchBound(IntFloatHeap topCandidates, IntFloatHeap withinRadius, float distance, float radius, int limit) {
+        if (topCandidates.size() < ef + withinRadius.size() || distance <= topCandidates.peekDistance()) {
+            return true;
+        }
+        return distance <= radius && (withinRadius.size() < limit || distance <= withinRadius.peekDistance());
+    }
+
+    /**
+     * 把范围搜索中未删除的节点加入导航用的最近节点，在半径内时同时加入结果
+     * 导航用的最近节点比已找到的结果多ef个，使搜索始终越过半径边界ef个节点的宽度，与加倍搜索宽度时的效果相当
+     */
+    private void offerWithinDistance(IntFloatHeap topCandidates, IntFloatHeap withinRadius,
+                                     int nodeId, float distance, float radius, int limit) {
+        if (distance <= radius) {
+            withinRadius.push(nodeId, distance);
+            if (withinRadius.size() > limit) {
+                withinRadius.pop();
+            }
+        }
+        topCandidates.push(nodeId, distance);
+        if (topCandidates.size() > ef + withinRadius.size()) {
+            topCandidates.pop();
+        }
+    }
+
+    /**
+     * 返回搜索期间，最近邻节点的动态列表的大小 初始值为保存时的ef
+     *
+     * @return 最近邻节点的动态列表的大小
+     */
+    public int getEf() {
+        return ef;
+    }
+
+    /**
+     * 设置搜索期间，最近邻节点的动态列表的大小 只影响本实例，不修改文件
+     *
+     * @param ef 最近邻节点的动态列表的大小
+     */
+    public void setEf(int ef) {
+        this.ef = ef;
+    }
+
+    /**
+     * 向量的维度
+     *
+     * @return 维度
+     */
+    public int getDimensions() {
+        return dimensions;
+    }
+
+    /**
+     * 把映射的文件原样复制到输出流中 得到的仍是二进制格式
+     *
+     * @param out 输出流
+     * @throws IOException IO异常
+     */
+    @Override
+    public void save(OutputStream out) throws IOException {
+        try (FileChannel source = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = source.size();
+            long position = 0;
+            while (position < size) {
+                position += source.transferTo(position, size - position, Channels.newChannel(out));
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * 关闭文件 映射的内存在缓冲区被回收后才会释放，关闭后不能再搜索
+     *
+     * @throws IOException IO异常
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * 最近邻搜索的实现 与 HnswIndex 原始 float 距离的路径相同，只是向量、邻接表和删除标记都从映射的内存中读取
+     *
+     * @param destination 向量
+     * @param k           数目
+     * @param searchEf    动态列表的大小
+     * @param nodeFilter  按内部节点ID的过滤条件 为null时不过滤
+     * @return 搜索结果列表
+     */
+    private List<SearchResultBO<TItem, Float>> searchNearest(float[] destination, int k, int searchEf, IntPredicate nodeFilter) {
+        if (entryPointNodeId == -1) {
+            return Collections.emptyList();
+        }
+        SearchContext context = searchContexts.get();
+
+        int start = greedySearch(context, destination);
+        IntFloatHeap topCandidates = searchBaseLayer(context, start, destination, Math.max(searchEf, k), nodeFilter);
+
+        // 满足条件的节点太稀疏，图搜索达到扩展上限仍没能凑满候选集时直接扫描
+        if (context.filterExpansionLimited) {
+            topCandidates = scanMatching(context, destination, k, nodeFilter);
+        }
+
+        while (topCandidates.size() > k) {
+            topCandidates.pop();
+        }
+
+        // 堆顶为距离最大的节点，依次取出后再反转
+        List<SearchResultBO<TItem, Float>> results = new ArrayList<>(topCandidates.size());
+        while (!topCandidates.isEmpty()) {
+            float distance = topCandidates.peekDistance();
+            results.add(SearchResultBO.create(item(topCandidates.pop()), distance));
+        }
+        Collections.reverse(results);
+        return results;
+    }
+
+    /**
+     * 从入口点所在的最高层开始向下贪心搜索，返回第0层搜索的起点
+     *
+     * @param context     当前线程的搜索上下文
+     * @param destination 目标向量
+     * @return 起点的节点ID
+     */
+    private int greedySearch(SearchContext context, float[] destination) {
+        float[] scratch = context.vectorScratch;
+        int[] neighbours = context.neighbourScratch;
+
+        int curObj = entryPointNodeId;
+        float curDist = distanceType.floatDistance(destination, vector(curObj, scratch));
+
+        for (int activeLevel = maxLevel(curObj); activeLevel > 0; activeLevel--) {
+            boolean changed = true;
+            while (changed) {
+                changed = false;
+                int connectionCount = connections(curObj, activeLevel, neighbours);
+                for (int i = 0; i < connectionCount; i++) {
+                    float candidateDist = distanceType.floatDistance(destination, vector(neighbours[i], scratch));
+                    if (candidateDist < curDist) {
+                        curObj = neighbours[i];
+                        curDist = candidateDist;
+                        changed = true;
+                    }
+                }
+            }
+        }
+        return curObj;
+    }
+
+    /**
+     * 搜索第0层 已删除的节点和不满足过滤条件的节点只用于导航，不会进入最近邻候选集
+     *
+     * @param context     当前线程的搜索上下文
+     * @param entryPoint  起点的节点ID
+     * @param destination 目标向量
+     * @param k           数目
+     * @param nodeFilter  按内部节点ID的过滤条件 为null时不过滤
+     * @return 最近的候选对象的最大堆，堆顶为距离最大的节点 属于当前线程的搜索上下文
+     */
+    private IntFloatHeap searchBaseLayer(SearchContext context, int entryPoint, float[] destination, int k, IntPredicate nodeFilter) {
+        VisitedSet visitedSet = context.begin((long) k * maxM0 * SPARSE_VISITED_SET_RATIO < nodeCount);
+        IntFloatHeap topCandidates = context.topCandidates;
+        IntFloatHeap candidateSet = context.candidateSet;
+        float[] scratch = context.vectorScratch;
+        int[] neighbours = context.neighbourScratch;
+
+        float lowerBound;
+        if (!deleted(entryPoint) && (nodeFilter == null || nodeFilter.test(entryPoint))) {
+            float distance = distanceType.floatDistance(destination, vector(entryPoint, scratch));
+            topCandidates.push(entryPoint, distance);
+            lowerBound = distance;
+            candidateSet.push(entryPoint, distance);
+        } else {
+            lowerBound = Float.POSITIVE_INFINITY;
+            candidateSet.push(entryPoint, lowerBound);
+        }
+        visitedSet.add(entryPoint);
+        int filteredExpansions = 0;
+
+        while (!candidateSet.isEmpty()) {
+            if (candidateSet.peekDistance() > lowerBound && (nodeFilter == null || topCandidates.size() >= k)) {
+                break;
+            }
+
+            // 有过滤条件且扩展次数达到上限时仍未凑满，停止搜索并交由调用方直接扫描满足条件的节点
+            if (nodeFilter != null && topCandidates.size() < k && ++filteredExpansions > (long) k * FILTERED_EXPANSION_FACTOR) {
+                context.filterExpansionLimited = true;
+                break;
+            }
+
+            int connectionCount = connections(candidateSet.pop(), 0, neighbours);
+            for (int i = 0; i < connectionCount; i++) {
+                int candidateId = neighbours[i];
+                if (visitedSet.contains(candidateId)) {
+                    continue;
+                }
+                visitedSet.add(candidateId);
+
+                float candidateDistance = distanceType.floatDistance(destination, vector(candidateId, scratch));
+                if (topCandidates.size() < k || lowerBound > candidateDistance) {
+                    candidateSet.push(candidateId, candidateDistance);
+
+                    if (!deleted(candidateId) && (nodeFilter == null || nodeFilter.test(candidateId))) {
+                        topCandidates.push(candidateId, candidateDistance);
+                    }
+                    if (topCandidates.size() > k) {
+                        topCandidates.pop();
+                    }
+                    if (!topCandidates.isEmpty()) {
+                        lowerBound = topCandidates.peekDistance();
+                    }
+                }
+            }
+        }
+        return topCandidates;
+    }
+
+    /**
+     * 直接计算所有满足过滤条件的节点的距离 带过滤条件的图搜索达到扩展上限时使用
+     * 过滤条件需要反序列化item，因此先算距离，只有能进入最近的k个的节点才对过滤条件求值
+     *
+     * @param context     当前线程的搜索上下文
+     * @param destination 目标向量
+     * @param k           数目
+     * @param nodeFilter  按内部节点ID的过滤条件
+     * @return 最近的k个节点的最大堆，堆顶为距离最大的节点 属于当前线程的搜索上下文
+     */
+    private IntFloatHeap scanMatching(SearchContext context, float[] destination, int k, IntPredicate nodeFilter) {
+        IntFloatHeap topCandidates = context.topCandidates;
+        topCandidates.clear();
+        float[] scratch = context.vectorScratch;
+        for (int nodeId = 0; nodeId < nodeCount; nodeId++) {
+            if (maxLevel(nodeId) < 0 || deleted(nodeId)) {
+                continue;
+            }
+            float distance = distanceType.floatDistance(destination, vector(nodeId, scratch));
+            if ((topCandidates.size() < k || distance < topCandidates.peekDistance()) && nodeFilter.test(nodeId)) {
+                topCandidates.push(nodeId, distance);
+                if (topCandidates.size() > k) {
+                    topCandidates.pop();
+                }
+            }
+        }
+        return topCandidates;
+    }
+
+    /**
+     * 节点的最大层级 空节点为-1
+     */
+    private int maxLevel(int nodeId) {
+        return nodes.getInt((long) nodeId * Integer.BYTES * 2);
+    }
+
+    /**
+     * 节点是否已被删除
+     */
+    private boolean deleted(int nodeId) {
+        return (tombstones.getLong((long) (nodeId >>> 6) * Long.BYTES) & (1L << nodeId)) != 0;
+    }
+
+    /**
+     * 把节点的向量复制到scratch中
+     */
+    private float[] vector(int nodeId, float[] scratch) {
+        return vectors.getFloats((long) nodeId * dimensions * Float.BYTES, scratch, dimensions);
+    }
+
+    /**
+     * 把节点在某一层的邻居复制到neighbours中
+     *
+     * @return 邻居数
+     */
+    private int connections(int nodeId, int level, int[] neighbours) {
+        MappedSection section;
+        long position;
+        int capacity;
+        if (level == 0) {
+            section = level0;
+            capacity = maxM0;
+            position = (long) nodeId * (maxM0 + 1) * Integer.BYTES;
+        } else {
+            int upperSlot = nodes.getInt((long) nodeId * Integer.BYTES * 2 + Integer.BYTES);
+            section = upperLevels;
+            capacity = maxM;
+            position = (long) (upperSlot + level - 1) * (maxM + 1) * Integer.BYTES;
+        }
+        int count = section.getInt(position);
+        if (count < 0 || count > capacity) {
+            throw new IllegalStateException("索引文件中的邻居数 " + count + " 超出了上限 " + capacity + "，文件可能已损坏");
+        }
+        section.getInts(position + Integer.BYTES, neighbours, count);
+        return count;
+    }
+
+    /**
+     * 获取节点的item 每个线程按记录编号直接映射缓存最近解码的记录，过滤条件和查找反复访问同一记录时不再重复反序列化
+     */
+    private TItem item(int nodeId) {
+        SearchContext context = searchContexts.get();
+        int segment = nodeId / itemSegmentSize;
+        int itemIndex = -1;
+        for (int i = segment * itemSegmentSize; i <= nodeId; i++) {
+            if (maxLevel(i) >= 0) {
+                itemIndex++;
+            }
+        }
+        int cacheSlot = segment & (ITEM_CACHE_SEGMENTS - 1);
+        if (context.cachedSegments[cacheSlot] != segment) {
+            context.cachedItems.set(cacheSlot, readSegment(segment, nodeId));
+            context.cachedSegments[cacheSlot] = segment;
+        }
+        return context.cachedItems.get(cacheSlot).get(itemIndex);
+    }
+
+    /**
+     * 反序列化一条记录中的全部item
+     *
+     * @param segment 记录的编号
+     * @param nodeId  要读取的节点ID 用于异常信息
+     * @return 记录中的item 按节点ID排列
+     */
+    private List<TItem> readSegment(int segment, int nodeId) {
+        int itemCount = 0;
+        int end = Math.min(nodeCount, (segment + 1) * itemSegmentSize);
+        for (int i = segment * itemSegmentSize; i < end; i++) {
+            if (maxLevel(i) >= 0) {
+                itemCount++;
+            }
+        }
+        long entry = (long) segment * IndexFileWriter.ITEM_OFFSET_ENTRY_BYTES;
+        long position = itemOffsets.getLong(entry);
+        int length = itemRecords.getInt(position);
+        byte[] record = new byte[length];
+        itemRecords.get(position + Integer.BYTES, record, 0, length);
+        Checksum checksum = Crc32c.newChecksum();
+        checksum.update(record, 0, length);
+        if ((int) checksum.getValue() != itemOffsets.getInt(entry + Long.BYTES)) {
+            throw new IllegalStateException("索引文件中第 " + segment + " 条数据点记录的校验和不一致，文件可能已损坏");
+        }
+        try {
+            return HnswIndex.readItemRecord(record, 0, length, itemCount, itemSerializer, classLoader);
+        } catch (IOException | ClassNotFoundException e) {
+            throw new UncategorizedIndexException("读取节点 " + nodeId + " 的item失败", e);
+        }
+    }
+
+    /**
+     * 映射的索引不能序列化 需要复制时用 {@link #save(OutputStream)}
+     *
+     * @param objectOutputStream 输出流
+     * @throws IOException 总是抛出
+     */
+    private void writeObject(ObjectOutputStream objectOutputStream) throws IOException {
+        throw new NotSerializableException(MappedHnswIndex.class.getName());
+    }
+
+    /**
+     * 每个线程独享的搜索上下文 在同一线程的多次搜索之间重复使用
+     */
+    private class SearchContext {
+
+        /**
+         * 已访问集合按需增长 从较小的容量开始，只搜索少量节点的线程不必按节点数分配
+         */
+        private final EpochVisitedSet denseVisitedSet = new EpochVisitedSet(INITIAL_HEAP_CAPACITY);
+
+        private final IntHashVisitedSet sparseVisitedSet = new IntHashVisitedSet(INITIAL_HEAP_CAPACITY);
+
+        /**
+         * 最近邻候选集 堆顶为距离最大的节点
+         */
+        final IntFloatHeap topCandidates = IntFloatHeap.maxHeap(INITIAL_HEAP_CAPACITY);
+
+        /**
+         * 待扩展的候选集 堆顶为距离最小的节点
+         */
+        final IntFloatHeap candidateSet = IntFloatHeap.minHeap(INITIAL_HEAP_CAPACITY);
+
+        /**
+         * 范围搜索中半径内的结果 堆顶为距离最大的节点
+         */
+        final IntFloatHeap rangeResults = IntFloatHeap.maxHeap(INITIAL_HEAP_CAPACITY);
+
+        /**
+         * 第0层搜索是否因为带过滤条件的扩展次数达到上限而停止
+         */
+        boolean filterExpansionLimited;
+
+        /**
+         * 复制向量用的临时数组
+         */
+        final float[] vectorScratch = new float[dimensions];
+
+        /**
+         * 复制邻居用的临时数组
+         */
+        final int[] neighbourScratch = new int[Math.max(maxM0, maxM)];
+
+        /**
+         * 每个缓存槽中记录的编号 -1表示空
+         */
+        final int[] cachedSegments = new int[ITEM_CACHE_SEGMENTS];
+
+        /**
+         * 每个缓存槽中解码后的item
+         */
+        final List<List<TItem>> cachedItems = new ArrayList<>(Collections.nCopies(ITEM_CACHE_SEGMENTS, null));
+
+        SearchContext() {
+            Arrays.fill(cachedSegments, -1);
+        }
+
+        /**
+         * 开始一次搜索 清空堆并返回清空后的已访问集合
+         *
+         * @param sparse 是否使用稀疏的已访问集合
+         * @return 已访问集合
+         */
+        VisitedSet begin(boolean sparse) {
+            topCandidates.clear();
+            candidateSet.clear();
+            rangeResults.clear();
+            filterExpansionLimited = false;
+            VisitedSet visitedSet = sparse ? sparseVisitedSet : denseVisitedSet;
+            visitedSet.clear();
+            return visitedSet;
+        }
+    }
+}
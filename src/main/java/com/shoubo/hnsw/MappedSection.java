@@ -0,0 +1,149 @@
+package com.shoubo.hnsw;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Author: shoubo
+ * Date: 2026/10/18
+ * Desc: 以只读方式内存映射的索引文件中的一段 格式见 {@link IndexFileWriter}
+ * 单个 MappedByteBuffer 最多2GB，段按每块最多1GB映射成若干块，块的大小取定长记录的整数倍，因此一条记录不会跨块；
+ * 只使用绝对位置的读取方法，不修改缓冲区的position，多个线程可以同时读取
+ */
+class MappedSection {
+
+    /**
+     * 每块映射的最大字节数
+     */
+    private static final long MAX_REGION_BYTES = 1L << 30;
+
+    /**
+     * 映射的内存块 小端序
+     */
+    private final ByteBuffer[] regions;
+
+    /**
+     * 每块的 float 视图 记录的字节数是4的倍数时才有，用于读取向量
+     */
+    private final FloatBuffer[] floatRegions;
+
+    /**
+     * 每块的 int 视图 记录的字节数是4的倍数时才有，用于读取邻接表
+     */
+    private final IntBuffer[] intRegions;
+
+    /**
+     * 除最后一块以外每块的字节数
+     */
+    private final long regionBytes;
+
+    /**
+     * 映射的总字节数
+     */
+    private final long length;
+
+    /**
+     * 映射文件中的一段
+     *
+     * @param channel     文件通道
+     * @param offset      起始偏移量
+     * @param length      字节数
+     * @param recordBytes 定长记录的字节数 块的大小取它的整数倍
+     * @throws IOException IO异常
+     */
+    MappedSection(FileChannel channel, long offset, long length, int recordBytes) throws IOException {
+        this.length = length;
+        this.regionBytes = Math.max(1, MAX_REGION_BYTES / recordBytes) * recordBytes;
+        int regionCount = (int) ((length + regionBytes - 1) / regionBytes);
+        this.regions = new ByteBuffer[regionCount];
+        boolean wordAligned = recordBytes % Integer.BYTES == 0;
+        this.floatRegions = wordAligned ? new FloatBuffer[regionCount] : null;
+        this.intRegions = wordAligned ? new IntBuffer[regionCount] : null;
+        for (int i = 0; i < regionCount; i++) {
+            long start = i * regionBytes;
+            regions[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset + start, Math.min(regionBytes, length - start))
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            if (wordAligned) {
+                floatRegions[i] = regions[i].asFloatBuffer();
+                intRegions[i] = regions[i].asIntBuffer();
+            }
+        }
+    }
+
+    /**
+     * 映射的总字节数
+     *
+     * @return 字节数
+     */
+    long length() {
+        return length;
+    }
+
+    int getInt(long position) {
+        return regions[(int) (position / regionBytes)].getInt((int) (position % regionBytes));
+    }
+
+    long getLong(long position) {
+        return regions[(int) (position / regionBytes)].getLong((int) (position % regionBytes));
+    }
+
+    /**
+     * 读取连续的count个float到target中 它们必须属于同一条记录，位置是4的倍数
+     * 用绝对下标逐个读取，不创建缓冲区的副本
+     *
+     * @param position 起始位置
+     * @param target   目标数组
+     * @param count    个数
+     * @return target
+     */
+    float[] getFloats(long position, float[] target, int count) {
+        FloatBuffer region = floatRegions[(int) (position / regionBytes)];
+        int index = (int) (position % regionBytes) / Float.BYTES;
+        for (int i = 0; i < count; i++) {
+            target[i] = region.get(index + i);
+        }
+        return target;
+    }
+
+    /**
+     * 读取连续的count个int到target中 它们必须属于同一条记录，位置是4的倍数 用绝对下标逐个读取，不创建缓冲区的副本
+     *
+     * @param position 起始位置
+     * @param target   目标数组
+     * @param count    个数
+     * @return target
+     */
+    int[] getInts(long position, int[] target, int count) {
+        IntBuffer region = intRegions[(int) (position / regionBytes)];
+        int index = (int) (position % regionBytes) / Integer.BYTES;
+        for (int i = 0; i < count; i++) {
+            target[i] = region.get(index + i);
+        }
+        return target;
+    }
+
+    /**
+     * 读取连续的若干字节 可以跨块
+     *
+     * @param position 起始位置
+     * @param target   目标数组
+     * @param offset   目标数组中的起始下标
+     * @param count    字节数
+     */
+    void get(long position, byte[] target, int offset, int count) {
+        while (count > 0) {
+            ByteBuffer region = regions[(int) (position / regionBytes)].duplicate();
+            int index = (int) (position % regionBytes);
+            int chunk = Math.min(count, region.limit() - index);
+            region.position(index);
+            region.get(target, offset, chunk);
+            position += chunk;
+            offset += chunk;
+            count -= chunk;
+        }
+    }
+}
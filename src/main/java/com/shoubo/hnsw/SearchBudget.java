@@ -0,0 +1,94 @@
+package com.shoubo.hnsw;
+
+import com.shoubo.model.SearchParams;
+
+/**
+ * Author: shoubo
+ * Date: 2026/10/18
+ * Desc: 单次第0层搜索的预算 记录已经计算距离的次数和连续没有改进的扩展次数，
+ * 每次从候选集中取出节点扩展之前检查一次，任意一项用完时搜索提前结束
+ * 只属于一次搜索，不需要线程安全
+ */
+class SearchBudget {
+
+    /**
+     * 最多计算距离的次数
+     */
+    private final int maxDistanceComputations;
+
+    /**
+     * 截止时间 System.nanoTime()
+     */
+    private final long deadline;
+
+    /**
+     * 是否有时间限制
+     */
+    private final boolean timed;
+
+    /**
+     * 耐心值
+     */
+    private final int patience;
+
+    /**
+     * 已经计算距离的次数
+     */
+    private int distanceComputations;
+
+    /**
+     * 连续没有改变最近邻候选集的扩展次数
+     */
+    private int expansionsWithoutImprovement;
+
+    /**
+     * 是否提前结束
+     */
+    private boolean terminatedEarly;
+
+    /**
+     * 构造方法 时间预算从此刻开始计算
+     *
+     * @param params 搜索参数
+     */
+    SearchBudget(SearchParams params) {
+        this.maxDistanceComputations = params.getMaxDistanceComputations();
+        this.patience = params.getPatience();
+        this.timed = params.getTimeBudgetNanos() != Long.MAX_VALUE;
+        this.deadline = timed ? System.nanoTime() + params.getTimeBudgetNanos() : 0;
+    }
+
+    /**
+     * 记录扩展一个节点时计算距离的次数
+     *
+     * @param count    计算距离的次数
+     * @param improved 最近邻候选集是否发生了变化
+     */
+    void expanded(int count, boolean improved) {
+        distanceComputations += count;
+        expansionsWithoutImprovement = improved ? 0 : expansionsWithoutImprovement + 1;
+    }
+
+    /**
+     * 检查预算是否用完 用完时标记为提前结束
+     *
+     * @return 是否应该结束搜索
+     */
+    boolean exhausted() {
+        if (distanceComputations >= maxDistanceComputations
+                || expansionsWithoutImprovement >= patience
+                || (timed && System.nanoTime() - deadline >= 0)) {
+            terminatedEarly = true;
+        }
+        return terminatedEarly;
+    }
+
+    /**
+     * 是否提前结束
+     *
+     * @return 是否提前结束
+     */
+    boolean isTerminatedEarly() {
+        return terminatedEarly;
+    }
+}
@@ -0,0 +1,125 @@
+package com.shoubo.hnsw;
+
+import com.shoubo.model.bo.SearchStatsBO;
+import com.shoubo.utils.Log2Histogram;
+
+/**
+ * Author: shoubo
+ * Date: 2026/10/18
+ * Desc: 索引上所有最近邻搜索的统计汇总 每项指标一个按2的幂分桶的直方图
+ * 通过 {@link HnswIndex#setSearchStatisticsEnabled(boolean)} 开启，关闭时搜索不做任何记录
+ */
+public class SearchStatistics {
+
+    /**
+     * 计算距离的次数
+     */
+    private final Log2Histogram distanceComputations = new Log2Histogram();
+
+    /**
+     * 扩展的节点数
+     */
+    private final Log2Histogram nodesExpanded = new Log2Histogram();
+
+    /**
+     * 贪心搜索向下经过的层数
+     */
+    private final Log2Histogram levelsDescended = new Log2Histogram();
+
+    /**
+     * 无锁读取邻居列表时遇到并发写入而重读的次数
+     */
+    private final Log2Histogram readRetries = new Log2Histogram();
+
+    /**
+     * 搜索耗时 纳秒
+     */
+    private final Log2Histogram elapsedNanos = new Log2Histogram();
+
+    /**
+     * 记录一次搜索
+     *
+     * @param stats 单次搜索的统计
+     */
+    void record(SearchStatsBO stats) {
+        distanceComputations.record(stats.getDistanceComputations());
+        nodesExpanded.record(stats.getNodesExpanded());
+        levelsDescended.record(stats.getLevelsDescended());
+        readRetries.record(stats.getReadRetries());
+        elapsedNanos.record(stats.getElapsedNanos());
+    }
+
+    /**
+     * 已记录的搜索次数
+     *
+     * @return 搜索次数
+     */
+    public long queries() {
+        return elapsedNanos.count();
+    }
+
+    /**
+     * 计算距离的次数的直方图
+     *
+     * @return 直方图
+     */
+    public Log2Histogram getDistanceComputations() {
+        return distanceComputations;
+    }
+
+    /**
+     * 扩展的节点数的直方图
+     *
+     * @return 直方图
+     */
+    public Log2Histogram getNodesExpanded() {
+        return nodesExpanded;
+    }
+
+    /**
+     * 贪心搜索向下经过的层数的直方图
+     *
+     * @return 直方图
+     */
+    public Log2Histogram getLevelsDescended() {
+        return levelsDescended;
+    }
+
+    /**
+     * 读取邻居列表时重读的次数的直方图
+     *
+     * @return 直方图
+     */
+    public Log2Histogram getReadRetries() {
+        return readRetries;
+    }
+
+    /**
+     * 搜索耗时的直方图 纳秒
+     *
+     * @return 直方图
+     */
+    public Log2Histogram getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * 清空所有直方图
+     */
+    public void reset() {
+        distanceComputations.reset();
+        nodesExpanded.reset();
+        levelsDescended.reset();
+        readRetries.reset();
+        elapsedNanos.reset();
+    }
+
+    @Override
+    public String toString() {
+        return "SearchStatistics(distanceComputations=" + distanceComputations
+                + ", nodesExpanded=" + nodesExpanded
+                + ", levelsDescended=" + levelsDescended
+                + ", readRetries=" + readRetries
+                + ", elapsedNanos=" + elapsedNanos + ")";
+    }
+}
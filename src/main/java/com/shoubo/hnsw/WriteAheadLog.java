@@ -0,0 +1,302 @@
+package com.shoubo.hnsw;
+
+import com.shoubo.utils.Crc32c;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.Checksum;
+
+/**
+ * Author: shoubo
+ * Date: 2026/10/18
+ * Desc: 只追加写入的预写日志文件 记录索引的添加和删除
+ * 文件开头是 magic(8字节) 和格式版本(int)，之后每条记录为 长度(int) CRC32C(int) 和内容，内容的第一个字节是记录类型；所有数值均为小端序
+ * <p>
+ * 写入的记录先进入操作系统的页缓存，进程崩溃不会丢失；{@link #sync(long)} 调用 FileChannel.force 落盘，
+ * 同时等待落盘的多个线程共用一次 force(组提交)。打开已有的日志时从头核对每条记录，
+ * 长度无效或超出文件末尾的记录、以及校验和不一致的最后一条记录视为崩溃时被打断的写入，从它开始截断：
+ * 断电后先持久化元数据的文件系统可能在最后一次落盘的记录之后留下任意内容的旧数据块，其中的记录都没有确认落盘过；
+ * 长度有效、校验和不一致且之后还有数据的记录说明文件已损坏，抛出异常，不会丢弃它后面已经确认的记录
+ */
+class WriteAheadLog implements Closeable {
+
+    /**
+     * 文件开头的 magic
+     */
+    static final byte[] MAGIC = {'M', 'Y', 'H', 'N', 'S', 'W', 'L', 0x01};
+
+    /**
+     * 当前的格式版本
+     */
+    static final int FORMAT_VERSION = 1;
+
+    /**
+     * 添加记录 内容为item序列化器写入的item
+     */
+    static final byte RECORD_ADD = 1;
+
+    /**
+     * 删除记录 内容为标识符序列化器写入的标识符和版本
+     */
+    static final byte RECORD_REMOVE = 2;
+
+    /**
+     * 撤销记录 内容为标识符序列化器写入的标识符，表示同一标识符的上一条记录在修改索引时抛出异常，没有生效
+     */
+    static final byte RECORD_ABORT = 3;
+
+    /**
+     * 文件头的字节数
+     */
+    private static final int HEADER_BYTES = MAGIC.length + Integer.BYTES;
+
+    /**
+     * 每条记录的长度和校验和占用的字节数
+     */
+    private static final int RECORD_HEADER_BYTES = Integer.BYTES * 2;
+
+    /**
+     * 单条记录内容的最大字节数 超过时视为损坏
+     */
+    private static final int MAX_RECORD_BYTES = 1 << 30;
+
+    private final FileChannel channel;
+
+    /**
+     * 落盘锁 同一时刻只有一个线程调用force，其余线程等它结束后再看是否已经覆盖自己的记录
+     */
+    private final Object syncLock = new Object();
+
+    /**
+     * 已写入的位置 即文件末尾
+     */
+    private volatile long position;
+
+    /**
+     * 已落盘的位置
+     */
+    private volatile long syncedPosition;
+
+    private boolean closed;
+
+    /**
+     * 日志中的记录的处理方法
+     */
+    interface RecordHandler {
+
+        /**
+         * 处理一条记录
+         *
+         * @param type    记录类型
+         * @param content 记录的内容 下标0是记录类型
+         * @throws IOException 记录无法解码
+         */
+        void accept(byte type, byte[] content) throws IOException;
+    }
+
+    private WriteAheadLog(FileChannel channel, long position) {
+        this.channel = channel;
+        this.position = position;
+        this.syncedPosition = position;
+    }
+
+    /**
+     * 创建新的日志文件 写入文件头并落盘
+     *
+     * @param path 路径 文件不能已经存在
+     * @return 日志
+     * @throws IOException IO异常
+     */
+    static WriteAheadLog create(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.put(MAGIC);
+            header.putInt(FORMAT_VERSION);
+            header.flip();
+            writeFully(channel, header, 0);
+            channel.force(true);
+            return new WriteAheadLog(channel, HEADER_BYTES);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 打开已有的日志文件 依次处理其中的每条记录，截断末尾没有写完的记录，之后的写入追加在最后一条完整的记录之后
+     *
+     * @param path    路径
+     * @param handler 记录的处理方法
+     * @return 日志
+     * @throws IOException 不是日志文件、版本不支持、中间的记录已损坏或记录无法处理
+     */
+    static WriteAheadLog open(Path path, RecordHandler handler) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long size = channel.size();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            if (size < HEADER_BYTES || !readFully(channel, header, 0)) {
+                throw new IOException("预写日志不完整: " + path);
+            }
+            byte[] magic = new byte[MAGIC.length];
+            header.get(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new IOException("不是预写日志文件: " + path);
+            }
+            int version = header.getInt();
+            if (version > FORMAT_VERSION) {
+                throw new IOException("不支持的预写日志版本: " + version + "，当前支持的最高版本为 " + FORMAT_VERSION);
+            }
+
+            long position = HEADER_BYTES;
+            ByteBuffer recordHeader = ByteBuffer.allocate(RECORD_HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            Checksum checksum = Crc32c.newChecksum();
+            while (true) {
+                recordHeader.clear();
+                if (!readFully(channel, recordHeader, position)) {
+                    break;
+                }
+                int length = recordHeader.getInt();
+                int expected = recordHeader.getInt();
+                long end = position + RECORD_HEADER_BYTES + length;
+                // 长度无效或超出文件末尾说明这里是崩溃时没有写完的记录，或者留下的补0、旧数据块
+                if (length <= 0 || length > MAX_RECORD_BYTES || end > size) {
+                    break;
+                }
+                ByteBuffer content = ByteBuffer.allocate(length);
+                if (!readFully(channel, content, position + RECORD_HEADER_BYTES)) {
+                    break;
+                }
+                checksum.reset();
+                checksum.update(content.array(), 0, length);
+                if ((int) checksum.getValue() != expected) {
+                    if (end == size) {
+                        break;
+                    }
+                    throw new IOException("预写日志 " + path + " 在偏移量 " + position + " 处的记录校验和不一致，文件已损坏");
+                }
+                handler.accept(content.array()[0], content.array());
+                position += RECORD_HEADER_BYTES + length;
+            }
+
+            // 崩溃时没有写完的记录和之后的旧数据只可能在末尾，截断后新的记录接着写
+            if (position < size) {
+                channel.truncate(position);
+                channel.force(true);
+            }
+            return new WriteAheadLog(channel, position);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 追加一条记录 只写入页缓存，需要落盘时调用 {@link #sync(long)}
+     *
+     * @param content 记录的内容 下标0是记录类型
+     * @return 写入后的位置 传给 {@link #sync(long)} 等待这条记录落盘
+     * @throws IOException IO异常
+     */
+    long append(byte[] content) throws IOException {
+        Checksum checksum = Crc32c.newChecksum();
+        checksum.update(content, 0, content.length);
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER_BYTES + content.length).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(content.length);
+        buffer.putInt((int) checksum.getValue());
+        buffer.put(content);
+        buffer.flip();
+
+        synchronized (this) {
+            if (closed) {
+                throw new IOException("预写日志已关闭");
+            }
+            writeFully(channel, buffer, position);
+            position += buffer.limit();
+            return position;
+        }
+    }
+
+    /**
+     * 等待写入到某个位置为止的记录落盘 已经被其他线程的force覆盖时直接返回
+     *
+     * @param upTo {@link #append(byte[])} 返回的位置
+     * @throws IOException IO异常
+     */
+    void sync(long upTo) throws IOException {
+        if (syncedPosition >= upTo) {
+            return;
+        }
+        synchronized (syncLock) {
+            if (syncedPosition >= upTo) {
+                return;
+            }
+            // 先取位置再force，force完成时这个位置之前的记录都已落盘，其间追加的记录也可能一起落盘
+            long end = position;
+            channel.force(false);
+            syncedPosition = end;
+        }
+    }
+
+    /**
+     * 把已写入的记录全部落盘
+     *
+     * @throws IOException IO异常
+     */
+    void sync() throws IOException {
+        sync(position);
+    }
+
+    /**
+     * 落盘并关闭 之后等待落盘的调用直接返回
+     *
+     * @throws IOException IO异常
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (syncLock) {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+            }
+            try {
+                channel.force(true);
+                syncedPosition = position;
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    /**
+     * 从某个位置读满缓冲区 读完后切换到读模式
+     *
+     * @return 文件剩余的字节不够时返回false
+     */
+    private static boolean readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int count = channel.read(buffer, position);
+            if (count < 0) {
+                return false;
+            }
+            position += count;
+        }
+        buffer.flip();
+        return true;
+    }
+}
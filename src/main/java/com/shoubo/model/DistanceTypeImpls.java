@@ -1,5 +1,7 @@
 package com.shoubo.model;
 
+import java.lang.reflect.Field;
+
 /**
  * Author: shoubo
  * Date: 2023/5/27
@@ -8,10 +10,37 @@ package com.shoubo.model;
 public enum DistanceTypeImpls {
     INSTANCE;
 
+    /**
+     * 基于 JDK Vector API 的实现类 只存在于多版本 jar 的 META-INF/versions/17 中
+     */
+    private static final String VECTORIZED_IMPLS_CLASS_NAME = "com.shoubo.model.VectorizedDistanceTypeImpls";
+
+    /**
+     * 优先使用 Vector API 的实现，不可用时(JDK 版本低于17、未 --add-modules jdk.incubator.vector 或不是从 jar 中加载)退回标量实现
+     *
+     * @param name     VectorizedDistanceTypeImpls 中同名字段的名称
+     * @param fallback 标量实现
+     * @param <T>      距离函数类型
+     * @return 选中的实现
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> T vectorizedOrDefault(String name, T fallback) {
+        try {
+            Field field = Class.forName(VECTORIZED_IMPLS_CLASS_NAME).getDeclaredField(name);
+            field.setAccessible(true);
+            return (T) field.get(null);
+        } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+            return fallback;
+        }
+    }
+
     /**
      * 计算两个稀疏向量之间的距离
      */
-    static class FloatSparseVectorInnerProduct implements DistanceType<SparseVector<float[]>, Float> {
+    static class FloatSparseVectorInnerProduct implements FloatDistanceType<SparseVector<float[]>> {
+        // 序列化版本号 固定为改为实现原始类型距离接口之前自动计算的值，以便读取之前保存的索引
+        private static final long serialVersionUID = -9090384378793163948L;
+
         /**
          * 计算两个稀疏向量之间的距离
          *
@@ -20,7 +49,7 @@ public enum DistanceTypeImpls {
          * @return 向量 u 和 v 之间的距离
          */
         @Override
-        public Float distance(SparseVector<float[]> u, SparseVector<float[]> v) {
+        public float floatDistance(SparseVector<float[]> u, SparseVector<float[]> v) {
 
             // 获取稀疏向量的非零元素的索引和值
             int[] uIndices = u.getIndices();
@@ -50,7 +79,10 @@ public enum DistanceTypeImpls {
     /**
      * 计算两个稀疏向量之间的距离
      */
-    static class DoubleSparseVectorInnerProduct implements DistanceType<SparseVector<double[]>, Double> {
+    static class DoubleSparseVectorInnerProduct implements DoubleDistanceType<SparseVector<double[]>> {
+        // 序列化版本号 固定为改为实现原始类型距离接口之前自动计算的值，以便读取之前保存的索引
+        private static final long serialVersionUID = 4979775673448849483L;
+
 
         /**
          * 计算两个稀疏向量之间的距离
@@ -60,7 +92,7 @@ public enum DistanceTypeImpls {
          * @return 向量 u 和 v 之间的距离
          */
         @Override
-        public Double distance(SparseVector<double[]> u, SparseVector<double[]> v) {
+        public double doubleDistance(SparseVector<double[]> u, SparseVector<double[]> v) {
             int[] uIndices = u.getIndices();
             double[] uValues = u.getValues();
             int[] vIndices = v.getIndices();
@@ -87,10 +119,17 @@ public enum DistanceTypeImpls {
     /**
      * 计算两向量之间的余弦距离
      */
-    static class FloatCosineDistance implements DistanceType<float[], Float> {
+    static class FloatCosineDistance implements FloatDistanceType<float[]> {
         // 序列化版本号
         private static final long serialVersionUID = 1L;
 
+        /**
+         * 反序列化时替换为当前选中的实现，Vector API 可用时即为向量化的实现
+         */
+        private Object readResolve() {
+            return FLOAT_COSINE_DISTANCE;
+        }
+
         /**
          * 计算两向量之间的余弦距离
          *
@@ -99,7 +138,7 @@ public enum DistanceTypeImpls {
          * @return 向量 u 和 v 之间的距离
          */
         @Override
-        public Float distance(float[] u, float[] v) {
+        public float floatDistance(float[] u, float[] v) {
             float dot = 0.0f;
             float normU = 0.0f;
             float normV = 0.0f;
@@ -116,10 +155,17 @@ public enum DistanceTypeImpls {
     /**
      * 计算两向量之间的余弦距离
      */
-    static class DoubleCosineDistance implements DistanceType<double[], Double> {
+    static class DoubleCosineDistance implements DoubleDistanceType<double[]> {
         // 序列化版本号
         private static final long serialVersionUID = 1L;
 
+        /**
+         * 反序列化时替换为当前选中的实现，Vector API 可用时即为向量化的实现
+         */
+        private Object readResolve() {
+            return DOUBLE_COSINE_DISTANCE;
+        }
+
         /**
          * 计算两向量之间的余弦距离
          *
@@ -128,7 +174,7 @@ public enum DistanceTypeImpls {
          * @return 向量 u 和 v 之间的距离
          */
         @Override
-        public Double distance(double[] u, double[] v) {
+        public double doubleDistance(double[] u, double[] v) {
             double dot = 0.0;
             double normU = 0.0;
             double normV = 0.0;
@@ -145,10 +191,17 @@ public enum DistanceTypeImpls {
     /**
      * 计算两向量之间的内积
      */
-    static class FloatInnerProduct implements DistanceType<float[], Float> {
+    static class FloatInnerProduct implements FloatDistanceType<float[]> {
         // 序列化版本号
         private static final long serialVersionUID = 1L;
 
+        /**
+         * 反序列化时替换为当前选中的实现，Vector API 可用时即为向量化的实现
+         */
+        private Object readResolve() {
+            return FLOAT_INNER_PRODUCT;
+        }
+
         /**
          * 计算两向量之间的内积
          *
@@ -157,7 +210,7 @@ public enum DistanceTypeImpls {
          * @return 向量 u 和 v 之间的距离
          */
         @Override
-        public Float distance(float[] u, float[] v) {
+        public float floatDistance(float[] u, float[] v) {
             float dot = 0.0f;
             for (int i = 0; i < u.length; i++) {
                 dot += u[i] * v[i];
@@ -169,10 +222,17 @@ public enum DistanceTypeImpls {
     /**
      * 计算两向量之间的内积
      */
-    static class DoubleInnerProduct implements DistanceType<double[], Double> {
+    static class DoubleInnerProduct implements DoubleDistanceType<double[]> {
         // 序列化版本号
         private static final long serialVersionUID = 1L;
 
+        /**
+         * 反序列化时替换为当前选中的实现，Vector API 可用时即为向量化的实现
+         */
+        private Object readResolve() {
+            return DOUBLE_INNER_PRODUCT;
+        }
+
         /**
          * 计算两向量之间的内积
          *
@@ -181,7 +241,7 @@ public enum DistanceTypeImpls {
          * @return 向量 u 和 v 之间的距离
          */
         @Override
-        public Double distance(double[] u, double[] v) {
+        public double doubleDistance(double[] u, double[] v) {
             double dot = 0.0;
             for (int i = 0; i < u.length; i++) {
                 dot += u[i] * v[i];
@@ -193,10 +253,17 @@ public enum DistanceTypeImpls {
     /**
      * 计算两向量之间的欧氏距离
      */
-    static class FloatEuclideanDistance implements DistanceType<float[], Float> {
+    static class FloatEuclideanDistance implements FloatDistanceType<float[]> {
         // 序列化版本号
         private static final long serialVersionUID = 1L;
 
+        /**
+         * 反序列化时替换为当前选中的实现，Vector API 可用时即为向量化的实现
+         */
+        private Object readResolve() {
+            return FLOAT_EUCLIDEAN_DISTANCE;
+        }
+
         /**
          * 计算两向量之间的欧式距离
          *
@@ -205,7 +272,7 @@ public enum DistanceTypeImpls {
          * @return 向量 u 和 v 之间的距离
          */
         @Override
-        public Float distance(float[] u, float[] v) {
+        public float floatDistance(float[] u, float[] v) {
             float sum = 0.0f;
             for (int i = 0; i < u.length; i++) {
                 float dp = u[i] - v[i];
@@ -218,10 +285,17 @@ public enum DistanceTypeImpls {
     /**
      * 计算两向量之间的欧氏距离
      */
-    static class DoubleEuclideanDistance implements DistanceType<double[], Double> {
+    static class DoubleEuclideanDistance implements DoubleDistanceType<double[]> {
         // 序列化版本号
         private static final long serialVersionUID = 1L;
 
+        /**
+         * 反序列化时替换为当前选中的实现，Vector API 可用时即为向量化的实现
+         */
+        private Object readResolve() {
+            return DOUBLE_EUCLIDEAN_DISTANCE;
+        }
+
         /**
          * 计算两向量之间的欧式距离
          *
@@ -230,7 +304,7 @@ public enum DistanceTypeImpls {
          * @return 向量 u 和 v 之间的距离
          */
         @Override
-        public Double distance(double[] u, double[] v) {
+        public double doubleDistance(double[] u, double[] v) {
             double sum = 0.0;
             for (int i = 0; i < u.length; i++) {
                 double dp = u[i] - v[i];
@@ -243,10 +317,17 @@ public enum DistanceTypeImpls {
     /**
      * 计算两向量之间的坎贝拉距离
      */
-    static class FloatCanberraDistance implements DistanceType<float[], Float> {
+    static class FloatCanberraDistance implements FloatDistanceType<float[]> {
         // 序列化版本号
         private static final long serialVersionUID = 1L;
 
+        /**
+         * 反序列化时替换为当前选中的实现，Vector API 可用时即为向量化的实现
+         */
+        private Object readResolve() {
+            return FLOAT_CANBERRA_DISTANCE;
+        }
+
         /**
          * 计算两向量之间的Canberra距离
          *
@@ -255,7 +336,7 @@ public enum DistanceTypeImpls {
          * @return 向量 u 和 v 之间的距离
          */
         @Override
-        public Float distance(float[] u, float[] v) {
+        public float floatDistance(float[] u, float[] v) {
             float sum = 0.0f;
             for (int i = 0; i < u.length; i++) {
                 float dp = Math.abs(u[i] - v[i]);
@@ -265,10 +346,17 @@ public enum DistanceTypeImpls {
         }
     }
 
-    static class DoubleCanberraDistance implements DistanceType<double[], Double> {
+    static class DoubleCanberraDistance implements DoubleDistanceType<double[]> {
         // 序列化版本号
         private static final long serialVersionUID = 1L;
 
+        /**
+         * 反序列化时替换为当前选中的实现，Vector API 可用时即为向量化的实现
+         */
+        private Object readResolve() {
+            return DOUBLE_CANBERRA_DISTANCE;
+        }
+
         /**
          * 计算两向量之间的Canberra距离
          *
@@ -277,7 +365,7 @@ public enum DistanceTypeImpls {
          * @return 向量 u 和 v 之间的距离
          */
         @Override
-        public Double distance(double[] u, double[] v) {
+        public double doubleDistance(double[] u, double[] v) {
             double sum = 0.0;
             for (int i = 0; i < u.length; i++) {
                 double dp = Math.abs(u[i] - v[i]);
@@ -290,10 +378,17 @@ public enum DistanceTypeImpls {
     /**
      * 计算两向量之间的BrayCurtis距离
      */
-    static class FloatBrayCurtisDistance implements DistanceType<float[], Float> {
+    static class FloatBrayCurtisDistance implements FloatDistanceType<float[]> {
         // 序列化版本号
         private static final long serialVersionUID = 1L;
 
+        /**
+         * 反序列化时替换为当前选中的实现，Vector API 可用时即为向量化的实现
+         */
+        private Object readResolve() {
+            return FLOAT_BRAY_CURTIS_DISTANCE;
+        }
+
         /**
          * 计算两向量之间的BrayCurtis距离
          *
@@ -302,7 +397,7 @@ public enum DistanceTypeImpls {
          * @return 向量 u 和 v 之间的距离
          */
         @Override
-        public Float distance(float[] u, float[] v) {
+        public float floatDistance(float[] u, float[] v) {
             float sum1 = 0.0f;
             float sum2 = 0.0f;
             for (int i = 0; i < u.length; i++) {
@@ -316,10 +411,17 @@ public enum DistanceTypeImpls {
     /**
      * 计算两向量之间的BrayCurtis距离
      */
-    static class DoubleBrayCurtisDistance implements DistanceType<double[], Double> {
+    static class DoubleBrayCurtisDistance implements DoubleDistanceType<double[]> {
         // 序列化版本号
         private static final long serialVersionUID = 1L;
 
+        /**
+         * 反序列化时替换为当前选中的实现，Vector API 可用时即为向量化的实现
+         */
+        private Object readResolve() {
+            return DOUBLE_BRAY_CURTIS_DISTANCE;
+        }
+
         /**
          * 计算两向量之间的BrayCurtis距离
          *
@@ -328,7 +430,7 @@ public enum DistanceTypeImpls {
          * @return 向量 u 和 v 之间的距离
          */
         @Override
-        public Double distance(double[] u, double[] v) {
+        public double doubleDistance(double[] u, double[] v) {
             double sum1 = 0.0;
             double sum2 = 0.0;
             for (int i = 0; i < u.length; i++) {
@@ -342,10 +444,17 @@ public enum DistanceTypeImpls {
     /**
      * 计算两向量之间的相关系数距离
      */
-    static class FloatCorrelationDistance implements DistanceType<float[], Float> {
+    static class FloatCorrelationDistance implements FloatDistanceType<float[]> {
         // 序列化版本号
         private static final long serialVersionUID = 1L;
 
+        /**
+         * 反序列化时替换为当前选中的实现，Vector API 可用时即为向量化的实现
+         */
+        private Object readResolve() {
+            return FLOAT_CORRELATION_DISTANCE;
+        }
+
         /**
          * 计算两向量之间的相关系数距离
          *
@@ -354,7 +463,7 @@ public enum DistanceTypeImpls {
          * @return 向量 u 和 v 之间的相关系数距离
          */
         @Override
-        public Float distance(float[] u, float[] v) {
+        public float floatDistance(float[] u, float[] v) {
             float x = 0.0f;
             float y = 0.0f;
 
@@ -384,10 +493,17 @@ public enum DistanceTypeImpls {
     /**
      * 计算两向量之间的相关系数距离
      */
-    static class DoubleCorrelationDistance implements DistanceType<double[], Double> {
+    static class DoubleCorrelationDistance implements DoubleDistanceType<double[]> {
         // 序列化版本号
         private static final long serialVersionUID = 1L;
 
+        /**
+         * 反序列化时替换为当前选中的实现，Vector API 可用时即为向量化的实现
+         */
+        private Object readResolve() {
+            return DOUBLE_CORRELATION_DISTANCE;
+        }
+
         /**
          * 计算两向量之间的相关系数距离
          *
@@ -396,7 +512,7 @@ public enum DistanceTypeImpls {
          * @return 向量 u 和 v 之间的相关系数距离
          */
         @Override
-        public Double distance(double[] u, double[] v) {
+        public double doubleDistance(double[] u, double[] v) {
             double x = 0.0;
             double y = 0.0;
 
@@ -426,10 +542,17 @@ public enum DistanceTypeImpls {
     /**
      * 计算两向量之间的曼哈顿距离
      */
-    static class FloatManhattanDistance implements DistanceType<float[], Float> {
+    static class FloatManhattanDistance implements FloatDistanceType<float[]> {
         // 序列化版本号
         private static final long serialVersionUID = 1L;
 
+        /**
+         * 反序列化时替换为当前选中的实现，Vector API 可用时即为向量化的实现
+         */
+        private Object readResolve() {
+            return FLOAT_MANHATTAN_DISTANCE;
+        }
+
         /**
          * 计算两向量之间的曼哈顿距离
          *
@@ -438,7 +561,7 @@ public enum DistanceTypeImpls {
          * @return 向量 u 和 v 之间的曼哈顿距离
          */
         @Override
-        public Float distance(float[] u, float[] v) {
+        public float floatDistance(float[] u, float[] v) {
             float sum = 0.0f;
             for (int i = 0; i < u.length; i++) {
                 sum += Math.abs(u[i] - v[i]);
@@ -450,10 +573,17 @@ public enum DistanceTypeImpls {
     /**
      * 计算两向量之间的曼哈顿距离
      */
-    static class DoubleManhattanDistance implements DistanceType<double[], Double> {
+    static class DoubleManhattanDistance implements DoubleDistanceType<double[]> {
         // 序列化版本号
         private static final long serialVersionUID = 1L;
 
+        /**
+         * 反序列化时替换为当前选中的实现，Vector API 可用时即为向量化的实现
+         */
+        private Object readResolve() {
+            return DOUBLE_MANHATTAN_DISTANCE;
+        }
+
         /**
          * 计算两向量之间的曼哈顿距离
          *
@@ -462,7 +592,7 @@ public enum DistanceTypeImpls {
          * @return 向量 u 和 v 之间的曼哈顿距离
          */
         @Override
-        public Double distance(double[] u, double[] v) {
+        public double doubleDistance(double[] u, double[] v) {
             double sum = 0.0;
             for (int i = 0; i < u.length; i++) {
                 sum += Math.abs(u[i] - v[i]);
@@ -474,49 +604,49 @@ public enum DistanceTypeImpls {
     /**
      * 计算两向量之间的余弦距离
      */
-    public static final DistanceType<float[], Float> FLOAT_COSINE_DISTANCE = new FloatCosineDistance();
-    public static final DistanceType<double[], Double> DOUBLE_COSINE_DISTANCE = new DoubleCosineDistance();
+    public static final FloatDistanceType<float[]> FLOAT_COSINE_DISTANCE = vectorizedOrDefault("FLOAT_COSINE_DISTANCE", new FloatCosineDistance());
+    public static final DoubleDistanceType<double[]> DOUBLE_COSINE_DISTANCE = vectorizedOrDefault("DOUBLE_COSINE_DISTANCE", new DoubleCosineDistance());
 
     /**
      * 计算两向量之间的点积距离
      */
-    public static final DistanceType<float[], Float> FLOAT_INNER_PRODUCT = new FloatInnerProduct();
-    public static final DistanceType<double[], Double> DOUBLE_INNER_PRODUCT = new DoubleInnerProduct();
+    public static final FloatDistanceType<float[]> FLOAT_INNER_PRODUCT = vectorizedOrDefault("FLOAT_INNER_PRODUCT", new FloatInnerProduct());
+    public static final DoubleDistanceType<double[]> DOUBLE_INNER_PRODUCT = vectorizedOrDefault("DOUBLE_INNER_PRODUCT", new DoubleInnerProduct());
 
     /**
      * 计算两向量之间的欧氏距离
      */
-    public static final DistanceType<float[], Float> FLOAT_EUCLIDEAN_DISTANCE = new FloatEuclideanDistance();
-    public static final DistanceType<double[], Double> DOUBLE_EUCLIDEAN_DISTANCE = new DoubleEuclideanDistance();
+    public static final FloatDistanceType<float[]> FLOAT_EUCLIDEAN_DISTANCE = vectorizedOrDefault("FLOAT_EUCLIDEAN_DISTANCE", new FloatEuclideanDistance());
+    public static final DoubleDistanceType<double[]> DOUBLE_EUCLIDEAN_DISTANCE = vectorizedOrDefault("DOUBLE_EUCLIDEAN_DISTANCE", new DoubleEuclideanDistance());
 
     /**
      * 计算两向量之间的BrayCurtis距离
      */
-    public static final DistanceType<float[], Float> FLOAT_BRAY_CURTIS_DISTANCE = new FloatBrayCurtisDistance();
-    public static final DistanceType<double[], Double> DOUBLE_BRAY_CURTIS_DISTANCE = new DoubleBrayCurtisDistance();
+    public static final FloatDistanceType<float[]> FLOAT_BRAY_CURTIS_DISTANCE = vectorizedOrDefault("FLOAT_BRAY_CURTIS_DISTANCE", new FloatBrayCurtisDistance());
+    public static final DoubleDistanceType<double[]> DOUBLE_BRAY_CURTIS_DISTANCE = vectorizedOrDefault("DOUBLE_BRAY_CURTIS_DISTANCE", new DoubleBrayCurtisDistance());
 
     /**
      * 计算两向量之间的Canberra距离
      */
-    public static final DistanceType<float[], Float> FLOAT_CANBERRA_DISTANCE = new FloatCanberraDistance();
-    public static final DistanceType<double[], Double> DOUBLE_CANBERRA_DISTANCE = new DoubleCanberraDistance();
+    public static final FloatDistanceType<float[]> FLOAT_CANBERRA_DISTANCE = vectorizedOrDefault("FLOAT_CANBERRA_DISTANCE", new FloatCanberraDistance());
+    public static final DoubleDistanceType<double[]> DOUBLE_CANBERRA_DISTANCE = vectorizedOrDefault("DOUBLE_CANBERRA_DISTANCE", new DoubleCanberraDistance());
 
     /**
      * 计算两向量之间的相关系数距离
      */
-    public static final DistanceType<float[], Float> FLOAT_CORRELATION_DISTANCE = new FloatCorrelationDistance();
-    public static final DistanceType<double[], Double> DOUBLE_CORRELATION_DISTANCE = new DoubleCorrelationDistance();
+    public static final FloatDistanceType<float[]> FLOAT_CORRELATION_DISTANCE = vectorizedOrDefault("FLOAT_CORRELATION_DISTANCE", new FloatCorrelationDistance());
+    public static final DoubleDistanceType<double[]> DOUBLE_CORRELATION_DISTANCE = vectorizedOrDefault("DOUBLE_CORRELATION_DISTANCE", new DoubleCorrelationDistance());
 
     /**
      * 计算两向量之间的曼哈顿距离
      */
-    public static final DistanceType<float[], Float> FLOAT_MANHATTAN_DISTANCE = new FloatManhattanDistance();
-    public static final DistanceType<double[], Double> DOUBLE_MANHATTAN_DISTANCE = new DoubleManhattanDistance();
+    public static final FloatDistanceType<float[]> FLOAT_MANHATTAN_DISTANCE = vectorizedOrDefault("FLOAT_MANHATTAN_DISTANCE", new FloatManhattanDistance());
+    public static final DoubleDistanceType<double[]> DOUBLE_MANHATTAN_DISTANCE = vectorizedOrDefault("DOUBLE_MANHATTAN_DISTANCE", new DoubleManhattanDistance());
 
     /**
      * 计算两稀疏向量之间的内积距离
      */
-    public static final DistanceType<SparseVector<float[]>, Float> FLOAT_SPARSE_VECTOR_INNER_PRODUCT = new FloatSparseVectorInnerProduct();
-    public static final DistanceType<SparseVector<double[]>, Double> DOUBLE_SPARSE_VECTOR_INNER_PRODUCT = new DoubleSparseVectorInnerProduct();
+    public static final FloatDistanceType<SparseVector<float[]>> FLOAT_SPARSE_VECTOR_INNER_PRODUCT = new FloatSparseVectorInnerProduct();
+    public static final DoubleDistanceType<SparseVector<double[]>> DOUBLE_SPARSE_VECTOR_INNER_PRODUCT = new DoubleSparseVectorInnerProduct();
 
 }
@@ -0,0 +1,31 @@
+package com.shoubo.model;
+
+/**
+ * Author: shoubo
+ * Date: 2026/10/18
+ * Desc: 返回原始 double 的距离函数，调用方可以直接拿到原始值而无需 Double 的装箱和拆箱
+ *
+ * @param <TVector> 向量类型
+ */
+@FunctionalInterface
+public interface DoubleDistanceType<TVector> extends DistanceType<TVector, Double> {
+
+    /**
+     * 计算两向量之间的距离
+     * @param u 向量 u
+     * @param v 向量 v
+     * @return 向量 u 和 v 之间的距离
+     */
+    double doubleDistance(TVector u, TVector v);
+
+    /**
+     * 计算两向量之间的距离 返回装箱后的结果，供通用路径使用
+     * @param u 向量 u
+     * @param v 向量 v
+     * @return 向量 u 和 v 之间的距离
+     */
+    @Override
+    default Double distance(TVector u, TVector v) {
+        return doubleDistance(u, v);
+    }
+}
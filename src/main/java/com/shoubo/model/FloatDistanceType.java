@@ -0,0 +1,32 @@
+package com.shoubo.model;
+
+/**
+ * Author: shoubo
+ * Date: 2026/10/18
+ * Desc: 返回原始 float 的距离函数，在搜索和插入的热点路径中避免 Float 的装箱和拆箱
+ * HnswIndex 检测到距离函数实现了该接口且使用自然顺序比较距离时，会走原始 float 的专用路径
+ *
+ * @param <TVector> 向量类型
+ */
+@FunctionalInterface
+public interface FloatDistanceType<TVector> extends DistanceType<TVector, Float> {
+
+    /**
+     * 计算两向量之间的距离
+     * @param u 向量 u
+     * @param v 向量 v
+     * @return 向量 u 和 v 之间的距离
+     */
+    float floatDistance(TVector u, TVector v);
+
+    /**
+     * 计算两向量之间的距离 返回装箱后的结果，供通用路径使用
+     * @param u 向量 u
+     * @param v 向量 v
+     * @return 向量 u 和 v 之间的距离
+     */
+    @Override
+    default Float distance(TVector u, TVector v) {
+        return floatDistance(u, v);
+    }
+}
@@ -0,0 +1,183 @@
+package com.shoubo.model;
+
+import lombok.Getter;
+import lombok.ToString;
+
+import java.io.Serializable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Author: shoubo
+ * Date: 2026/10/18
+ * Desc: 单次查询的搜索参数 不修改索引本身的ef，不同的调用方可以同时使用不同的参数
+ * 除ef外的参数都是预算，任意一项用完时搜索提前结束并返回当前找到的最近邻，结果会标记为提前结束
+ */
+@Getter
+@ToString
+public class SearchParams implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 不限制
+     */
+    public static final int UNLIMITED = Integer.MAX_VALUE;
+
+    /**
+     * 动态列表的大小 为0时使用索引的ef
+     */
+    private final int ef;
+
+    /**
+     * 第0层搜索最多计算距离的次数
+     */
+    private final int maxDistanceComputations;
+
+    /**
+     * 第0层搜索的时间预算 纳秒
+     */
+    private final long timeBudgetNanos;
+
+    /**
+     * 连续多少次扩展节点都没有找到更近的邻居时提前结束
+     */
+    private final int patience;
+
+    /**
+     * 是否在结果中附带本次搜索的统计
+     */
+    private final boolean collectStats;
+
+    /**
+     * 构造方法
+     *
+     * @param builder 构建器
+     */
+    private SearchParams(Builder builder) {
+        this.ef = builder.ef;
+        this.maxDistanceComputations = builder.maxDistanceComputations;
+        this.timeBudgetNanos = builder.timeBudgetNanos;
+        this.patience = builder.patience;
+        this.collectStats = builder.collectStats;
+    }
+
+    /**
+     * 是否设置了任意一项预算
+     *
+     * @return 是否有预算
+     */
+    public boolean hasBudget() {
+        return maxDistanceComputations != UNLIMITED || timeBudgetNanos != Long.MAX_VALUE || patience != UNLIMITED;
+    }
+
+    /**
+     * 创建一个构建器 默认使用索引的ef，不限制预算
+     *
+     * @return 构建器
+     */
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    /**
+     * 搜索参数的构建器
+     */
+    public static class Builder {
+
+        /**
+         * 动态列表的大小
+         */
+        private int ef;
+
+        /**
+         * 最多计算距离的次数
+         */
+        private int maxDistanceComputations = UNLIMITED;
+
+        /**
+         * 时间预算 纳秒
+         */
+        private long timeBudgetNanos = Long.MAX_VALUE;
+
+        /**
+         * 没有找到更近的邻居时最多连续扩展的节点数
+         */
+        private int patience = UNLIMITED;
+
+        /**
+         * 是否附带统计
+         */
+        private boolean collectStats;
+
+        /**
+         * 构造方法
+         */
+        Builder() {
+        }
+
+        /**
+         * 设置本次查询的动态列表大小 覆盖索引的ef
+         *
+         * @param ef 动态列表的大小
+         * @return 构建器
+         */
+        public Builder withEf(int ef) {
+            this.ef = ef;
+            return this;
+        }
+
+        /**
+         * 设置第0层搜索最多计算距离的次数 按扩展的节点检查，实际次数最多超出一个节点的邻居数
+         *
+         * @param maxDistanceComputations 最多计算距离的次数
+         * @return 构建器
+         */
+        public Builder withMaxDistanceComputations(int maxDistanceComputations) {
+            this.maxDistanceComputations = maxDistanceComputations;
+            return this;
+        }
+
+        /**
+         * 设置第0层搜索的时间预算 按扩展的节点检查
+         *
+         * @param timeBudget 时间预算
+         * @param unit       时间单位
+         * @return 构建器
+         */
+        public Builder withTimeBudget(long timeBudget, TimeUnit unit) {
+            this.timeBudgetNanos = unit.toNanos(timeBudget);
+            return this;
+        }
+
+        /**
+         * 设置提前结束的耐心值 连续扩展这么多个节点都没有让最近邻候选集发生变化时，认为搜索已经收敛
+         *
+         * @param patience 耐心值
+         * @return 构建器
+         */
+        public Builder withPatience(int patience) {
+            this.patience = patience;
+            return this;
+        }
+
+        /**
+         * 设置是否在结果中附带本次搜索的统计 计算距离的次数、扩展的节点数、经过的层数、重读次数和耗时
+         *
+         * @param collectStats 是否附带统计
+         * @return 构建器
+         */
+        public Builder withStats(boolean collectStats) {
+            this.collectStats = collectStats;
+            return this;
+        }
+
+        /**
+         * 构建搜索参数
+         *
+         * @return 搜索参数
+         */
+        public SearchParams build() {
+            return new SearchParams(this);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.shoubo.model.bo;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * @author shoubo
+ * @date 26/10/18
+ * @desc 带搜索参数的最近邻搜索的结果 除结果列表外还说明搜索是否因为预算用完而提前结束，并可以附带本次搜索的统计
+ */
+@AllArgsConstructor
+@Getter
+@ToString
+public class SearchResultsBO<TItem, TDistance> implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 搜索结果 按距离从近到远排列
+     */
+    private final List<SearchResultBO<TItem, TDistance>> results;
+
+    /**
+     * 是否因为预算用完而提前结束 为true时结果可能不如完整搜索准确
+     */
+    private final boolean terminatedEarly;
+
+    /**
+     * 本次搜索的统计 搜索参数要求附带统计时非空
+     */
+    private final SearchStatsBO stats;
+}
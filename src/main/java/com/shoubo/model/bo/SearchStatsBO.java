@@ -0,0 +1,45 @@
+package com.shoubo.model.bo;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.io.Serializable;
+
+/**
+ * @author shoubo
+ * @date 26/10/18
+ * @desc 单次最近邻搜索的统计 用于分析查询慢的原因
+ */
+@AllArgsConstructor
+@Getter
+@ToString
+public class SearchStatsBO implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 计算距离的次数 包括高层的贪心搜索
+     */
+    private final int distanceComputations;
+
+    /**
+     * 读取邻居列表并扩展的节点数 包括高层的贪心搜索
+     */
+    private final int nodesExpanded;
+
+    /**
+     * 贪心搜索向下经过的层数
+     */
+    private final int levelsDescended;
+
+    /**
+     * 无锁读取邻居列表时遇到并发写入而重读的次数 即邻接表seqlock的重试次数，搜索本身不加锁，并不存在真正的锁等待
+     */
+    private final int readRetries;
+
+    /**
+     * 搜索耗时 纳秒
+     */
+    private final long elapsedNanos;
+}
@@ -0,0 +1,123 @@
+package com.shoubo.utils;
+
+import java.util.zip.Checksum;
+
+/**
+ * @author shoubo
+ * @date 26/10/18
+ * @desc CRC32C(Castagnoli) 校验和 用于索引文件中每一段数据的校验
+ * Java 9 起自带 java.util.zip.CRC32C 且有硬件加速，{@link #newChecksum()} 优先使用它；
+ * 在 Java 8 上退回到本类的纯 Java 实现，按 slicing-by-8 每次处理8个字节，两者的结果完全相同
+ */
+public final class Crc32c implements Checksum {
+
+    /**
+     * CRC32C 多项式的反序表示
+     */
+    private static final int POLYNOMIAL = 0x82F63B78;
+
+    /**
+     * slicing-by-8 的查找表 TABLE[k][b] 为字节b后面再跟k个零字节时的余数
+     */
+    private static final int[][] TABLE = new int[8][256];
+
+    /**
+     * JDK 自带的 CRC32C 类 Java 8 上为null
+     */
+    private static final Class<?> JDK_CRC32C = jdkCrc32c();
+
+    static {
+        for (int b = 0; b < 256; b++) {
+            int crc = b;
+            for (int i = 0; i < 8; i++) {
+                crc = (crc >>> 1) ^ ((crc & 1) != 0 ? POLYNOMIAL : 0);
+            }
+            TABLE[0][b] = crc;
+        }
+        for (int k = 1; k < 8; k++) {
+            for (int b = 0; b < 256; b++) {
+                int previous = TABLE[k - 1][b];
+                TABLE[k][b] = (previous >>> 8) ^ TABLE[0][previous & 0xFF];
+            }
+        }
+    }
+
+    /**
+     * 当前的余数 取反后存储
+     */
+    private int crc = 0xFFFFFFFF;
+
+    /**
+     * 创建一个 CRC32C 校验和 有 JDK 自带的实现时使用它
+     *
+     * @return 校验和
+     */
+    public static Checksum newChecksum() {
+        if (JDK_CRC32C != null) {
+            try {
+                return (Checksum) JDK_CRC32C.getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException e) {
+                // 不会发生，退回到纯 Java 实现
+            }
+        }
+        return new Crc32c();
+    }
+
+    @Override
+    public void update(int b) {
+        crc = (crc >>> 8) ^ TABLE[0][(crc ^ b) & 0xFF];
+    }
+
+    @Override
+    public void update(byte[] b, int off, int len) {
+        int value = crc;
+        int end = off + len;
+
+        // 每次处理8个字节
+        while (end - off >= 8) {
+            int low = value
+                    ^ (b[off] & 0xFF)
+                    ^ (b[off + 1] & 0xFF) << 8
+                    ^ (b[off + 2] & 0xFF) << 16
+                    ^ (b[off + 3] & 0xFF) << 24;
+            value = TABLE[7][low & 0xFF]
+                    ^ TABLE[6][(low >>> 8) & 0xFF]
+                    ^ TABLE[5][(low >>> 16) & 0xFF]
+                    ^ TABLE[4][low >>> 24]
+                    ^ TABLE[3][b[off + 4] & 0xFF]
+                    ^ TABLE[2][b[off + 5] & 0xFF]
+                    ^ TABLE[1][b[off + 6] & 0xFF]
+                    ^ TABLE[0][b[off + 7] & 0xFF];
+            off += 8;
+        }
+
+        // 剩余不足8个的字节逐个处理
+        while (off < end) {
+            value = (value >>> 8) ^ TABLE[0][(value ^ b[off++]) & 0xFF];
+        }
+        crc = value;
+    }
+
+    @Override
+    public long getValue() {
+        return ~crc & 0xFFFFFFFFL;
+    }
+
+    @Override
+    public void reset() {
+        crc = 0xFFFFFFFF;
+    }
+
+    /**
+     * 查找 JDK 自带的 CRC32C 类
+     *
+     * @return 类 不存在时为null
+     */
+    private static Class<?> jdkCrc32c() {
+        try {
+            return Class.forName("java.util.zip.CRC32C");
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+    }
+}
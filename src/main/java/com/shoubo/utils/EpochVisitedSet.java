@@ -0,0 +1,81 @@
+package com.shoubo.utils;
+
+import java.util.Arrays;
+
+/**
+ * @author shoubo
+ * @date 26/10/18
+ * @desc 基于代数(epoch)标记的已访问集合 每个槽位记录最后一次被访问时的代数，当前代数相同即视为已访问
+ * 清空时只需把当前代数加一，复杂度为O(1)，不必像ArrayBitSet那样每次搜索后都把整个缓冲区置零
+ * 代数为16位，每65535次清空才会真正把缓冲区置零一次；代价是每个槽位占2个字节，而位图只占1位
+ * 缓冲区按需增长，添加超出当前大小的索引时自动扩容，因此可以按当前节点数而不是索引容量来分配
+ */
+public class EpochVisitedSet implements VisitedSet {
+
+    /**
+     * 每个槽位最后一次被访问时的代数 0表示从未访问
+     */
+    private short[] stamps;
+
+    /**
+     * 当前代数 永远不为0
+     */
+    private short epoch = 1;
+
+    /**
+     * 构造一个已访问集合
+     * @param size 集合的大小
+     */
+    public EpochVisitedSet(int size) {
+        this.stamps = new short[size];
+    }
+
+    /**
+     * 判断集合中是否包含某个索引
+     * @param id 索引
+     * @return 是否包含
+     */
+    @Override
+    public boolean contains(int id) {
+        return id < stamps.length && stamps[id] == epoch;
+    }
+
+    /**
+     * 添加一个索引到集合中
+     * @param id 索引
+     */
+    @Override
+    public void add(int id) {
+        if (id >= stamps.length) {
+            grow(id + 1);
+        }
+        stamps[id] = epoch;
+    }
+
+    /**
+     * 清空集合 代数加一即可，代数回绕到0时才把缓冲区置零
+     */
+    @Override
+    public void clear() {
+        if (++epoch == 0) {
+            Arrays.fill(stamps, (short) 0);
+            epoch = 1;
+        }
+    }
+
+    /**
+     * 扩容 新增的槽位为0，即未访问
+     * @param minSize 最小的大小
+     */
+    private void grow(int minSize) {
+        stamps = Arrays.copyOf(stamps, Math.max(minSize, stamps.length + (stamps.length >> 1)));
+    }
+
+    /**
+     * 集合的大小
+     * @return 集合能容纳的索引数量
+     */
+    public int size() {
+        return stamps.length;
+    }
+}
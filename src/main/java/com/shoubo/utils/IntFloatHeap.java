@@ -0,0 +1,186 @@
+package com.shoubo.utils;
+
+import java.util.Arrays;
+
+/**
+ * @author shoubo
+ * @date 26/10/18
+ * @desc 原始 int/float 的二叉堆 用两个平行数组分别存储节点ID和距离，入堆出堆都不创建对象
+ * 最小堆的堆顶为距离最小的元素，最大堆的堆顶为距离最大的元素；最大堆内部存储距离的相反数，两者共用同一套下沉/上浮逻辑
+ * 数组按需增长，clear()之后可以重复使用，适合放在每个线程的搜索上下文中
+ */
+public class IntFloatHeap {
+
+    /**
+     * 节点ID
+     */
+    private int[] ids;
+
+    /**
+     * 排序用的键 最小堆为距离本身，最大堆为距离的相反数
+     */
+    private float[] keys;
+
+    /**
+     * 堆中的元素数
+     */
+    private int size;
+
+    /**
+     * 是否为最大堆
+     */
+    private final boolean maxHeap;
+
+    /**
+     * 构造一个堆
+     * @param initialCapacity 初始容量
+     * @param maxHeap 是否为最大堆
+     */
+    private IntFloatHeap(int initialCapacity, boolean maxHeap) {
+        int capacity = Math.max(initialCapacity, 1);
+        this.ids = new int[capacity];
+        this.keys = new float[capacity];
+        this.maxHeap = maxHeap;
+    }
+
+    /**
+     * 创建一个最小堆 堆顶为距离最小的元素
+     * @param initialCapacity 初始容量
+     * @return 最小堆
+     */
+    public static IntFloatHeap minHeap(int initialCapacity) {
+        return new IntFloatHeap(initialCapacity, false);
+    }
+
+    /**
+     * 创建一个最大堆 堆顶为距离最大的元素
+     * @param initialCapacity 初始容量
+     * @return 最大堆
+     */
+    public static IntFloatHeap maxHeap(int initialCapacity) {
+        return new IntFloatHeap(initialCapacity, true);
+    }
+
+    /**
+     * 入堆
+     * @param id 节点ID
+     * @param distance 距离
+     */
+    public void push(int id, float distance) {
+        if (size == ids.length) {
+            int newCapacity = size + (size >> 1) + 1;
+            ids = Arrays.copyOf(ids, newCapacity);
+            keys = Arrays.copyOf(keys, newCapacity);
+        }
+        siftUp(size++, id, maxHeap ? -distance : distance);
+    }
+
+    /**
+     * 出堆 移除堆顶元素
+     * @return 堆顶元素的节点ID
+     */
+    public int pop() {
+        int top = ids[0];
+        int last = --size;
+        if (last > 0) {
+            siftDown(0, ids[last], keys[last]);
+        }
+        return top;
+    }
+
+    /**
+     * 堆顶元素的节点ID
+     * @return 节点ID
+     */
+    public int peekId() {
+        return ids[0];
+    }
+
+    /**
+     * 堆顶元素的距离
+     * @return 距离
+     */
+    public float peekDistance() {
+        return maxHeap ? -keys[0] : keys[0];
+    }
+
+    /**
+     * 按数组下标读取节点ID 下标顺序即堆的内部顺序，不是距离顺序
+     * @param index 下标 0 到 size()-1
+     * @return 节点ID
+     */
+    public int idAt(int index) {
+        return ids[index];
+    }
+
+    /**
+     * 按数组下标读取距离 下标顺序即堆的内部顺序，不是距离顺序
+     * @param index 下标 0 到 size()-1
+     * @return 距离
+     */
+    public float distanceAt(int index) {
+        return maxHeap ? -keys[index] : keys[index];
+    }
+
+    /**
+     * 堆中的元素数
+     * @return 元素数
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 堆是否为空
+     * @return 是否为空
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * 清空堆 保留已分配的数组
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * 从下标index开始上浮
+     */
+    private void siftUp(int index, int id, float key) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (key >= keys[parent]) {
+                break;
+            }
+            ids[index] = ids[parent];
+            keys[index] = keys[parent];
+            index = parent;
+        }
+        ids[index] = id;
+        keys[index] = key;
+    }
+
+    /**
+     * 从下标index开始下沉
+     */
+    private void siftDown(int index, int id, float key) {
+        int half = size >>> 1;
+        while (index < half) {
+            int child = (index << 1) + 1;
+            int right = child + 1;
+            if (right < size && keys[right] < keys[child]) {
+                child = right;
+            }
+            if (key <= keys[child]) {
+                break;
+            }
+            ids[index] = ids[child];
+            keys[index] = keys[child];
+            index = child;
+        }
+        ids[index] = id;
+        keys[index] = key;
+    }
+}
@@ -0,0 +1,128 @@
+package com.shoubo.utils;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * @author shoubo
+ * @date 26/10/18
+ * @desc 基于开放寻址(线性探测)的原始 int 哈希集合，用于记录已访问的节点
+ * 占用的空间只与访问过的节点数有关，与索引容量无关，适用于ef较小而索引很大的搜索：
+ * 几千个节点的访问记录可以放进几十KB的数组中，比按容量分配的稠密集合有更好的缓存局部性
+ */
+public class IntHashVisitedSet implements VisitedSet, Serializable {
+
+    /**
+     * 定义一个 serialVersionUID，用于序列化和反序列化对象时的版本控制。
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 最大装载因子的倒数 元素数超过容量的一半时扩容
+     */
+    private static final int LOAD_FACTOR_INVERSE = 2;
+
+    /**
+     * 哈希表 存储节点ID加一，0表示空槽
+     */
+    private int[] keys;
+
+    /**
+     * 容量减一 容量总是2的幂
+     */
+    private int mask;
+
+    /**
+     * 集合中的元素数
+     */
+    private int size;
+
+    /**
+     * 构造一个哈希集合
+     * @param expectedSize 预计的元素数
+     */
+    public IntHashVisitedSet(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(expectedSize * LOAD_FACTOR_INVERSE - 1, 1)) << 1;
+        this.keys = new int[capacity];
+        this.mask = capacity - 1;
+    }
+
+    @Override
+    public boolean contains(int id) {
+        int key = id + 1;
+        int slot = hash(key) & mask;
+        int current;
+        while ((current = keys[slot]) != 0) {
+            if (current == key) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    @Override
+    public void add(int id) {
+        int key = id + 1;
+        int slot = hash(key) & mask;
+        int current;
+        while ((current = keys[slot]) != 0) {
+            if (current == key) {
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        if (++size * LOAD_FACTOR_INVERSE > keys.length) {
+            rehash(keys.length << 1);
+        }
+    }
+
+    /**
+     * 清空集合 只需要把哈希表置零，哈希表的大小与上一次搜索访问的节点数成正比
+     */
+    @Override
+    public void clear() {
+        if (size > 0) {
+            Arrays.fill(keys, 0);
+            size = 0;
+        }
+    }
+
+    /**
+     * 集合中的元素数
+     * @return 元素数
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 扩容并重新插入所有元素
+     * @param newCapacity 新容量
+     */
+    private void rehash(int newCapacity) {
+        int[] oldKeys = keys;
+        keys = new int[newCapacity];
+        mask = newCapacity - 1;
+        for (int key : oldKeys) {
+            if (key != 0) {
+                int slot = hash(key) & mask;
+                while (keys[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = key;
+            }
+        }
+    }
+
+    /**
+     * 节点ID是连续的整数，乘以黄金分割常数后取高位打散，避免线性探测时聚集
+     * @param key 键
+     * @return 哈希值
+     */
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,121 @@
+package com.shoubo.utils;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author shoubo
+ * @date 26/10/18
+ * @desc 按2的幂分桶的直方图 第0个桶记录0，第i个桶记录 [2^(i-1), 2^i) 范围内的值，共64个桶覆盖所有非负的long
+ * 记录时只做一次原子加，可以被多个线程同时写入；分位数只精确到桶的上界
+ */
+public class Log2Histogram {
+
+    /**
+     * 桶的数量
+     */
+    private static final int BUCKETS = 64;
+
+    /**
+     * 每个桶的计数
+     */
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    /**
+     * 所有记录值的和
+     */
+    private final LongAdder sum = new LongAdder();
+
+    /**
+     * 记录一个值 负数按0记录
+     * @param value 值
+     */
+    public void record(long value) {
+        long v = Math.max(value, 0);
+        counts.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(v));
+        sum.add(v);
+    }
+
+    /**
+     * 记录的值的个数
+     * @return 个数
+     */
+    public long count() {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * 记录的值的平均数
+     * @return 平均数 没有记录时为0
+     */
+    public double mean() {
+        long count = count();
+        return count == 0 ? 0 : sum.doubleValue() / count;
+    }
+
+    /**
+     * 分位数 返回包含该分位的桶的上界
+     * @param quantile 分位 0到1之间，例如0.99
+     * @return 分位数的上界 没有记录时为0
+     */
+    public long percentile(double quantile) {
+        long[] snapshot = buckets();
+        long count = 0;
+        for (long c : snapshot) {
+            count += c;
+        }
+        if (count == 0) {
+            return 0;
+        }
+
+        long rank = (long) Math.ceil(quantile * count);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank && snapshot[i] > 0) {
+                return upperBound(i);
+            }
+        }
+        return upperBound(BUCKETS - 1);
+    }
+
+    /**
+     * 每个桶的计数的快照
+     * @return 长度为64的数组 第i个元素为第i个桶的计数
+     */
+    public long[] buckets() {
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+        }
+        return snapshot;
+    }
+
+    /**
+     * 清空直方图
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        sum.reset();
+    }
+
+    /**
+     * 桶能记录的最大值
+     * @param bucket 桶的下标
+     * @return 最大值
+     */
+    private static long upperBound(int bucket) {
+        return bucket == BUCKETS - 1 ? Long.MAX_VALUE : (1L << bucket) - 1;
+    }
+
+    @Override
+    public String toString() {
+        return "count=" + count() + ", mean=" + mean() + ", p50=" + percentile(0.5) + ", p99=" + percentile(0.99);
+    }
+}
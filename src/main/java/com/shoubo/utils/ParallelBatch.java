@@ -0,0 +1,108 @@
+package com.shoubo.utils;
+
+import com.shoubo.exception.UncategorizedIndexException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * @author shoubo
+ * @date 26/10/18
+ * @desc 在给定的线程池上并行地对一批输入执行同一个函数，结果按输入的顺序返回
+ * 提交的任务数不超过线程池的并行度，每个任务循环地领取下一个输入，耗时不均匀的输入也能均衡地分给各个线程
+ * 某个输入执行失败后，其余的任务执行完手上的输入就停止，不再处理剩下的输入
+ */
+public final class ParallelBatch {
+
+    private ParallelBatch() {
+    }
+
+    /**
+     * 并行地对每个输入执行函数
+     *
+     * @param inputs   输入
+     * @param function 函数
+     * @param executor 执行任务的线程池
+     * @param <T>      输入的类型
+     * @param <R>      结果的类型
+     * @return 结果列表 第i个结果对应第i个输入
+     * @throws UncategorizedIndexException 某个输入执行时抛出异常 原始的异常为它的cause，只有一个任务时也是如此
+     */
+    public static <T, R> List<R> map(List<T> inputs, Function<T, R> function, Executor executor) {
+        int size = inputs.size();
+        Object[] results = new Object[size];
+
+        int tasks = Math.min(size, parallelism(executor));
+
+        if (tasks <= 1) {
+            try {
+                for (int i = 0; i < size; i++) {
+                    results[i] = function.apply(inputs.get(i));
+                }
+            } catch (RuntimeException e) {
+                throw new UncategorizedIndexException("某个线程中抛出异常.", e);
+            }
+        } else {
+            AtomicInteger next = new AtomicInteger();
+            // 某个输入执行失败后其余任务不再领取新的输入
+            AtomicBoolean failed = new AtomicBoolean();
+
+            List<CompletableFuture<Void>> futures = new ArrayList<>(tasks);
+            for (int task = 0; task < tasks; task++) {
+                futures.add(CompletableFuture.runAsync(() -> {
+                    try {
+                        int i;
+                        while (!failed.get() && (i = next.getAndIncrement()) < size) {
+                            results[i] = function.apply(inputs.get(i));
+                        }
+                    } catch (RuntimeException | Error e) {
+                        failed.set(true);
+                        throw e;
+                    }
+                }, executor));
+            }
+
+            // 等待所有任务执行完成
+            try {
+                CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof Error) {
+                    throw (Error) e.getCause();
+                }
+                throw new UncategorizedIndexException("某个线程中抛出异常.", e.getCause());
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        List<R> list = (List<R>) Arrays.asList(results);
+        return list;
+    }
+
+    /**
+     * 线程池能同时执行的任务数 无法得知或不设上限(如newCachedThreadPool)时按CPU核数计算
+     *
+     * @param executor 线程池
+     * @return 并行度
+     */
+    private static int parallelism(Executor executor) {
+        if (executor instanceof ForkJoinPool) {
+            return ((ForkJoinPool) executor).getParallelism();
+        }
+        if (executor instanceof ThreadPoolExecutor) {
+            int maximumPoolSize = ((ThreadPoolExecutor) executor).getMaximumPoolSize();
+            if (maximumPoolSize != Integer.MAX_VALUE) {
+                return maximumPoolSize;
+            }
+        }
+        return Runtime.getRuntime().availableProcessors();
+    }
+}
@@ -0,0 +1,28 @@
+package com.shoubo.utils;
+
+/**
+ * @author shoubo
+ * @date 26/10/18
+ * @desc 搜索过程中记录已访问节点的集合 节点以内部的int ID表示
+ * 稠密实现{@link EpochVisitedSet}按容量分配槽位，稀疏实现{@link IntHashVisitedSet}只为访问过的节点分配空间
+ */
+public interface VisitedSet {
+
+    /**
+     * 判断集合中是否包含某个节点
+     * @param id 节点ID
+     * @return 是否包含
+     */
+    boolean contains(int id);
+
+    /**
+     * 添加一个节点到集合中
+     * @param id 节点ID
+     */
+    void add(int id);
+
+    /**
+     * 清空集合 每个线程的搜索上下文(SearchContext)持有自己的集合，每次搜索开始时清空后重复使用
+     */
+    void clear();
+}
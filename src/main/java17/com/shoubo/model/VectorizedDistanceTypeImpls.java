@@ -0,0 +1,548 @@
+package com.shoubo.model;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.io.Serializable;
+
+/**
+ * Author: shoubo
+ * Date: 2026/10/18
+ * Desc: 基于 JDK Vector API(jdk.incubator.vector) 的距离函数实现，只存在于多版本 jar 的 META-INF/versions/17 中
+ * 由{@link DistanceTypeImpls}在运行时通过反射加载，加载失败(JDK 版本过低或未 --add-modules jdk.incubator.vector)时退回标量实现
+ * 序列化时通过 writeReplace 写出对应的标量实现，保证索引文件可以在没有 Vector API 的环境中载入
+ */
+final class VectorizedDistanceTypeImpls {
+
+    /**
+     * float 向量的首选宽度
+     */
+    private static final VectorSpecies<Float> FLOAT_SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    /**
+     * double 向量的首选宽度
+     */
+    private static final VectorSpecies<Double> DOUBLE_SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    private VectorizedDistanceTypeImpls() {
+    }
+
+    /**
+     * 计算两向量之间的余弦距离
+     */
+    static class FloatCosineDistance implements FloatDistanceType<float[]> {
+        // 序列化版本号
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public float floatDistance(float[] u, float[] v) {
+            FloatVector dotVector = FloatVector.zero(FLOAT_SPECIES);
+            FloatVector normUVector = FloatVector.zero(FLOAT_SPECIES);
+            FloatVector normVVector = FloatVector.zero(FLOAT_SPECIES);
+            int i = 0;
+            int bound = FLOAT_SPECIES.loopBound(u.length);
+            for (; i < bound; i += FLOAT_SPECIES.length()) {
+                FloatVector a = FloatVector.fromArray(FLOAT_SPECIES, u, i);
+                FloatVector b = FloatVector.fromArray(FLOAT_SPECIES, v, i);
+                dotVector = a.fma(b, dotVector);
+                normUVector = a.fma(a, normUVector);
+                normVVector = b.fma(b, normVVector);
+            }
+            float dot = dotVector.reduceLanes(VectorOperators.ADD);
+            float normU = normUVector.reduceLanes(VectorOperators.ADD);
+            float normV = normVVector.reduceLanes(VectorOperators.ADD);
+            // 处理剩余的元素
+            for (; i < u.length; i++) {
+                dot += u[i] * v[i];
+                normU += u[i] * u[i];
+                normV += v[i] * v[i];
+            }
+            return 1 - dot / (float) (Math.sqrt(normU) * Math.sqrt(normV));
+        }
+
+        private Object writeReplace() {
+            return new DistanceTypeImpls.FloatCosineDistance();
+        }
+    }
+
+    /**
+     * 计算两向量之间的余弦距离
+     */
+    static class DoubleCosineDistance implements DoubleDistanceType<double[]> {
+        // 序列化版本号
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public double doubleDistance(double[] u, double[] v) {
+            DoubleVector dotVector = DoubleVector.zero(DOUBLE_SPECIES);
+            DoubleVector normUVector = DoubleVector.zero(DOUBLE_SPECIES);
+            DoubleVector normVVector = DoubleVector.zero(DOUBLE_SPECIES);
+            int i = 0;
+            int bound = DOUBLE_SPECIES.loopBound(u.length);
+            for (; i < bound; i += DOUBLE_SPECIES.length()) {
+                DoubleVector a = DoubleVector.fromArray(DOUBLE_SPECIES, u, i);
+                DoubleVector b = DoubleVector.fromArray(DOUBLE_SPECIES, v, i);
+                dotVector = a.fma(b, dotVector);
+                normUVector = a.fma(a, normUVector);
+                normVVector = b.fma(b, normVVector);
+            }
+            double dot = dotVector.reduceLanes(VectorOperators.ADD);
+            double normU = normUVector.reduceLanes(VectorOperators.ADD);
+            double normV = normVVector.reduceLanes(VectorOperators.ADD);
+            for (; i < u.length; i++) {
+                dot += u[i] * v[i];
+                normU += u[i] * u[i];
+                normV += v[i] * v[i];
+            }
+            return 1 - dot / (Math.sqrt(normU) * Math.sqrt(normV));
+        }
+
+        private Object writeReplace() {
+            return new DistanceTypeImpls.DoubleCosineDistance();
+        }
+    }
+
+    /**
+     * 计算两向量之间的内积
+     */
+    static class FloatInnerProduct implements FloatDistanceType<float[]> {
+        // 序列化版本号
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public float floatDistance(float[] u, float[] v) {
+            FloatVector dotVector = FloatVector.zero(FLOAT_SPECIES);
+            int i = 0;
+            int bound = FLOAT_SPECIES.loopBound(u.length);
+            for (; i < bound; i += FLOAT_SPECIES.length()) {
+                FloatVector a = FloatVector.fromArray(FLOAT_SPECIES, u, i);
+                FloatVector b = FloatVector.fromArray(FLOAT_SPECIES, v, i);
+                dotVector = a.fma(b, dotVector);
+            }
+            float dot = dotVector.reduceLanes(VectorOperators.ADD);
+            for (; i < u.length; i++) {
+                dot += u[i] * v[i];
+            }
+            return 1 - dot;
+        }
+
+        private Object writeReplace() {
+            return new DistanceTypeImpls.FloatInnerProduct();
+        }
+    }
+
+    /**
+     * 计算两向量之间的内积
+     */
+    static class DoubleInnerProduct implements DoubleDistanceType<double[]> {
+        // 序列化版本号
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public double doubleDistance(double[] u, double[] v) {
+            DoubleVector dotVector = DoubleVector.zero(DOUBLE_SPECIES);
+            int i = 0;
+            int bound = DOUBLE_SPECIES.loopBound(u.length);
+            for (; i < bound; i += DOUBLE_SPECIES.length()) {
+                DoubleVector a = DoubleVector.fromArray(DOUBLE_SPECIES, u, i);
+                DoubleVector b = DoubleVector.fromArray(DOUBLE_SPECIES, v, i);
+                dotVector = a.fma(b, dotVector);
+            }
+            double dot = dotVector.reduceLanes(VectorOperators.ADD);
+            for (; i < u.length; i++) {
+                dot += u[i] * v[i];
+            }
+            return 1 - dot;
+        }
+
+        private Object writeReplace() {
+            return new DistanceTypeImpls.DoubleInnerProduct();
+        }
+    }
+
+    /**
+     * 计算两向量之间的欧氏距离
+     */
+    static class FloatEuclideanDistance implements FloatDistanceType<float[]> {
+        // 序列化版本号
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public float floatDistance(float[] u, float[] v) {
+            FloatVector sumVector = FloatVector.zero(FLOAT_SPECIES);
+            int i = 0;
+            int bound = FLOAT_SPECIES.loopBound(u.length);
+            for (; i < bound; i += FLOAT_SPECIES.length()) {
+                FloatVector dp = FloatVector.fromArray(FLOAT_SPECIES, u, i)
+                        .sub(FloatVector.fromArray(FLOAT_SPECIES, v, i));
+                sumVector = dp.fma(dp, sumVector);
+            }
+            float sum = sumVector.reduceLanes(VectorOperators.ADD);
+            for (; i < u.length; i++) {
+                float dp = u[i] - v[i];
+                sum += dp * dp;
+            }
+            return (float) Math.sqrt(sum);
+        }
+
+        private Object writeReplace() {
+            return new DistanceTypeImpls.FloatEuclideanDistance();
+        }
+    }
+
+    /**
+     * 计算两向量之间的欧氏距离
+     */
+    static class DoubleEuclideanDistance implements DoubleDistanceType<double[]> {
+        // 序列化版本号
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public double doubleDistance(double[] u, double[] v) {
+            DoubleVector sumVector = DoubleVector.zero(DOUBLE_SPECIES);
+            int i = 0;
+            int bound = DOUBLE_SPECIES.loopBound(u.length);
+            for (; i < bound; i += DOUBLE_SPECIES.length()) {
+                DoubleVector dp = DoubleVector.fromArray(DOUBLE_SPECIES, u, i)
+                        .sub(DoubleVector.fromArray(DOUBLE_SPECIES, v, i));
+                sumVector = dp.fma(dp, sumVector);
+            }
+            double sum = sumVector.reduceLanes(VectorOperators.ADD);
+            for (; i < u.length; i++) {
+                double dp = u[i] - v[i];
+                sum += dp * dp;
+            }
+            return Math.sqrt(sum);
+        }
+
+        private Object writeReplace() {
+            return new DistanceTypeImpls.DoubleEuclideanDistance();
+        }
+    }
+
+    /**
+     * 计算两向量之间的坎贝拉距离
+     */
+    static class FloatCanberraDistance implements FloatDistanceType<float[]> {
+        // 序列化版本号
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public float floatDistance(float[] u, float[] v) {
+            FloatVector sumVector = FloatVector.zero(FLOAT_SPECIES);
+            int i = 0;
+            int bound = FLOAT_SPECIES.loopBound(u.length);
+            for (; i < bound; i += FLOAT_SPECIES.length()) {
+                FloatVector a = FloatVector.fromArray(FLOAT_SPECIES, u, i);
+                FloatVector b = FloatVector.fromArray(FLOAT_SPECIES, v, i);
+                FloatVector den = a.abs().add(b.abs());
+                // 分母为0(两者都为0)的分量贡献为0
+                VectorMask<Float> nonZero = den.compare(VectorOperators.NE, 0f);
+                sumVector = sumVector.add(a.sub(b).abs().div(den), nonZero);
+            }
+            float sum = sumVector.reduceLanes(VectorOperators.ADD);
+            for (; i < u.length; i++) {
+                float dp = Math.abs(u[i] - v[i]);
+                sum += (u[i] == 0 && v[i] == 0) ? 0 : dp / (Math.abs(u[i]) + Math.abs(v[i]));
+            }
+            return sum;
+        }
+
+        private Object writeReplace() {
+            return new DistanceTypeImpls.FloatCanberraDistance();
+        }
+    }
+
+    /**
+     * 计算两向量之间的坎贝拉距离
+     */
+    static class DoubleCanberraDistance implements DoubleDistanceType<double[]> {
+        // 序列化版本号
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public double doubleDistance(double[] u, double[] v) {
+            DoubleVector sumVector = DoubleVector.zero(DOUBLE_SPECIES);
+            int i = 0;
+            int bound = DOUBLE_SPECIES.loopBound(u.length);
+            for (; i < bound; i += DOUBLE_SPECIES.length()) {
+                DoubleVector a = DoubleVector.fromArray(DOUBLE_SPECIES, u, i);
+                DoubleVector b = DoubleVector.fromArray(DOUBLE_SPECIES, v, i);
+                DoubleVector den = a.abs().add(b.abs());
+                VectorMask<Double> nonZero = den.compare(VectorOperators.NE, 0d);
+                sumVector = sumVector.add(a.sub(b).abs().div(den), nonZero);
+            }
+            double sum = sumVector.reduceLanes(VectorOperators.ADD);
+            for (; i < u.length; i++) {
+                double dp = Math.abs(u[i] - v[i]);
+                sum += (u[i] == 0 && v[i] == 0) ? 0 : dp / (Math.abs(u[i]) + Math.abs(v[i]));
+            }
+            return sum;
+        }
+
+        private Object writeReplace() {
+            return new DistanceTypeImpls.DoubleCanberraDistance();
+        }
+    }
+
+    /**
+     * 计算两向量之间的BrayCurtis距离
+     */
+    static class FloatBrayCurtisDistance implements FloatDistanceType<float[]> {
+        // 序列化版本号
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public float floatDistance(float[] u, float[] v) {
+            FloatVector sum1Vector = FloatVector.zero(FLOAT_SPECIES);
+            FloatVector sum2Vector = FloatVector.zero(FLOAT_SPECIES);
+            int i = 0;
+            int bound = FLOAT_SPECIES.loopBound(u.length);
+            for (; i < bound; i += FLOAT_SPECIES.length()) {
+                FloatVector a = FloatVector.fromArray(FLOAT_SPECIES, u, i);
+                FloatVector b = FloatVector.fromArray(FLOAT_SPECIES, v, i);
+                sum1Vector = sum1Vector.add(a.sub(b).abs());
+                sum2Vector = sum2Vector.add(a.add(b).abs());
+            }
+            float sum1 = sum1Vector.reduceLanes(VectorOperators.ADD);
+            float sum2 = sum2Vector.reduceLanes(VectorOperators.ADD);
+            for (; i < u.length; i++) {
+                sum1 += Math.abs(u[i] - v[i]);
+                sum2 += Math.abs(u[i] + v[i]);
+            }
+            return sum1 / sum2;
+        }
+
+        private Object writeReplace() {
+            return new DistanceTypeImpls.FloatBrayCurtisDistance();
+        }
+    }
+
+    /**
+     * 计算两向量之间的BrayCurtis距离
+     */
+    static class DoubleBrayCurtisDistance implements DoubleDistanceType<double[]> {
+        // 序列化版本号
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public double doubleDistance(double[] u, double[] v) {
+            DoubleVector sum1Vector = DoubleVector.zero(DOUBLE_SPECIES);
+            DoubleVector sum2Vector = DoubleVector.zero(DOUBLE_SPECIES);
+            int i = 0;
+            int bound = DOUBLE_SPECIES.loopBound(u.length);
+            for (; i < bound; i += DOUBLE_SPECIES.length()) {
+                DoubleVector a = DoubleVector.fromArray(DOUBLE_SPECIES, u, i);
+                DoubleVector b = DoubleVector.fromArray(DOUBLE_SPECIES, v, i);
+                sum1Vector = sum1Vector.add(a.sub(b).abs());
+                sum2Vector = sum2Vector.add(a.add(b).abs());
+            }
+            double sum1 = sum1Vector.reduceLanes(VectorOperators.ADD);
+            double sum2 = sum2Vector.reduceLanes(VectorOperators.ADD);
+            for (; i < u.length; i++) {
+                sum1 += Math.abs(u[i] - v[i]);
+                sum2 += Math.abs(u[i] + v[i]);
+            }
+            return sum1 / sum2;
+        }
+
+        private Object writeReplace() {
+            return new DistanceTypeImpls.DoubleBrayCurtisDistance();
+        }
+    }
+
+    /**
+     * 计算两向量之间的相关系数距离 与标量实现保持相同的公式
+     */
+    static class FloatCorrelationDistance implements FloatDistanceType<float[]> {
+        // 序列化版本号
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public float floatDistance(float[] u, float[] v) {
+            int bound = FLOAT_SPECIES.loopBound(u.length);
+
+            // 第一遍：求均值的相反数
+            FloatVector xVector = FloatVector.zero(FLOAT_SPECIES);
+            FloatVector yVector = FloatVector.zero(FLOAT_SPECIES);
+            int i = 0;
+            for (; i < bound; i += FLOAT_SPECIES.length()) {
+                xVector = xVector.sub(FloatVector.fromArray(FLOAT_SPECIES, u, i));
+                yVector = yVector.sub(FloatVector.fromArray(FLOAT_SPECIES, v, i));
+            }
+            float x = xVector.reduceLanes(VectorOperators.ADD);
+            float y = yVector.reduceLanes(VectorOperators.ADD);
+            for (; i < u.length; i++) {
+                x += -u[i];
+                y += -v[i];
+            }
+
+            x /= u.length;
+            y /= v.length;
+
+            // 第二遍：求协方差和方差
+            FloatVector sumVector = FloatVector.zero(FLOAT_SPECIES);
+            FloatVector den1Vector = FloatVector.zero(FLOAT_SPECIES);
+            FloatVector den2Vector = FloatVector.zero(FLOAT_SPECIES);
+            i = 0;
+            for (; i < bound; i += FLOAT_SPECIES.length()) {
+                FloatVector a = FloatVector.fromArray(FLOAT_SPECIES, u, i).add(x);
+                FloatVector b = FloatVector.fromArray(FLOAT_SPECIES, v, i).add(y);
+                sumVector = a.fma(b, sumVector);
+                den1Vector = a.fma(a, den1Vector);
+                den2Vector = b.fma(b, den2Vector);
+            }
+            float sum = sumVector.reduceLanes(VectorOperators.ADD);
+            float den1 = den1Vector.reduceLanes(VectorOperators.ADD);
+            float den2 = den2Vector.reduceLanes(VectorOperators.ADD);
+            for (; i < u.length; i++) {
+                sum += (u[i] + x) * (v[i] + y);
+
+                den1 += Math.abs(Math.pow(u[i] + x, 2));
+                den2 += Math.abs(Math.pow(v[i] + y, 2));
+            }
+
+            return 1f - sum / (float) Math.sqrt(den1) * (float) Math.sqrt(den2);
+        }
+
+        private Object writeReplace() {
+            return new DistanceTypeImpls.FloatCorrelationDistance();
+        }
+    }
+
+    /**
+     * 计算两向量之间的相关系数距离 与标量实现保持相同的公式
+     */
+    static class DoubleCorrelationDistance implements DoubleDistanceType<double[]> {
+        // 序列化版本号
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public double doubleDistance(double[] u, double[] v) {
+            int bound = DOUBLE_SPECIES.loopBound(u.length);
+
+            DoubleVector xVector = DoubleVector.zero(DOUBLE_SPECIES);
+            DoubleVector yVector = DoubleVector.zero(DOUBLE_SPECIES);
+            int i = 0;
+            for (; i < bound; i += DOUBLE_SPECIES.length()) {
+                xVector = xVector.sub(DoubleVector.fromArray(DOUBLE_SPECIES, u, i));
+                yVector = yVector.sub(DoubleVector.fromArray(DOUBLE_SPECIES, v, i));
+            }
+            double x = xVector.reduceLanes(VectorOperators.ADD);
+            double y = yVector.reduceLanes(VectorOperators.ADD);
+            for (; i < u.length; i++) {
+                x += -u[i];
+                y += -v[i];
+            }
+
+            x /= u.length;
+            y /= v.length;
+
+            DoubleVector sumVector = DoubleVector.zero(DOUBLE_SPECIES);
+            DoubleVector den1Vector = DoubleVector.zero(DOUBLE_SPECIES);
+            DoubleVector den2Vector = DoubleVector.zero(DOUBLE_SPECIES);
+            i = 0;
+            for (; i < bound; i += DOUBLE_SPECIES.length()) {
+                DoubleVector a = DoubleVector.fromArray(DOUBLE_SPECIES, u, i).add(x);
+                DoubleVector b = DoubleVector.fromArray(DOUBLE_SPECIES, v, i).add(y);
+                sumVector = a.fma(b, sumVector);
+                den1Vector = a.fma(a, den1Vector);
+                den2Vector = b.fma(b, den2Vector);
+            }
+            double sum = sumVector.reduceLanes(VectorOperators.ADD);
+            double den1 = den1Vector.reduceLanes(VectorOperators.ADD);
+            double den2 = den2Vector.reduceLanes(VectorOperators.ADD);
+            for (; i < u.length; i++) {
+                sum += (u[i] + x) * (v[i] + y);
+
+                den1 += Math.abs(Math.pow(u[i] + x, 2));
+                den2 += Math.abs(Math.pow(v[i] + y, 2));
+            }
+
+            return 1d - sum / Math.sqrt(den1) * Math.sqrt(den2);
+        }
+
+        private Object writeReplace() {
+            return new DistanceTypeImpls.DoubleCorrelationDistance();
+        }
+    }
+
+    /**
+     * 计算两向量之间的曼哈顿距离
+     */
+    static class FloatManhattanDistance implements FloatDistanceType<float[]> {
+        // 序列化版本号
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public float floatDistance(float[] u, float[] v) {
+            FloatVector sumVector = FloatVector.zero(FLOAT_SPECIES);
+            int i = 0;
+            int bound = FLOAT_SPECIES.loopBound(u.length);
+            for (; i < bound; i += FLOAT_SPECIES.length()) {
+                sumVector = sumVector.add(FloatVector.fromArray(FLOAT_SPECIES, u, i)
+                        .sub(FloatVector.fromArray(FLOAT_SPECIES, v, i))
+                        .abs());
+            }
+            float sum = sumVector.reduceLanes(VectorOperators.ADD);
+            for (; i < u.length; i++) {
+                sum += Math.abs(u[i] - v[i]);
+            }
+            return sum;
+        }
+
+        private Object writeReplace() {
+            return new DistanceTypeImpls.FloatManhattanDistance();
+        }
+    }
+
+    /**
+     * 计算两向量之间的曼哈顿距离
+     */
+    static class DoubleManhattanDistance implements DoubleDistanceType<double[]> {
+        // 序列化版本号
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public double doubleDistance(double[] u, double[] v) {
+            DoubleVector sumVector = DoubleVector.zero(DOUBLE_SPECIES);
+            int i = 0;
+            int bound = DOUBLE_SPECIES.loopBound(u.length);
+            for (; i < bound; i += DOUBLE_SPECIES.length()) {
+                sumVector = sumVector.add(DoubleVector.fromArray(DOUBLE_SPECIES, u, i)
+                        .sub(DoubleVector.fromArray(DOUBLE_SPECIES, v, i))
+                        .abs());
+            }
+            double sum = sumVector.reduceLanes(VectorOperators.ADD);
+            for (; i < u.length; i++) {
+                sum += Math.abs(u[i] - v[i]);
+            }
+            return sum;
+        }
+
+        private Object writeReplace() {
+            return new DistanceTypeImpls.DoubleManhattanDistance();
+        }
+    }
+
+    /*
+     * 以下字段由 DistanceTypeImpls 通过反射按名称读取
+     */
+    static final FloatDistanceType<float[]> FLOAT_COSINE_DISTANCE = new FloatCosineDistance();
+    static final DoubleDistanceType<double[]> DOUBLE_COSINE_DISTANCE = new DoubleCosineDistance();
+    static final FloatDistanceType<float[]> FLOAT_INNER_PRODUCT = new FloatInnerProduct();
+    static final DoubleDistanceType<double[]> DOUBLE_INNER_PRODUCT = new DoubleInnerProduct();
+    static final FloatDistanceType<float[]> FLOAT_EUCLIDEAN_DISTANCE = new FloatEuclideanDistance();
+    static final DoubleDistanceType<double[]> DOUBLE_EUCLIDEAN_DISTANCE = new DoubleEuclideanDistance();
+    static final FloatDistanceType<float[]> FLOAT_BRAY_CURTIS_DISTANCE = new FloatBrayCurtisDistance();
+    static final DoubleDistanceType<double[]> DOUBLE_BRAY_CURTIS_DISTANCE = new DoubleBrayCurtisDistance();
+    static final FloatDistanceType<float[]> FLOAT_CANBERRA_DISTANCE = new FloatCanberraDistance();
+    static final DoubleDistanceType<double[]> DOUBLE_CANBERRA_DISTANCE = new DoubleCanberraDistance();
+    static final FloatDistanceType<float[]> FLOAT_CORRELATION_DISTANCE = new FloatCorrelationDistance();
+    static final DoubleDistanceType<double[]> DOUBLE_CORRELATION_DISTANCE = new DoubleCorrelationDistance();
+    static final FloatDistanceType<float[]> FLOAT_MANHATTAN_DISTANCE = new FloatManhattanDistance();
+    static final DoubleDistanceType<double[]> DOUBLE_MANHATTAN_DISTANCE = new DoubleManhattanDistance();
+}